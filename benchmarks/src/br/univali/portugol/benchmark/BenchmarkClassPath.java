@@ -0,0 +1,32 @@
+package br.univali.portugol.benchmark;
+
+import br.univali.portugol.CompiladorPrograma;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Mede a montagem do classpath de compilação, feita a cada programa
+ * compilado ou procurado no cache.
+ *
+ * @author Luiz Fernando Noschang
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class BenchmarkClassPath
+{
+    @Benchmark
+    public String getClassPathParaCompilacao() throws IOException
+    {
+        return CompiladorPrograma.getClassPathParaCompilacao();
+    }
+}
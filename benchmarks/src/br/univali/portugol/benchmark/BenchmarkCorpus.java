@@ -0,0 +1,94 @@
+package br.univali.portugol.benchmark;
+
+import br.univali.portugol.CompiladorPrograma;
+import br.univali.portugol.Console;
+import br.univali.portugol.ExecucaoPrograma;
+import br.univali.portugol.ProgramaCompilado;
+import br.univali.portugol.nucleo.execucao.ResultadoExecucao;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Mede, para cada programa do corpus, a compilação seguida da execução e só
+ * a execução de um programa já compilado. O cache de compilação fica
+ * desativado para que a compilação seja de fato medida.
+ *
+ * @author Luiz Fernando Noschang
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class BenchmarkCorpus
+{
+    private static final long TEMPO_LIMITE = 30000;
+
+    @Param({ "ola_mundo", "fatorial", "ordenacao", "primos", "matriz", "texto", "media" })
+    public String programa;
+
+    private final CompiladorPrograma compilador = new CompiladorPrograma(false, 0, CompiladorPrograma.Tipo.AUTOMATICO);
+    private final Charset charset = Charset.defaultCharset();
+    private File diretorio;
+    private File arquivo;
+    private byte[] entrada;
+    private ProgramaCompilado programaCompilado;
+
+    @Setup
+    public void preparar() throws Exception
+    {
+        diretorio = Files.createTempDirectory("benchmark-corpus").toFile();
+        arquivo = Corpus.copiarPrograma(programa, diretorio);
+        entrada = Corpus.lerEntrada(programa);
+        programaCompilado = compilador.compilar(Console.lerArquivo(arquivo));
+    }
+
+    @TearDown
+    public void encerrar()
+    {
+        arquivo.delete();
+        diretorio.delete();
+    }
+
+    @Benchmark
+    public ResultadoExecucao compilarEExecutar() throws Exception
+    {
+        return executar(compilador.compilar(Console.lerArquivo(arquivo)));
+    }
+
+    @Benchmark
+    public ResultadoExecucao executar() throws Exception
+    {
+        return executar(programaCompilado.podeInstanciarNovamente() ? programaCompilado : compilador.compilar(Console.lerArquivo(arquivo)));
+    }
+
+    private ResultadoExecucao executar(ProgramaCompilado compilado) throws Exception
+    {
+        ExecucaoPrograma execucao = new ExecucaoPrograma(compilado.instanciar(), new ByteArrayInputStream(entrada), new ByteArrayOutputStream(), charset);
+        ResultadoExecucao resultado = execucao.executar(new String[0], diretorio, TEMPO_LIMITE);
+
+        if (resultado == null || execucao.isTempoEsgotado())
+        {
+            throw new IllegalStateException(String.format("O programa '%s' não terminou", programa));
+        }
+
+        return resultado;
+    }
+}
@@ -0,0 +1,116 @@
+package br.univali.portugol.benchmark;
+
+import br.univali.portugol.Console;
+import br.univali.portugol.SaidaBufferizada;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Mede cada sobrecarga de 'escreva' do console, escrevendo direto no
+ * {@code System.out} e com a saída bufferizada (parâmetro {@code -buffer}).
+ * A saída é descartada, de modo que só a formatação e a codificação dos
+ * valores são medidas.
+ *
+ * @author Luiz Fernando Noschang
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class BenchmarkEscrever
+{
+    private PrintStream saidaOriginal;
+    private Console console;
+    private SaidaBufferizada saidaBufferizada;
+
+    @Setup
+    public void preparar()
+    {
+        saidaOriginal = System.out;
+        System.setOut(new PrintStream(new SaidaNula()));
+
+        console = new Console();
+        saidaBufferizada = new SaidaBufferizada(new SaidaNula(), Charset.defaultCharset(), 8192, 0);
+    }
+
+    @TearDown
+    public void encerrar()
+    {
+        saidaBufferizada.fechar();
+        System.setOut(saidaOriginal);
+    }
+
+    @Benchmark
+    public void cadeia()
+    {
+        console.escrever("O resultado é: ");
+    }
+
+    @Benchmark
+    public void logico()
+    {
+        console.escrever(true);
+    }
+
+    @Benchmark
+    public void inteiro()
+    {
+        console.escrever(1234567);
+    }
+
+    @Benchmark
+    public void real()
+    {
+        console.escrever(3.14159265);
+    }
+
+    @Benchmark
+    public void caracter()
+    {
+        console.escrever('x');
+    }
+
+    @Benchmark
+    public void cadeiaBufferizada()
+    {
+        saidaBufferizada.escrever("O resultado é: ");
+    }
+
+    @Benchmark
+    public void logicoBufferizado()
+    {
+        saidaBufferizada.escrever(true);
+    }
+
+    @Benchmark
+    public void inteiroBufferizado()
+    {
+        saidaBufferizada.escrever(1234567);
+    }
+
+    @Benchmark
+    public void realBufferizado()
+    {
+        saidaBufferizada.escrever(3.14159265);
+    }
+
+    @Benchmark
+    public void caracterBufferizado()
+    {
+        saidaBufferizada.escrever('x');
+    }
+}
@@ -0,0 +1,121 @@
+package br.univali.portugol.benchmark;
+
+import br.univali.portugol.LeitorEntrada;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.Charset;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compara a leitura de valores com o {@link LeitorEntrada} e com o caminho
+ * antigo do console ({@code Scanner.next()} seguido de {@code parseInt} ou
+ * {@code parseDouble}). O resultado é o tempo médio por valor lido.
+ *
+ * @author Luiz Fernando Noschang
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class BenchmarkLeitorEntrada
+{
+    private static final int QUANTIDADE = 100000;
+
+    private final Charset charset = Charset.defaultCharset();
+    private byte[] inteiros;
+    private byte[] reais;
+
+    @Setup
+    public void preparar()
+    {
+        Random aleatorio = new Random(42);
+        StringBuilder textoInteiros = new StringBuilder(QUANTIDADE * 8);
+        StringBuilder textoReais = new StringBuilder(QUANTIDADE * 12);
+
+        for (int i = 0; i < QUANTIDADE; i++)
+        {
+            char separador = (i % 10 == 9) ? '\n' : ' ';
+
+            textoInteiros.append(aleatorio.nextInt(2000000) - 1000000).append(separador);
+            textoReais.append(String.format(Locale.ROOT, "%.3f", aleatorio.nextDouble() * 1000)).append(separador);
+        }
+
+        inteiros = textoInteiros.toString().getBytes(charset);
+        reais = textoReais.toString().getBytes(charset);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUANTIDADE)
+    public long inteirosScanner()
+    {
+        Scanner scanner = new Scanner(new ByteArrayInputStream(inteiros), charset.name());
+        long soma = 0;
+
+        for (int i = 0; i < QUANTIDADE; i++)
+        {
+            soma += Integer.parseInt(scanner.next());
+        }
+
+        return soma;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUANTIDADE)
+    public long inteirosLeitor()
+    {
+        LeitorEntrada leitor = new LeitorEntrada(new ByteArrayInputStream(inteiros), charset);
+        long soma = 0;
+
+        for (int i = 0; i < QUANTIDADE; i++)
+        {
+            soma += leitor.proximoInteiro();
+        }
+
+        return soma;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUANTIDADE)
+    public double reaisScanner()
+    {
+        Scanner scanner = new Scanner(new ByteArrayInputStream(reais), charset.name());
+        double soma = 0;
+
+        for (int i = 0; i < QUANTIDADE; i++)
+        {
+            soma += Double.parseDouble(scanner.next());
+        }
+
+        return soma;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUANTIDADE)
+    public double reaisLeitor()
+    {
+        LeitorEntrada leitor = new LeitorEntrada(new ByteArrayInputStream(reais), charset);
+        double soma = 0;
+
+        for (int i = 0; i < QUANTIDADE; i++)
+        {
+            soma += leitor.proximoReal();
+        }
+
+        return soma;
+    }
+}
@@ -0,0 +1,73 @@
+package br.univali.portugol.benchmark;
+
+import br.univali.portugol.Console;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Mede a leitura do código fonte de um programa pelo console, com um
+ * programa pequeno (tamanho típico de um exercício) e um grande, que é
+ * mapeado em memória, em cada uma das codificações aceitas.
+ *
+ * @author Luiz Fernando Noschang
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class BenchmarkLerArquivo
+{
+    @Param({ "2", "2000" })
+    public int quilobytes;
+
+    @Param({ "ISO-8859-1", "UTF-8" })
+    public String codificacao;
+
+    private File arquivo;
+
+    @Setup
+    public void preparar() throws IOException
+    {
+        String trecho = "\t\tpara (inteiro i = 0; i < 10; i++)\n\t\t{\n\t\t\tescreva(\"Número: \", i, \"\\n\")\n\t\t}\n";
+        StringBuilder codigo = new StringBuilder("programa\n{\n\tfuncao inicio()\n\t{\n");
+
+        while (codigo.length() < quilobytes * 1024)
+        {
+            codigo.append(trecho);
+        }
+
+        codigo.append("\t}\n}\n");
+
+        arquivo = File.createTempFile("benchmark", ".por");
+        Files.write(arquivo.toPath(), codigo.toString().getBytes(Charset.forName(codificacao)));
+    }
+
+    @TearDown
+    public void encerrar()
+    {
+        arquivo.delete();
+    }
+
+    @Benchmark
+    public String lerArquivo() throws Exception
+    {
+        return Console.lerArquivo(arquivo);
+    }
+}
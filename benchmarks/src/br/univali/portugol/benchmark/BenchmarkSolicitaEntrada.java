@@ -0,0 +1,90 @@
+package br.univali.portugol.benchmark;
+
+import br.univali.portugol.Console;
+import br.univali.portugol.nucleo.asa.TipoDado;
+import br.univali.portugol.nucleo.execucao.es.Armazenador;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Mede o atendimento de um comando 'leia' pelo console para cada tipo de
+ * dado, com a entrada padrão substituída por uma entrada que repete o mesmo
+ * valor indefinidamente.
+ *
+ * @author Luiz Fernando Noschang
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class BenchmarkSolicitaEntrada
+{
+    @Param({ "CADEIA", "CARACTER", "INTEIRO", "REAL", "LOGICO" })
+    public TipoDado tipoDado;
+
+    private InputStream entradaOriginal;
+    private Console console;
+    private Armazenador armazenador;
+
+    @Setup
+    public void preparar(final Blackhole blackhole)
+    {
+        String valor;
+
+        switch (tipoDado)
+        {
+            case CARACTER: valor = "x"; break;
+            case INTEIRO: valor = "123456"; break;
+            case REAL: valor = "3.14159"; break;
+            case LOGICO: valor = "verdadeiro"; break;
+            default: valor = "palavra"; break;
+        }
+
+        entradaOriginal = System.in;
+        System.setIn(new EntradaCiclica((valor + "\n").getBytes(Charset.defaultCharset())));
+
+        console = new Console();
+        armazenador = new Armazenador()
+        {
+            @Override
+            public void setValor(Object valor)
+            {
+                blackhole.consume(valor);
+            }
+
+            @Override
+            public void cancelarLeitura()
+            {
+                throw new IllegalStateException("A leitura não deveria ser cancelada");
+            }
+        };
+    }
+
+    @TearDown
+    public void encerrar()
+    {
+        System.setIn(entradaOriginal);
+    }
+
+    @Benchmark
+    public void solicitaEntrada()
+    {
+        console.solicitaEntrada(tipoDado, armazenador);
+    }
+}
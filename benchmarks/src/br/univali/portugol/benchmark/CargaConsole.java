@@ -0,0 +1,643 @@
+package br.univali.portugol.benchmark;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Teste de carga e de regressão do console empacotado: executa os programas
+ * de {@code benchmarks/carga} em processos separados, vários ao mesmo tempo,
+ * exatamente como um aluno ou um corretor automático executaria o
+ * {@code dist/portugol-console.jar}.
+ * <p>
+ * Cada programa tem um arquivo {@code .in}, passado com {@code -in=}, e um
+ * arquivo {@code .out} com a saída esperada, passado com {@code -esperado=},
+ * de modo que uma saída incorreta encerra o console com erro e é contada
+ * como falha. São informados os percentis 50, 95 e 99 do tempo de parede de
+ * cada programa, a vazão em execuções por segundo e o pico de memória
+ * residente (lido de {@code /proc}, portanto só no Linux).
+ * <p>
+ * Os resultados podem ser gravados com {@code -gravar=<arquivo>} e usados
+ * como referência em uma execução posterior com
+ * {@code -referencia=<arquivo>}: se a mediana, o percentil 95 ou o pico de
+ * memória de algum programa, o percentil 99 geral ou a vazão piorarem mais
+ * que {@code -limite=<percentual>}, o teste termina com código 1.
+ * <p>
+ * Não é um benchmark JMH. Execução, a partir da raiz do projeto:
+ * {@code java -cp benchmarks.jar br.univali.portugol.benchmark.CargaConsole [-console=dist/portugol-console.jar]
+ * [-corpus=benchmarks/carga] [-concorrencia=N] [-execucoes=N] [-aquecimento=N] [-limite=10]
+ * [-referencia=arquivo] [-gravar=arquivo] [-programa=nome] [-parametro=parâmetro do console]}
+ *
+ * @author Luiz Fernando Noschang
+ */
+public final class CargaConsole
+{
+    private static final String CONSOLE_PADRAO = "dist/portugol-console.jar";
+    private static final String CORPUS_PADRAO = "benchmarks/carga";
+    private static final int EXECUCOES_PADRAO = 10;
+    private static final int AQUECIMENTO_PADRAO = 1;
+    private static final double LIMITE_PADRAO = 10.0;
+    private static final long INTERVALO_AMOSTRAGEM = 10;
+    private static final long TEMPO_LIMITE = 120000;
+    private static final String TODOS = "todos";
+
+    private final File console;
+    private final List<String> parametrosConsole;
+    private final File saidaDescartada;
+
+    private CargaConsole(File console, List<String> parametrosConsole)
+    {
+        this.console = console;
+        this.parametrosConsole = parametrosConsole;
+        this.saidaDescartada = new File(System.getProperty("os.name").toLowerCase().startsWith("windows") ? "NUL" : "/dev/null");
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        File console = new File(CONSOLE_PADRAO);
+        File corpus = new File(CORPUS_PADRAO);
+        int concorrencia = Runtime.getRuntime().availableProcessors();
+        int execucoes = EXECUCOES_PADRAO;
+        int aquecimento = AQUECIMENTO_PADRAO;
+        double limite = LIMITE_PADRAO;
+        File referencia = null;
+        File gravacao = null;
+        List<String> selecionados = new ArrayList<>();
+        List<String> parametrosConsole = new ArrayList<>();
+
+        for (String parametro : args)
+        {
+            String valor = parametro.substring(parametro.indexOf('=') + 1);
+
+            if (parametro.startsWith("-console="))
+            {
+                console = new File(valor);
+            }
+            else if (parametro.startsWith("-corpus="))
+            {
+                corpus = new File(valor);
+            }
+            else if (parametro.startsWith("-concorrencia="))
+            {
+                concorrencia = Math.max(1, Integer.parseInt(valor));
+            }
+            else if (parametro.startsWith("-execucoes="))
+            {
+                execucoes = Math.max(1, Integer.parseInt(valor));
+            }
+            else if (parametro.startsWith("-aquecimento="))
+            {
+                aquecimento = Math.max(0, Integer.parseInt(valor));
+            }
+            else if (parametro.startsWith("-limite="))
+            {
+                limite = Double.parseDouble(valor);
+            }
+            else if (parametro.startsWith("-referencia="))
+            {
+                referencia = new File(valor);
+            }
+            else if (parametro.startsWith("-gravar="))
+            {
+                gravacao = new File(valor);
+            }
+            else if (parametro.startsWith("-programa="))
+            {
+                selecionados.add(valor);
+            }
+            else if (parametro.startsWith("-parametro="))
+            {
+                parametrosConsole.add(valor);
+            }
+            else
+            {
+                System.err.println("Parâmetro desconhecido: " + parametro);
+                System.exit(2);
+            }
+        }
+
+        if (!console.isFile())
+        {
+            System.err.println(String.format("O console '%s' não foi encontrado. Gere o jar com 'ant jar' ou informe -console=", console.getPath()));
+            System.exit(2);
+        }
+
+        List<Programa> programas = listarProgramas(corpus, selecionados);
+
+        if (programas.isEmpty())
+        {
+            System.err.println(String.format("Nenhum programa com saída esperada (.out) em '%s'", corpus.getPath()));
+            System.exit(2);
+        }
+
+        CargaConsole carga = new CargaConsole(console, parametrosConsole);
+
+        // O aquecimento preenche o cache de compilação do console, de modo
+        // que as medições representam a execução habitual de um programa
+        for (int i = 0; i < aquecimento; i++)
+        {
+            for (Programa programa : programas)
+            {
+                carga.executar(programa);
+            }
+        }
+
+        Map<String, Estatistica> estatisticas = carga.medir(programas, execucoes, concorrencia);
+
+        System.out.println(String.format("Console       %s", console.getPath()));
+        System.out.println(String.format("Concorrência  %d processos, %d execuções por programa", concorrencia, execucoes));
+        System.out.println();
+        System.out.println(String.format("%-16s %6s %6s %10s %10s %10s %10s %12s", "Programa", "Exec.", "Falhas", "p50 (ms)", "p95 (ms)", "p99 (ms)", "Exec./s", "Pico RSS"));
+
+        for (Estatistica estatistica : estatisticas.values())
+        {
+            System.out.println(estatistica.descrever());
+        }
+
+        boolean falhou = false;
+
+        for (Estatistica estatistica : estatisticas.values())
+        {
+            if (estatistica.nome.equals(TODOS))
+            {
+                continue;
+            }
+
+            for (String falha : estatistica.falhas)
+            {
+                System.err.println(falha);
+                falhou = true;
+            }
+        }
+
+        Properties resultado = registrar(estatisticas, concorrencia);
+
+        if (gravacao != null)
+        {
+            try (OutputStream saida = new FileOutputStream(gravacao))
+            {
+                resultado.store(saida, "Resultados do CargaConsole");
+            }
+        }
+
+        if (referencia != null)
+        {
+            Properties anterior = new Properties();
+
+            try (InputStream entrada = new FileInputStream(referencia))
+            {
+                anterior.load(entrada);
+            }
+
+            List<String> regressoes = comparar(anterior, resultado, limite);
+
+            System.out.println();
+
+            if (regressoes.isEmpty())
+            {
+                System.out.println(String.format(Locale.ROOT, "Nenhuma regressão acima de %.1f%% em relação a '%s'", limite, referencia.getPath()));
+            }
+            else
+            {
+                for (String regressao : regressoes)
+                {
+                    System.err.println(regressao);
+                }
+
+                falhou = true;
+            }
+        }
+
+        System.exit(falhou ? 1 : 0);
+    }
+
+    /**
+     * @return os programas do corpus que têm saída esperada, em ordem
+     * alfabética
+     */
+    private static List<Programa> listarProgramas(File corpus, List<String> selecionados)
+    {
+        List<Programa> programas = new ArrayList<>();
+        File[] arquivos = corpus.listFiles();
+
+        if (arquivos == null)
+        {
+            return programas;
+        }
+
+        Arrays.sort(arquivos);
+
+        for (File arquivo : arquivos)
+        {
+            String nome = arquivo.getName();
+
+            if (!nome.toLowerCase().endsWith(".por"))
+            {
+                continue;
+            }
+
+            nome = nome.substring(0, nome.length() - 4);
+            File esperado = new File(corpus, nome + ".out");
+
+            if (esperado.isFile() && (selecionados.isEmpty() || selecionados.contains(nome)))
+            {
+                File entrada = new File(corpus, nome + ".in");
+
+                programas.add(new Programa(nome, arquivo, entrada.isFile() ? entrada : null, esperado));
+            }
+        }
+
+        return programas;
+    }
+
+    /**
+     * Executa cada programa a quantidade de vezes informada, intercalando os
+     * programas, com até {@code concorrencia} consoles ao mesmo tempo.
+     */
+    private Map<String, Estatistica> medir(List<Programa> programas, int execucoes, int concorrencia) throws Exception
+    {
+        ExecutorService executor = Executors.newFixedThreadPool(concorrencia);
+        List<Future<Medicao>> pendentes = new ArrayList<>();
+        long inicio = System.nanoTime();
+
+        try
+        {
+            for (int i = 0; i < execucoes; i++)
+            {
+                for (final Programa programa : programas)
+                {
+                    pendentes.add(executor.submit(new Callable<Medicao>()
+                    {
+                        @Override
+                        public Medicao call() throws Exception
+                        {
+                            return executar(programa);
+                        }
+                    }));
+                }
+            }
+
+            Map<String, Estatistica> estatisticas = new LinkedHashMap<>();
+            Estatistica geral = new Estatistica(TODOS);
+
+            for (Programa programa : programas)
+            {
+                estatisticas.put(programa.nome, new Estatistica(programa.nome));
+            }
+
+            for (Future<Medicao> pendente : pendentes)
+            {
+                Medicao medicao = pendente.get();
+
+                estatisticas.get(medicao.programa.nome).adicionar(medicao);
+                geral.adicionar(medicao);
+            }
+
+            long duracao = System.nanoTime() - inicio;
+
+            for (Estatistica estatistica : estatisticas.values())
+            {
+                estatistica.concluir(duracao);
+            }
+
+            geral.concluir(duracao);
+            estatisticas.put(TODOS, geral);
+
+            return estatisticas;
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    private Medicao executar(Programa programa) throws IOException, InterruptedException
+    {
+        List<String> comando = new ArrayList<>();
+
+        comando.add(new File(new File(System.getProperty("java.home"), "bin"), "java").getPath());
+        comando.add("-jar");
+        comando.add(console.getPath());
+        comando.add("-no-wait");
+        comando.addAll(parametrosConsole);
+
+        if (programa.entrada != null)
+        {
+            comando.add("-in=" + programa.entrada.getPath());
+        }
+
+        comando.add("-esperado=" + programa.esperado.getPath());
+        comando.add(programa.arquivo.getPath());
+
+        File erros = Files.createTempFile("carga-console", ".err").toFile();
+
+        try
+        {
+            ProcessBuilder construtor = new ProcessBuilder(comando);
+            construtor.redirectInput(ProcessBuilder.Redirect.from(saidaDescartada));
+            construtor.redirectOutput(ProcessBuilder.Redirect.to(saidaDescartada));
+            construtor.redirectError(ProcessBuilder.Redirect.to(erros));
+
+            long inicio = System.nanoTime();
+            Process processo = construtor.start();
+            File status = arquivoStatus(processo);
+            long picoMemoria = -1;
+            long limite = inicio + TimeUnit.MILLISECONDS.toNanos(TEMPO_LIMITE);
+
+            // O pico de memória só é mantido enquanto o processo existe, então
+            // ele é lido periodicamente até o processo terminar
+            while (!processo.waitFor(INTERVALO_AMOSTRAGEM, TimeUnit.MILLISECONDS))
+            {
+                picoMemoria = Math.max(picoMemoria, lerPicoMemoria(status));
+
+                if (System.nanoTime() > limite)
+                {
+                    processo.destroyForcibly();
+                    processo.waitFor();
+
+                    return new Medicao(programa, System.nanoTime() - inicio, picoMemoria, -1, "tempo limite de " + TEMPO_LIMITE + " ms esgotado");
+                }
+            }
+
+            long duracao = System.nanoTime() - inicio;
+            int codigo = processo.exitValue();
+
+            return new Medicao(programa, duracao, picoMemoria, codigo, (codigo != 0) ? lerPrimeiraLinha(erros) : null);
+        }
+        finally
+        {
+            erros.delete();
+        }
+    }
+
+    /**
+     * @return o arquivo de status do processo no {@code /proc}, ou
+     * {@code null} se o pid não puder ser obtido
+     */
+    private static File arquivoStatus(Process processo)
+    {
+        long pid = -1;
+
+        try
+        {
+            // Process.pid() só existe a partir do Java 9
+            Method metodo = Process.class.getMethod("pid");
+            pid = (Long) metodo.invoke(processo);
+        }
+        catch (Exception excecao)
+        {
+            try
+            {
+                Field campo = processo.getClass().getDeclaredField("pid");
+                campo.setAccessible(true);
+                pid = campo.getInt(processo);
+            }
+            catch (Exception excecaoCampo)
+            {
+                return null;
+            }
+        }
+
+        File status = new File("/proc/" + pid + "/status");
+
+        return status.exists() ? status : null;
+    }
+
+    /**
+     * @return o pico de memória residente (VmHWM) em KB, ou -1 se não estiver
+     * disponível
+     */
+    private static long lerPicoMemoria(File status)
+    {
+        if (status == null)
+        {
+            return -1;
+        }
+
+        try (BufferedReader leitor = new BufferedReader(new FileReader(status)))
+        {
+            String linha;
+
+            while ((linha = leitor.readLine()) != null)
+            {
+                if (linha.startsWith("VmHWM:"))
+                {
+                    return Long.parseLong(linha.substring("VmHWM:".length()).replace("kB", "").trim());
+                }
+            }
+        }
+        catch (IOException | NumberFormatException excecao)
+        {
+            // O processo terminou entre a verificação e a leitura
+        }
+
+        return -1;
+    }
+
+    private static String lerPrimeiraLinha(File arquivo)
+    {
+        try
+        {
+            for (String linha : Files.readAllLines(arquivo.toPath(), Charset.defaultCharset()))
+            {
+                if (!linha.trim().isEmpty())
+                {
+                    return linha.trim();
+                }
+            }
+        }
+        catch (IOException excecao)
+        {
+            // Sem a mensagem, resta o código de encerramento
+        }
+
+        return "";
+    }
+
+    private static Properties registrar(Map<String, Estatistica> estatisticas, int concorrencia)
+    {
+        Properties resultado = new Properties();
+        resultado.setProperty("concorrencia", Integer.toString(concorrencia));
+
+        for (Estatistica estatistica : estatisticas.values())
+        {
+            resultado.setProperty(estatistica.nome + ".p50", Double.toString(estatistica.p50));
+            resultado.setProperty(estatistica.nome + ".p95", Double.toString(estatistica.p95));
+            resultado.setProperty(estatistica.nome + ".p99", Double.toString(estatistica.p99));
+            resultado.setProperty(estatistica.nome + ".rss", Long.toString(estatistica.picoMemoria));
+
+            if (estatistica.vazao >= 0)
+            {
+                resultado.setProperty(estatistica.nome + ".vazao", Double.toString(estatistica.vazao));
+            }
+        }
+
+        return resultado;
+    }
+
+    /**
+     * Tempos e memória maiores são piores, a vazão menor é pior. O percentil
+     * 99 de um único programa raramente tem amostras suficientes, então ele
+     * só é comparado no total.
+     */
+    private static List<String> comparar(Properties anterior, Properties atual, double limite)
+    {
+        List<String> regressoes = new ArrayList<>();
+
+        if (!atual.getProperty("concorrencia").equals(anterior.getProperty("concorrencia")))
+        {
+            System.err.println(String.format("Atenção: a referência foi medida com concorrência %s e esta execução com %s", anterior.getProperty("concorrencia"), atual.getProperty("concorrencia")));
+        }
+
+        for (String chave : new TreeSet<>(atual.stringPropertyNames()))
+        {
+            String anteriorValor = anterior.getProperty(chave);
+
+            if (anteriorValor == null || chave.equals("concorrencia"))
+            {
+                continue;
+            }
+
+            if (chave.endsWith(".p99") && !chave.startsWith(TODOS + "."))
+            {
+                continue;
+            }
+
+            boolean maiorPior = !chave.endsWith(".vazao");
+
+            double referencia = Double.parseDouble(anteriorValor);
+            double medido = Double.parseDouble(atual.getProperty(chave));
+
+            if (referencia <= 0 || medido < 0)
+            {
+                continue;
+            }
+
+            double variacao = (medido - referencia) / referencia * 100.0;
+
+            if ((maiorPior && variacao > limite) || (!maiorPior && -variacao > limite))
+            {
+                regressoes.add(String.format(Locale.ROOT, "Regressão em %s: %.1f -> %.1f (%+.1f%%, limite %.1f%%)", chave, referencia, medido, variacao, limite));
+            }
+        }
+
+        return regressoes;
+    }
+
+    private static final class Programa
+    {
+        private final String nome;
+        private final File arquivo;
+        private final File entrada;
+        private final File esperado;
+
+        Programa(String nome, File arquivo, File entrada, File esperado)
+        {
+            this.nome = nome;
+            this.arquivo = arquivo;
+            this.entrada = entrada;
+            this.esperado = esperado;
+        }
+    }
+
+    private static final class Medicao
+    {
+        private final Programa programa;
+        private final long duracao;
+        private final long picoMemoria;
+        private final int codigo;
+        private final String erro;
+
+        Medicao(Programa programa, long duracao, long picoMemoria, int codigo, String erro)
+        {
+            this.programa = programa;
+            this.duracao = duracao;
+            this.picoMemoria = picoMemoria;
+            this.codigo = codigo;
+            this.erro = erro;
+        }
+    }
+
+    /**
+     * Percentis calculados pelo método do posto mais próximo, sobre todas as
+     * execuções, inclusive as que falharam.
+     */
+    private static final class Estatistica
+    {
+        private final String nome;
+        private final List<Long> duracoes = new ArrayList<>();
+        private final List<String> falhas = new ArrayList<>();
+
+        private long picoMemoria = -1;
+        private double p50;
+        private double p95;
+        private double p99;
+        private double vazao;
+
+        Estatistica(String nome)
+        {
+            this.nome = nome;
+        }
+
+        void adicionar(Medicao medicao)
+        {
+            duracoes.add(medicao.duracao);
+            picoMemoria = Math.max(picoMemoria, medicao.picoMemoria);
+
+            if (medicao.codigo != 0)
+            {
+                falhas.add(String.format("Falha em %s (código %d): %s", medicao.programa.nome, medicao.codigo, medicao.erro));
+            }
+        }
+
+        void concluir(long duracaoTotal)
+        {
+            Collections.sort(duracoes);
+
+            p50 = percentil(0.50);
+            p95 = percentil(0.95);
+            p99 = percentil(0.99);
+            // A vazão de um programa isolado dependeria dos demais que estavam
+            // em execução, então ela só é calculada para o total
+            vazao = nome.equals(TODOS) ? duracoes.size() / (duracaoTotal / 1000000000.0) : -1;
+        }
+
+        private double percentil(double fracao)
+        {
+            int posicao = (int) Math.ceil(fracao * duracoes.size()) - 1;
+
+            return duracoes.get(Math.max(0, posicao)) / 1000000.0;
+        }
+
+        String descrever()
+        {
+            String memoria = (picoMemoria < 0) ? "n/d" : String.format(Locale.ROOT, "%.1f MB", picoMemoria / 1024.0);
+            String execucoesSegundo = (vazao < 0) ? "-" : String.format(Locale.ROOT, "%.2f", vazao);
+
+            return String.format(Locale.ROOT, "%-16s %6d %6d %10.1f %10.1f %10.1f %10s %12s", nome, duracoes.size(), falhas.size(), p50, p95, p99, execucoesSegundo, memoria);
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package br.univali.portugol.benchmark;
+
+import br.univali.portugol.CompiladorPrograma;
+import br.univali.portugol.Console;
+import br.univali.portugol.HospedeiroSessoes;
+import br.univali.portugol.ProgramaCompilado;
+import br.univali.portugol.nucleo.execucao.ModoEncerramento;
+import br.univali.portugol.nucleo.execucao.ResultadoExecucao;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Teste de carga do {@link HospedeiroSessoes}: abre milhares de sessões do
+ * programa {@code media} do corpus, que ficam ociosas aguardando a entrada,
+ * mede a memória e as threads usadas nesse estado (uma thread do núcleo por
+ * sessão) e então libera a entrada de todas, verificando se cada sessão
+ * produziu a saída esperada.
+ * <p>
+ * Não é um benchmark JMH. Execução:
+ * {@code java -Xmx512m -cp benchmarks.jar:<núcleo>:lib/* br.univali.portugol.benchmark.CargaSessoes [sessões]}
+ *
+ * @author Luiz Fernando Noschang
+ */
+public final class CargaSessoes
+{
+    private static final String PROGRAMA = "media";
+    private static final int SESSOES_PADRAO = 5000;
+    private static final long TEMPO_LIMITE = 60000;
+
+    private CargaSessoes()
+    {
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        int quantidade = (args.length > 0) ? Integer.parseInt(args[0]) : SESSOES_PADRAO;
+        Charset charset = Charset.defaultCharset();
+
+        File diretorio = Files.createTempDirectory("carga-sessoes").toFile();
+        File arquivo = Corpus.copiarPrograma(PROGRAMA, diretorio);
+        byte[] entrada = Corpus.lerEntrada(PROGRAMA);
+
+        CompiladorPrograma compilador = new CompiladorPrograma(false, 0, CompiladorPrograma.Tipo.AUTOMATICO);
+        String algoritmo = Console.lerArquivo(arquivo);
+        ProgramaCompilado programaCompilado = compilador.compilar(algoritmo);
+
+        HospedeiroSessoes hospedeiro = new HospedeiroSessoes("sessao-carga");
+        CountDownLatch liberacao = new CountDownLatch(1);
+        List<HospedeiroSessoes.Sessao> sessoes = new ArrayList<>(quantidade);
+        List<ByteArrayOutputStream> saidas = new ArrayList<>(quantidade);
+
+        long memoriaInicial = memoriaUsada();
+        long inicio = System.nanoTime();
+
+        for (int i = 0; i < quantidade; i++)
+        {
+            if (!programaCompilado.podeInstanciarNovamente())
+            {
+                programaCompilado = compilador.compilar(algoritmo);
+            }
+
+            ByteArrayOutputStream saida = new ByteArrayOutputStream(128);
+
+            saidas.add(saida);
+            sessoes.add(hospedeiro.abrir(programaCompilado, new EntradaRetida(entrada, liberacao), saida, charset, new String[0], diretorio, TEMPO_LIMITE));
+        }
+
+        long tempoAbertura = System.nanoTime() - inicio;
+
+        // Aguarda as sessões chegarem à primeira leitura
+        Thread.sleep(2000);
+
+        long memoriaOciosa = memoriaUsada() - memoriaInicial;
+        int threads = ManagementFactory.getThreadMXBean().getThreadCount();
+
+        inicio = System.nanoTime();
+        liberacao.countDown();
+
+        int concluidas = 0;
+        String saidaReferencia = null;
+        int divergentes = 0;
+
+        for (int i = 0; i < quantidade; i++)
+        {
+            ResultadoExecucao resultado = sessoes.get(i).getResultado().get(TEMPO_LIMITE, TimeUnit.MILLISECONDS);
+
+            if (resultado != null && resultado.getModoEncerramento() == ModoEncerramento.NORMAL)
+            {
+                concluidas++;
+            }
+
+            String texto = new String(saidas.get(i).toByteArray(), charset);
+
+            if (saidaReferencia == null)
+            {
+                saidaReferencia = texto;
+            }
+            else if (!saidaReferencia.equals(texto))
+            {
+                divergentes++;
+            }
+        }
+
+        long tempoConclusao = System.nanoTime() - inicio;
+
+        hospedeiro.encerrar();
+        arquivo.delete();
+        diretorio.delete();
+
+        System.out.println("Sessões                 " + quantidade);
+        System.out.println("Abertura                " + milissegundos(tempoAbertura) + " ms");
+        System.out.println("Heap com sessões ociosas " + megabytes(memoriaOciosa) + " MB (" + (memoriaOciosa / Math.max(1, quantidade)) + " bytes por sessão)");
+        System.out.println("Threads ativas          " + threads);
+        System.out.println("Conclusão               " + milissegundos(tempoConclusao) + " ms");
+        System.out.println("Concluídas normalmente  " + concluidas);
+        System.out.println("Saídas divergentes      " + divergentes);
+
+        if (concluidas != quantidade || divergentes > 0)
+        {
+            System.exit(1);
+        }
+    }
+
+    private static long memoriaUsada()
+    {
+        for (int i = 0; i < 3; i++)
+        {
+            System.gc();
+        }
+
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private static String milissegundos(long nanossegundos)
+    {
+        return String.format(Locale.ROOT, "%.1f", nanossegundos / 1000000.0);
+    }
+
+    private static String megabytes(long bytes)
+    {
+        return String.format(Locale.ROOT, "%.1f", bytes / (1024.0 * 1024.0));
+    }
+
+    /**
+     * Entrada que bloqueia a primeira leitura até ser liberada, simulando um
+     * aluno que ainda não digitou nada.
+     */
+    private static final class EntradaRetida extends InputStream
+    {
+        private final byte[] conteudo;
+        private final CountDownLatch liberacao;
+        private int posicao = 0;
+
+        EntradaRetida(byte[] conteudo, CountDownLatch liberacao)
+        {
+            this.conteudo = conteudo;
+            this.liberacao = liberacao;
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            byte[] bytes = new byte[1];
+
+            return (read(bytes, 0, 1) < 0) ? -1 : (bytes[0] & 0xFF);
+        }
+
+        @Override
+        public int read(byte[] bytes, int inicio, int tamanho) throws IOException
+        {
+            try
+            {
+                liberacao.await();
+            }
+            catch (InterruptedException excecao)
+            {
+                throw new IOException(excecao);
+            }
+
+            if (posicao >= conteudo.length)
+            {
+                return -1;
+            }
+
+            int quantidade = Math.min(tamanho, conteudo.length - posicao);
+            System.arraycopy(conteudo, posicao, bytes, inicio, quantidade);
+            posicao += quantidade;
+
+            return quantidade;
+        }
+    }
+}
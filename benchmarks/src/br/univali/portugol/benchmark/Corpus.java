@@ -0,0 +1,72 @@
+package br.univali.portugol.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+
+/**
+ * Acesso aos programas de exemplo em {@code benchmarks/corpus}, que são
+ * empacotados como recursos em {@code /corpus}. Um programa pode ter um
+ * arquivo {@code .in} com a entrada usada na execução.
+ *
+ * @author Luiz Fernando Noschang
+ */
+final class Corpus
+{
+    private Corpus()
+    {
+    }
+
+    /**
+     * Copia o programa para o diretório informado, pois o console lê os
+     * programas de arquivos.
+     */
+    static File copiarPrograma(String nome, File diretorio) throws IOException
+    {
+        byte[] programa = lerRecurso(nome + ".por");
+
+        if (programa == null)
+        {
+            throw new IOException(String.format("O programa '%s' não está no corpus", nome));
+        }
+
+        File arquivo = new File(diretorio, nome + ".por");
+        Files.write(arquivo.toPath(), programa);
+
+        return arquivo;
+    }
+
+    /**
+     * @return a entrada do programa, ou um vetor vazio se ele não tem entrada
+     */
+    static byte[] lerEntrada(String nome) throws IOException
+    {
+        byte[] entrada = lerRecurso(nome + ".in");
+
+        return (entrada != null) ? entrada : new byte[0];
+    }
+
+    private static byte[] lerRecurso(String nome) throws IOException
+    {
+        try (InputStream recurso = Corpus.class.getResourceAsStream("/corpus/" + nome))
+        {
+            if (recurso == null)
+            {
+                return null;
+            }
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int lidos;
+
+            while ((lidos = recurso.read(buffer)) > 0)
+            {
+                bytes.write(buffer, 0, lidos);
+            }
+
+            return bytes.toByteArray();
+        }
+    }
+}
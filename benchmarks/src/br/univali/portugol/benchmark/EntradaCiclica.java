@@ -0,0 +1,46 @@
+package br.univali.portugol.benchmark;
+
+import java.io.InputStream;
+
+/**
+ * Entrada que repete indefinidamente o mesmo conteúdo, para que os
+ * benchmarks de leitura nunca cheguem ao fim da entrada.
+ *
+ * @author Luiz Fernando Noschang
+ */
+final class EntradaCiclica extends InputStream
+{
+    private final byte[] conteudo;
+    private int posicao = 0;
+
+    EntradaCiclica(byte[] conteudo)
+    {
+        this.conteudo = conteudo;
+    }
+
+    @Override
+    public int read()
+    {
+        int valor = conteudo[posicao] & 0xFF;
+        posicao = (posicao + 1) % conteudo.length;
+
+        return valor;
+    }
+
+    @Override
+    public int read(byte[] bytes, int inicio, int tamanho)
+    {
+        int copiados = 0;
+
+        while (copiados < tamanho)
+        {
+            int quantidade = Math.min(tamanho - copiados, conteudo.length - posicao);
+            System.arraycopy(conteudo, posicao, bytes, inicio + copiados, quantidade);
+
+            copiados += quantidade;
+            posicao = (posicao + quantidade) % conteudo.length;
+        }
+
+        return copiados;
+    }
+}
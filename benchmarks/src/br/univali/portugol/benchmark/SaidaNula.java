@@ -0,0 +1,24 @@
+package br.univali.portugol.benchmark;
+
+import java.io.OutputStream;
+
+/**
+ * Saída que descarta tudo o que recebe, para medir o custo de formatar e
+ * codificar os valores sem medir o terminal.
+ *
+ * @author Luiz Fernando Noschang
+ */
+final class SaidaNula extends OutputStream
+{
+    @Override
+    public void write(int b)
+    {
+
+    }
+
+    @Override
+    public void write(byte[] bytes, int inicio, int tamanho)
+    {
+
+    }
+}
@@ -0,0 +1,81 @@
+@echo off
+rem Executa o Portugol Console. Quando existe um arquivo CDS gerado pela mesma
+rem JVM (veja a opcao --gerar-cds), as classes do console, do nucleo e das
+rem bibliotecas sao mapeadas direto do arquivo, reduzindo o tempo de inicio.
+rem
+rem A opcao --daemon inicia um console que fica em execucao e mantem o
+rem compilador aquecido. Enquanto ele estiver em execucao, os programas sao
+rem enviados a ele por um cliente leve; se ele nao aceitar a conexao, o
+rem programa e executado normalmente.
+rem
+rem Uso: portugol-console [--gerar-cds | --daemon] [parametros do console] programa.por
+
+setlocal
+set "DIRETORIO=%~dp0"
+set "JAR=%DIRETORIO%portugol-console.jar"
+set "ARQUIVO_CDS=%DIRETORIO%portugol-console.jsa"
+set "ARQUIVO_JVM_CDS=%DIRETORIO%portugol-console.jsa.jvm"
+set "ARQUIVO_DAEMON=%USERPROFILE%\.portugol\console-daemon.properties"
+
+if defined JAVA_HOME (
+    set "JAVA=%JAVA_HOME%\bin\java.exe"
+) else (
+    set "JAVA=java.exe"
+)
+
+if "%~1"=="--gerar-cds" goto gerar_cds
+if "%~1"=="--daemon" goto daemon
+
+set "JVM_CDS="
+if exist "%ARQUIVO_CDS%" if exist "%ARQUIVO_JVM_CDS%" set /p JVM_CDS=<"%ARQUIVO_JVM_CDS%"
+
+rem O arquivo so e usado com a JVM que o gerou. Se ainda assim ele for
+rem invalido, -Xshare:auto faz a JVM ignora-lo sem interromper a execucao.
+set "OPCOES_CDS="
+if "%JVM_CDS%"=="%JAVA%" set OPCOES_CDS=-XX:SharedArchiveFile="%ARQUIVO_CDS%" -Xshare:auto -Xlog:cds=off -Xlog:cds+dynamic=off
+
+if exist "%ARQUIVO_DAEMON%" (
+    "%JAVA%" %OPCOES_CDS% -cp "%JAR%" br.univali.portugol.ClienteDaemon %*
+) else (
+    "%JAVA%" %OPCOES_CDS% -jar "%JAR%" %*
+)
+exit /b %ERRORLEVEL%
+
+:daemon
+shift
+set "PARAMETROS="
+:parametros_daemon
+if "%~1"=="" goto iniciar_daemon
+set PARAMETROS=%PARAMETROS% %1
+shift
+goto parametros_daemon
+
+:iniciar_daemon
+"%JAVA%" -jar "%JAR%" -daemon %PARAMETROS%
+exit /b %ERRORLEVEL%
+
+:gerar_cds
+del /q "%ARQUIVO_CDS%" "%ARQUIVO_JVM_CDS%" 2>nul
+
+rem Uma copia do programa de treino com um comentario unico garante que ele
+rem nao esta no cache, de modo que as classes usadas na compilacao e no
+rem armazenamento no cache tambem entram no arquivo
+set "TREINO=%DIRETORIO%treino-cds-%RANDOM%.por"
+copy /y "%DIRETORIO%treino-cds.por" "%TREINO%" >nul
+>>"%TREINO%" echo // %RANDOM% %DATE% %TIME%
+
+"%JAVA%" -XX:ArchiveClassesAtExit="%ARQUIVO_CDS%" -Xlog:cds=off -Xlog:cds+dynamic=off -jar "%JAR%" -no-wait -in="%DIRETORIO%treino-cds.txt" "%TREINO%" >nul
+set "RESULTADO=%ERRORLEVEL%"
+del /q "%TREINO%" 2>nul
+
+if not "%RESULTADO%"=="0" goto falha_cds
+if not exist "%ARQUIVO_CDS%" goto falha_cds
+
+>"%ARQUIVO_JVM_CDS%" echo %JAVA%
+echo Arquivo CDS gerado em %ARQUIVO_CDS%
+exit /b 0
+
+:falha_cds
+del /q "%ARQUIVO_CDS%" 2>nul
+echo Nao foi possivel gerar o arquivo CDS. E necessario o Java 13 ou superior. 1>&2
+exit /b 1
@@ -0,0 +1,837 @@
+package br.univali.portugol;
+
+import br.univali.portugol.nucleo.ErroCompilacao;
+import br.univali.portugol.nucleo.Portugol;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.CodeSource;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.ForwardingJavaFileObject;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
+
+/**
+ * Jar reduzido com apenas a API do núcleo que o código gerado para os
+ * programas usa, para ser informado ao javac no lugar do classpath completo.
+ * <p>
+ * O javac abre e indexa todos os jars do classpath a cada compilação, mas o
+ * código gerado só faz referência a uma pequena parte do núcleo e a nenhuma
+ * das demais bibliotecas. O jar reduzido é gerado durante o build pelo
+ * {@link #main(String[])} e contém somente as classes que o javac leu ao
+ * compilar o código gerado para um conjunto de programas de exemplo, as
+ * classes das bibliotecas do Portugol e as classes que aparecem nas
+ * assinaturas públicas de todas elas. Os corpos dos métodos e os membros
+ * privados são removidos.
+ * <p>
+ * As classes continuam sendo carregadas dos jars completos durante a
+ * execução. O jar reduzido só é usado se foi gerado a partir do núcleo
+ * instalado.
+ *
+ * @author Luiz Fernando Noschang
+ */
+public final class ApiCompilacao
+{
+    private static final String DIRETORIO_API = "api";
+    private static final String ARQUIVO_API = "portugol-api.jar";
+    private static final String EXTENSAO_CLASSE = ".class";
+
+    private static final Attributes.Name ATRIBUTO_NUCLEO = new Attributes.Name("Portugol-Api-Nucleo");
+    private static final List<String> PACOTES_PADRAO = Collections.singletonList("br.univali.portugol.nucleo.bibliotecas");
+    private static final List<String> CLASSES_PADRAO = Collections.singletonList("br.univali.portugol.nucleo.Programa");
+
+    private static final Pattern TIPO_ASSINATURA = Pattern.compile("L([^;<>.]+)[;<.]");
+
+    private static final int ACC_PRIVATE = 0x0002;
+
+    /**
+     * A chave do jar reduzido verificado e o classpath correspondente, vazio
+     * quando o jar não pode ser usado.
+     */
+    private static volatile String[] apiMemorizada = null;
+
+    private ApiCompilacao()
+    {
+    }
+
+    /**
+     * @return o classpath com o jar reduzido, ou {@code null} se ele não foi
+     * instalado ou foi gerado a partir de outro núcleo
+     */
+    public static String getClassPath()
+    {
+        if (Caminhos.rodandoNoNetbeans())
+        {
+            return null;
+        }
+
+        File arquivo = new File(new File(Caminhos.getDiretorioAplicacao(), DIRETORIO_API), ARQUIVO_API);
+        String nucleo = identificarNucleo(localizarNucleo(), true);
+        String chave = arquivo.getAbsolutePath() + ":" + arquivo.lastModified() + ":" + nucleo;
+        String[] memorizada = apiMemorizada;
+
+        if (memorizada == null || !memorizada[0].equals(chave))
+        {
+            memorizada = new String[] { chave, verificar(arquivo, nucleo) ? arquivo.getAbsolutePath() + File.pathSeparator : "" };
+            apiMemorizada = memorizada;
+        }
+
+        return memorizada[1].isEmpty() ? null : memorizada[1];
+    }
+
+    private static boolean verificar(File arquivo, String nucleo)
+    {
+        if (!arquivo.isFile() || nucleo == null)
+        {
+            return false;
+        }
+
+        try (JarFile jar = new JarFile(arquivo))
+        {
+            Manifest manifesto = jar.getManifest();
+
+            return manifesto != null && nucleo.equals(manifesto.getMainAttributes().getValue(ATRIBUTO_NUCLEO));
+        }
+        catch (IOException excecao)
+        {
+            Logger.getLogger(ApiCompilacao.class.getName()).log(Level.FINE, "Não foi possível ler o jar reduzido da API", excecao);
+
+            return false;
+        }
+    }
+
+    private static File localizarNucleo()
+    {
+        CodeSource origem = Portugol.class.getProtectionDomain().getCodeSource();
+
+        try
+        {
+            return (origem != null && origem.getLocation() != null) ? new File(origem.getLocation().toURI()) : null;
+        }
+        catch (Exception excecao)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * O jar do núcleo é identificado pelo hash do seu conteúdo, como nos
+     * pacotes de programas. Um núcleo recompilado com o mesmo tamanho teria
+     * outras assinaturas, e o javac compilaria sem erros contra o jar reduzido
+     * antigo, falhando só na execução.
+     */
+    private static String identificarNucleo(File jar, boolean instalado)
+    {
+        if (jar == null || !jar.isFile())
+        {
+            return null;
+        }
+
+        try
+        {
+            return instalado ? PacotePrograma.identificarJar(jar) : PacotePrograma.calcularIdentificacaoJar(jar);
+        }
+        catch (IOException excecao)
+        {
+            Logger.getLogger(ApiCompilacao.class.getName()).log(Level.FINE, "Não foi possível identificar o jar do núcleo", excecao);
+
+            return null;
+        }
+    }
+
+    /**
+     * Gera o jar reduzido. Executado durante o build, com o núcleo e as
+     * demais bibliotecas no classpath:
+     * {@code ApiCompilacao -saida=<jar> [-corpus=<diretório>] [-pacote=<nome>] [-classe=<nome>] <classpath completo>}
+     */
+    public static void main(String[] args) throws Exception
+    {
+        File saida = null;
+        File corpus = null;
+        List<String> pacotes = new ArrayList<>(PACOTES_PADRAO);
+        List<String> classes = new ArrayList<>(CLASSES_PADRAO);
+        List<File> jars = new ArrayList<>();
+
+        for (String parametro : args)
+        {
+            if (parametro.startsWith("-saida="))
+            {
+                saida = new File(parametro.substring("-saida=".length()));
+            }
+            else if (parametro.startsWith("-corpus="))
+            {
+                corpus = new File(parametro.substring("-corpus=".length()));
+            }
+            else if (parametro.startsWith("-pacote="))
+            {
+                pacotes.add(parametro.substring("-pacote=".length()));
+            }
+            else if (parametro.startsWith("-classe="))
+            {
+                classes.add(parametro.substring("-classe=".length()));
+            }
+            else
+            {
+                for (String caminho : parametro.split(Pattern.quote(File.pathSeparator)))
+                {
+                    if (caminho.toLowerCase().endsWith(".jar") && new File(caminho).isFile())
+                    {
+                        jars.add(new File(caminho));
+                    }
+                }
+            }
+        }
+
+        if (saida == null || jars.isEmpty())
+        {
+            System.err.println("Uso: ApiCompilacao -saida=<jar> [-corpus=<diretório>] [-pacote=<nome>] [-classe=<nome>] <classpath completo>");
+            System.exit(1);
+        }
+
+        Map<String, byte[]> disponiveis = lerClasses(jars);
+        Set<String> raizes = new HashSet<>();
+
+        for (String classe : classes)
+        {
+            raizes.add(classe.replace('.', '/'));
+        }
+
+        for (String pacote : pacotes)
+        {
+            String prefixo = pacote.replace('.', '/') + "/";
+
+            for (String classe : disponiveis.keySet())
+            {
+                if (classe.startsWith(prefixo))
+                {
+                    raizes.add(classe);
+                }
+            }
+        }
+
+        if (corpus != null)
+        {
+            raizes.addAll(registrarClassesLidas(corpus, jars));
+        }
+
+        Map<String, byte[]> api = reduzir(fecharAssinaturas(raizes, disponiveis), disponiveis);
+        String nucleo = identificarNucleo(localizarJar(jars, "br/univali/portugol/nucleo/Portugol" + EXTENSAO_CLASSE), false);
+
+        gravar(api, nucleo, saida);
+
+        System.out.println(String.format("%d de %d classes de %d jars gravadas em '%s' (%d KB)", api.size(), disponiveis.size(), jars.size(), saida.getPath(), saida.length() / 1024));
+    }
+
+    private static Map<String, byte[]> lerClasses(List<File> jars) throws IOException
+    {
+        Map<String, byte[]> classes = new LinkedHashMap<>();
+
+        for (File arquivo : jars)
+        {
+            try (JarFile jar = new JarFile(arquivo))
+            {
+                Enumeration<JarEntry> entradas = jar.entries();
+
+                while (entradas.hasMoreElements())
+                {
+                    JarEntry entrada = entradas.nextElement();
+                    String nome = entrada.getName();
+
+                    // A primeira ocorrência prevalece, como no classpath
+                    if (nome.endsWith(EXTENSAO_CLASSE) && !nome.startsWith("META-INF/") && !classes.containsKey(nome))
+                    {
+                        try (InputStream conteudo = jar.getInputStream(entrada))
+                        {
+                            classes.put(nome.substring(0, nome.length() - EXTENSAO_CLASSE.length()), lerTudo(conteudo));
+                        }
+                    }
+                }
+            }
+        }
+
+        return classes;
+    }
+
+    private static File localizarJar(List<File> jars, String entrada) throws IOException
+    {
+        for (File arquivo : jars)
+        {
+            try (JarFile jar = new JarFile(arquivo))
+            {
+                if (jar.getEntry(entrada) != null)
+                {
+                    return arquivo;
+                }
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Compila o código gerado para os programas do corpus registrando os
+     * arquivos de classe que o javac abre no classpath.
+     *
+     * @return os nomes internos das classes lidas
+     */
+    private static Set<String> registrarClassesLidas(File corpus, List<File> jars) throws Exception
+    {
+        Map<String, String> fontes = new LinkedHashMap<>();
+        int indice = 0;
+
+        for (File arquivo : Precompilador.listarProgramas(corpus))
+        {
+            try
+            {
+                String nomeClasse = "ProgramaPortugol" + indice++;
+
+                fontes.put(nomeClasse, CompiladorInterno.gerarCodigoJava(Portugol.compilarParaAnalise(Console.lerArquivo(arquivo)), nomeClasse));
+            }
+            catch (ErroCompilacao erroCompilacao)
+            {
+                System.err.println(String.format("O programa '%s' contém erros e foi ignorado", arquivo.getPath()));
+            }
+        }
+
+        JavaCompiler compilador = ToolProvider.getSystemJavaCompiler();
+
+        if (compilador == null)
+        {
+            throw new IOException("Não há um compilador Java disponível nesta JVM");
+        }
+
+        StringBuilder classPath = new StringBuilder();
+
+        for (File jar : jars)
+        {
+            classPath.append(jar.getPath()).append(File.pathSeparator);
+        }
+
+        Set<String> lidas = Collections.synchronizedSet(new HashSet<String>());
+        List<JavaFileObject> unidades = new ArrayList<>();
+
+        for (Map.Entry<String, String> fonte : fontes.entrySet())
+        {
+            unidades.add(new FonteMemoria(fonte.getKey(), fonte.getValue()));
+        }
+
+        DiagnosticCollector<JavaFileObject> diagnosticos = new DiagnosticCollector<>();
+
+        try (GerenciadorRegistro gerenciador = new GerenciadorRegistro(compilador.getStandardFileManager(null, null, null), lidas))
+        {
+            // Apenas a análise e a atribuição de tipos, nada é gravado
+            if (!Boolean.TRUE.equals(compilador.getTask(null, gerenciador, diagnosticos, Arrays.asList("-nowarn", "-proc:none", "-classpath", classPath.toString()), null, unidades).call()))
+            {
+                throw new IOException("O código gerado para o corpus não compila: " + diagnosticos.getDiagnostics());
+            }
+        }
+
+        return lidas;
+    }
+
+    /**
+     * Acrescenta às raízes as classes que aparecem na hierarquia e nas
+     * assinaturas não privadas de cada classe incluída, além das suas
+     * classes membro e da classe que a contém.
+     */
+    private static Set<String> fecharAssinaturas(Set<String> raizes, Map<String, byte[]> disponiveis) throws IOException
+    {
+        Set<String> incluidas = new HashSet<>();
+        Deque<String> pendentes = new ArrayDeque<>(raizes);
+
+        while (!pendentes.isEmpty())
+        {
+            String classe = pendentes.poll();
+
+            if (!disponiveis.containsKey(classe) || !incluidas.add(classe))
+            {
+                continue;
+            }
+
+            for (String referencia : new ArquivoClasse(disponiveis.get(classe)).referenciasApi())
+            {
+                if (!incluidas.contains(referencia))
+                {
+                    pendentes.add(referencia);
+                }
+            }
+        }
+
+        return incluidas;
+    }
+
+    private static Map<String, byte[]> reduzir(Set<String> classes, Map<String, byte[]> disponiveis) throws IOException
+    {
+        Map<String, byte[]> reduzidas = new TreeMap<>();
+
+        for (String classe : classes)
+        {
+            reduzidas.put(classe, new ArquivoClasse(disponiveis.get(classe)).reduzir());
+        }
+
+        return reduzidas;
+    }
+
+    private static void gravar(Map<String, byte[]> classes, String nucleo, File destino) throws IOException
+    {
+        Manifest manifesto = new Manifest();
+        manifesto.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+
+        if (nucleo != null)
+        {
+            manifesto.getMainAttributes().put(ATRIBUTO_NUCLEO, nucleo);
+        }
+
+        File diretorio = destino.getAbsoluteFile().getParentFile();
+        Files.createDirectories(diretorio.toPath());
+        File temporario = File.createTempFile(destino.getName(), ".tmp", diretorio);
+
+        try
+        {
+            try (JarOutputStream saida = new JarOutputStream(new FileOutputStream(temporario), manifesto))
+            {
+                for (Map.Entry<String, byte[]> classe : classes.entrySet())
+                {
+                    saida.putNextEntry(new JarEntry(classe.getKey() + EXTENSAO_CLASSE));
+                    saida.write(classe.getValue());
+                    saida.closeEntry();
+                }
+            }
+
+            Files.move(temporario.toPath(), destino.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        finally
+        {
+            temporario.delete();
+        }
+    }
+
+    private static byte[] lerTudo(InputStream entrada) throws IOException
+    {
+        ByteArrayOutputStream conteudo = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int lidos;
+
+        while ((lidos = entrada.read(buffer)) > 0)
+        {
+            conteudo.write(buffer, 0, lidos);
+        }
+
+        return conteudo.toByteArray();
+    }
+
+    /**
+     * Leitura do formato de arquivo de classe suficiente para encontrar as
+     * referências da API e remover o que o javac não usa. O conjunto de
+     * constantes é copiado sem alterações, então nenhum índice muda.
+     */
+    private static final class ArquivoClasse
+    {
+        private final byte[] bytes;
+        private final String[] textos;
+        private final int[] classes;
+        private final int fimConstantes;
+
+        ArquivoClasse(byte[] bytes) throws IOException
+        {
+            this.bytes = bytes;
+
+            ByteArrayInputStream fluxo = new ByteArrayInputStream(bytes, 8, bytes.length - 8);
+            DataInputStream entrada = new DataInputStream(fluxo);
+            int quantidade = entrada.readUnsignedShort();
+
+            textos = new String[quantidade];
+            classes = new int[quantidade];
+
+            for (int i = 1; i < quantidade; i++)
+            {
+                int tag = entrada.readUnsignedByte();
+
+                switch (tag)
+                {
+                    case 1:
+                        textos[i] = entrada.readUTF();
+                        break;
+                    case 7:
+                        classes[i] = entrada.readUnsignedShort();
+                        break;
+                    case 8: case 16: case 19: case 20:
+                        entrada.skipBytes(2);
+                        break;
+                    case 15:
+                        entrada.skipBytes(3);
+                        break;
+                    case 3: case 4: case 9: case 10: case 11: case 12: case 17: case 18:
+                        entrada.skipBytes(4);
+                        break;
+                    case 5: case 6:
+                        // Ocupam duas posições no conjunto de constantes
+                        entrada.skipBytes(8);
+                        i++;
+                        break;
+                    default:
+                        throw new IOException("Constante desconhecida no arquivo de classe: " + tag);
+                }
+            }
+
+            fimConstantes = bytes.length - fluxo.available();
+        }
+
+        private DataInputStream entrada(int deslocamento)
+        {
+            return new DataInputStream(new ByteArrayInputStream(bytes, deslocamento, bytes.length - deslocamento));
+        }
+
+        private String nomeClasse(int indice)
+        {
+            return (indice != 0) ? textos[classes[indice]] : null;
+        }
+
+        Set<String> referenciasApi() throws IOException
+        {
+            Set<String> referencias = new HashSet<>();
+            DataInputStream entrada = entrada(fimConstantes);
+
+            entrada.readUnsignedShort();
+            String nome = nomeClasse(entrada.readUnsignedShort());
+            adicionar(referencias, nomeClasse(entrada.readUnsignedShort()));
+
+            int interfaces = entrada.readUnsignedShort();
+
+            for (int i = 0; i < interfaces; i++)
+            {
+                adicionar(referencias, nomeClasse(entrada.readUnsignedShort()));
+            }
+
+            for (int membros = 0; membros < 2; membros++)
+            {
+                int quantidade = entrada.readUnsignedShort();
+
+                for (int i = 0; i < quantidade; i++)
+                {
+                    int acesso = entrada.readUnsignedShort();
+                    entrada.readUnsignedShort();
+                    String descritor = textos[entrada.readUnsignedShort()];
+                    boolean visivel = (acesso & ACC_PRIVATE) == 0;
+
+                    if (visivel)
+                    {
+                        adicionarTipos(referencias, descritor);
+                    }
+
+                    lerAtributos(entrada, visivel ? referencias : null, nome);
+                }
+            }
+
+            lerAtributos(entrada, referencias, nome);
+
+            return referencias;
+        }
+
+        private void lerAtributos(DataInputStream entrada, Set<String> referencias, String nome) throws IOException
+        {
+            int quantidade = entrada.readUnsignedShort();
+
+            for (int i = 0; i < quantidade; i++)
+            {
+                String atributo = textos[entrada.readUnsignedShort()];
+                int tamanho = entrada.readInt();
+
+                if (referencias == null)
+                {
+                    entrada.skipBytes(tamanho);
+                }
+                else if (atributo.equals("Signature"))
+                {
+                    adicionarTipos(referencias, textos[entrada.readUnsignedShort()]);
+                }
+                else if (atributo.equals("Exceptions"))
+                {
+                    int excecoes = entrada.readUnsignedShort();
+
+                    for (int j = 0; j < excecoes; j++)
+                    {
+                        adicionar(referencias, nomeClasse(entrada.readUnsignedShort()));
+                    }
+                }
+                else if (atributo.equals("InnerClasses"))
+                {
+                    int internas = entrada.readUnsignedShort();
+
+                    for (int j = 0; j < internas; j++)
+                    {
+                        String interna = nomeClasse(entrada.readUnsignedShort());
+                        String externa = nomeClasse(entrada.readUnsignedShort());
+                        entrada.readUnsignedShort();
+                        int acesso = entrada.readUnsignedShort();
+
+                        if (nome.equals(interna))
+                        {
+                            adicionar(referencias, externa);
+                        }
+                        else if (nome.equals(externa) && (acesso & ACC_PRIVATE) == 0)
+                        {
+                            adicionar(referencias, interna);
+                        }
+                    }
+                }
+                else
+                {
+                    entrada.skipBytes(tamanho);
+                }
+            }
+        }
+
+        private static void adicionar(Set<String> referencias, String classe)
+        {
+            if (classe != null && !classe.startsWith("["))
+            {
+                referencias.add(classe);
+            }
+        }
+
+        private static void adicionarTipos(Set<String> referencias, String descritor)
+        {
+            Matcher tipo = TIPO_ASSINATURA.matcher(descritor);
+
+            while (tipo.find())
+            {
+                referencias.add(tipo.group(1));
+            }
+        }
+
+        /**
+         * @return a classe sem os membros privados, sem o inicializador
+         * estático e sem o código dos métodos
+         */
+        byte[] reduzir() throws IOException
+        {
+            ByteArrayOutputStream reduzida = new ByteArrayOutputStream(bytes.length);
+            DataOutputStream saida = new DataOutputStream(reduzida);
+            DataInputStream entrada = entrada(fimConstantes);
+
+            saida.write(bytes, 0, fimConstantes);
+            saida.writeShort(entrada.readUnsignedShort());
+            saida.writeShort(entrada.readUnsignedShort());
+            saida.writeShort(entrada.readUnsignedShort());
+
+            int interfaces = entrada.readUnsignedShort();
+            saida.writeShort(interfaces);
+
+            for (int i = 0; i < interfaces; i++)
+            {
+                saida.writeShort(entrada.readUnsignedShort());
+            }
+
+            for (int membros = 0; membros < 2; membros++)
+            {
+                int quantidade = entrada.readUnsignedShort();
+                ByteArrayOutputStream mantidos = new ByteArrayOutputStream();
+                DataOutputStream saidaMembros = new DataOutputStream(mantidos);
+                int quantidadeMantidos = 0;
+
+                for (int i = 0; i < quantidade; i++)
+                {
+                    int acesso = entrada.readUnsignedShort();
+                    int nome = entrada.readUnsignedShort();
+                    int descritor = entrada.readUnsignedShort();
+                    boolean manter = (acesso & ACC_PRIVATE) == 0 && !"<clinit>".equals(textos[nome]);
+
+                    if (manter)
+                    {
+                        saidaMembros.writeShort(acesso);
+                        saidaMembros.writeShort(nome);
+                        saidaMembros.writeShort(descritor);
+                        quantidadeMantidos++;
+                    }
+
+                    copiarAtributos(entrada, manter ? saidaMembros : null, "Code");
+                }
+
+                saida.writeShort(quantidadeMantidos);
+                mantidos.writeTo(saida);
+            }
+
+            copiarAtributos(entrada, saida, "SourceFile");
+            saida.flush();
+
+            return reduzida.toByteArray();
+        }
+
+        private void copiarAtributos(DataInputStream entrada, DataOutputStream saida, String removido) throws IOException
+        {
+            int quantidade = entrada.readUnsignedShort();
+            ByteArrayOutputStream mantidos = new ByteArrayOutputStream();
+            DataOutputStream saidaAtributos = new DataOutputStream(mantidos);
+            int quantidadeMantidos = 0;
+
+            for (int i = 0; i < quantidade; i++)
+            {
+                int nome = entrada.readUnsignedShort();
+                byte[] conteudo = new byte[entrada.readInt()];
+                entrada.readFully(conteudo);
+
+                if (!textos[nome].equals(removido))
+                {
+                    saidaAtributos.writeShort(nome);
+                    saidaAtributos.writeInt(conteudo.length);
+                    saidaAtributos.write(conteudo);
+                    quantidadeMantidos++;
+                }
+            }
+
+            if (saida != null)
+            {
+                saida.writeShort(quantidadeMantidos);
+                mantidos.writeTo(saida);
+            }
+        }
+    }
+
+    private static final class FonteMemoria extends SimpleJavaFileObject
+    {
+        private final String codigo;
+
+        FonteMemoria(String nome, String codigo)
+        {
+            super(URI.create("string:///" + nome + Kind.SOURCE.extension), Kind.SOURCE);
+            this.codigo = codigo;
+        }
+
+        @Override
+        public CharSequence getCharContent(boolean ignorarErrosCodificacao)
+        {
+            return codigo;
+        }
+    }
+
+    /**
+     * Registra as classes do classpath que o javac abre e descarta as classes
+     * geradas.
+     */
+    private static final class GerenciadorRegistro extends ForwardingJavaFileManager<StandardJavaFileManager>
+    {
+        private final Set<String> lidas;
+
+        GerenciadorRegistro(StandardJavaFileManager gerenciador, Set<String> lidas)
+        {
+            super(gerenciador);
+            this.lidas = lidas;
+        }
+
+        @Override
+        public Iterable<JavaFileObject> list(Location local, String pacote, Set<JavaFileObject.Kind> tipos, boolean recursivo) throws IOException
+        {
+            Iterable<JavaFileObject> arquivos = super.list(local, pacote, tipos, recursivo);
+
+            if (local != StandardLocation.CLASS_PATH)
+            {
+                return arquivos;
+            }
+
+            List<JavaFileObject> registrados = new ArrayList<>();
+
+            for (JavaFileObject arquivo : arquivos)
+            {
+                registrados.add(new ArquivoRegistrado(arquivo, super.inferBinaryName(local, arquivo), lidas));
+            }
+
+            return registrados;
+        }
+
+        @Override
+        public String inferBinaryName(Location local, JavaFileObject arquivo)
+        {
+            if (arquivo instanceof ArquivoRegistrado)
+            {
+                return ((ArquivoRegistrado) arquivo).nome;
+            }
+
+            return super.inferBinaryName(local, arquivo);
+        }
+
+        @Override
+        public boolean isSameFile(FileObject a, FileObject b)
+        {
+            return super.isSameFile(desembrulhar(a), desembrulhar(b));
+        }
+
+        private static FileObject desembrulhar(FileObject arquivo)
+        {
+            return (arquivo instanceof ArquivoRegistrado) ? ((ArquivoRegistrado) arquivo).original : arquivo;
+        }
+
+        @Override
+        public JavaFileObject getJavaFileForOutput(JavaFileManager.Location local, String nomeClasse, JavaFileObject.Kind tipo, FileObject origem)
+        {
+            return new SimpleJavaFileObject(URI.create("mem:///" + nomeClasse.replace('.', '/') + tipo.extension), tipo)
+            {
+                @Override
+                public OutputStream openOutputStream()
+                {
+                    return new ByteArrayOutputStream();
+                }
+            };
+        }
+    }
+
+    private static final class ArquivoRegistrado extends ForwardingJavaFileObject<JavaFileObject>
+    {
+        private final JavaFileObject original;
+        private final String nome;
+        private final Set<String> lidas;
+
+        ArquivoRegistrado(JavaFileObject original, String nome, Set<String> lidas)
+        {
+            super(original);
+            this.original = original;
+            this.nome = nome;
+            this.lidas = lidas;
+        }
+
+        @Override
+        public InputStream openInputStream() throws IOException
+        {
+            lidas.add(nome.replace('.', '/'));
+
+            return super.openInputStream();
+        }
+    }
+}
@@ -0,0 +1,395 @@
+package br.univali.portugol;
+
+import br.univali.portugol.nucleo.Portugol;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Cache em disco dos programas já compilados, indexado pelo hash do código
+ * fonte, do classpath de compilação e das versões do javac e do núcleo.
+ * <p>
+ * Cada entrada é um diretório com os arquivos .class do programa. As entradas
+ * são escritas em um diretório temporário e publicadas com uma renomeação
+ * atômica, de modo que vários processos podem compartilhar o mesmo cache. A
+ * remoção das entradas menos usadas é feita sob uma trava de arquivo.
+ *
+ * @author Luiz Fernando Noschang
+ */
+public final class CacheCompilacao
+{
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+
+    private static final String ARQUIVO_CLASSE_PRINCIPAL = "classe";
+    private static final String ARQUIVO_AVISOS = "avisos";
+    private static final String ARQUIVO_TRAVA = ".trava";
+    private static final String EXTENSAO_CLASSE = ".class";
+    private static final long IDADE_MAXIMA_TEMPORARIOS = 60 * 60 * 1000;
+
+    private static final Object travaLocal = new Object();
+
+    private final File diretorio;
+    private final long tamanhoMaximo;
+
+    public CacheCompilacao(File diretorio, long tamanhoMaximo)
+    {
+        this.diretorio = diretorio;
+        this.tamanhoMaximo = tamanhoMaximo;
+    }
+
+    public String calcularChave(String algoritmo, String classPath, String caminhoJavac)
+    {
+        try
+        {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+
+            atualizar(digest, algoritmo);
+            atualizar(digest, classPath);
+            atualizar(digest, caminhoJavac);
+            atualizar(digest, obterVersaoArquivo(new File(caminhoJavac)));
+            atualizar(digest, obterVersaoNucleo());
+
+            return paraHexadecimal(digest.digest());
+        }
+        catch (NoSuchAlgorithmException excecao)
+        {
+            throw new IllegalStateException(excecao);
+        }
+    }
+
+    public ProgramaCompilado carregar(String chave)
+    {
+        File entrada = new File(diretorio, chave);
+        File arquivoClasse = new File(entrada, ARQUIVO_CLASSE_PRINCIPAL);
+
+        if (!arquivoClasse.isFile())
+        {
+            return null;
+        }
+
+        try
+        {
+            String nomeClassePrincipal = new String(Files.readAllBytes(arquivoClasse.toPath()), CHARSET).trim();
+            List<String> avisos = Files.readAllLines(new File(entrada, ARQUIVO_AVISOS).toPath(), CHARSET);
+            Map<String, byte[]> classes = new LinkedHashMap<>();
+            File[] arquivos = entrada.listFiles();
+
+            if (arquivos == null)
+            {
+                return null;
+            }
+
+            for (File arquivo : arquivos)
+            {
+                String nome = arquivo.getName();
+
+                if (nome.endsWith(EXTENSAO_CLASSE))
+                {
+                    classes.put(nome.substring(0, nome.length() - EXTENSAO_CLASSE.length()), Files.readAllBytes(arquivo.toPath()));
+                }
+            }
+
+            if (!classes.containsKey(nomeClassePrincipal))
+            {
+                return null;
+            }
+
+            entrada.setLastModified(System.currentTimeMillis());
+
+            return new ProgramaCompilado(nomeClassePrincipal, classes, avisos);
+        }
+        catch (IOException excecao)
+        {
+            // A entrada pode ter sido removida por outro processo durante a leitura
+            Logger.getLogger(CacheCompilacao.class.getName()).log(Level.FINE, "Não foi possível ler a entrada do cache " + chave, excecao);
+
+            return null;
+        }
+    }
+
+    public void armazenar(String chave, ProgramaCompilado programaCompilado)
+    {
+        armazenar(Collections.singletonMap(chave, programaCompilado));
+    }
+
+    /**
+     * Armazena vários programas de uma vez, liberando espaço no cache uma
+     * única vez ao final.
+     */
+    public void armazenar(Map<String, ProgramaCompilado> programas)
+    {
+        for (Map.Entry<String, ProgramaCompilado> programa : programas.entrySet())
+        {
+            gravarEntrada(programa.getKey(), programa.getValue());
+        }
+
+        try
+        {
+            liberarEspaco();
+        }
+        catch (IOException excecao)
+        {
+            Logger.getLogger(CacheCompilacao.class.getName()).log(Level.WARNING, "Não foi possível liberar espaço no cache", excecao);
+        }
+    }
+
+    private void gravarEntrada(String chave, ProgramaCompilado programaCompilado)
+    {
+        File entrada = new File(diretorio, chave);
+
+        if (entrada.isDirectory())
+        {
+            return;
+        }
+
+        File temporario = new File(diretorio, chave + ".tmp-" + UUID.randomUUID());
+
+        try
+        {
+            Files.createDirectories(temporario.toPath());
+
+            for (Map.Entry<String, byte[]> classe : programaCompilado.getClasses().entrySet())
+            {
+                Files.write(new File(temporario, classe.getKey() + EXTENSAO_CLASSE).toPath(), classe.getValue());
+            }
+
+            Files.write(new File(temporario, ARQUIVO_AVISOS).toPath(), programaCompilado.getAvisos(), CHARSET);
+            Files.write(new File(temporario, ARQUIVO_CLASSE_PRINCIPAL).toPath(), programaCompilado.getNomeClassePrincipal().getBytes(CHARSET));
+
+            mover(temporario, entrada);
+        }
+        catch (FileAlreadyExistsException excecao)
+        {
+            // Outro processo publicou a mesma entrada primeiro
+        }
+        catch (IOException excecao)
+        {
+            Logger.getLogger(CacheCompilacao.class.getName()).log(Level.WARNING, "Não foi possível armazenar o programa no cache", excecao);
+        }
+        finally
+        {
+            remover(temporario);
+        }
+    }
+
+    private void liberarEspaco() throws IOException
+    {
+        synchronized (travaLocal)
+        {
+            try (RandomAccessFile arquivoTrava = new RandomAccessFile(new File(diretorio, ARQUIVO_TRAVA), "rw");
+                 FileChannel canal = arquivoTrava.getChannel())
+            {
+                FileLock trava = canal.lock();
+
+                try
+                {
+                    File[] arquivos = diretorio.listFiles();
+
+                    if (arquivos == null)
+                    {
+                        return;
+                    }
+
+                    List<File> entradas = new ArrayList<>();
+                    long tamanhoTotal = 0;
+                    long agora = System.currentTimeMillis();
+
+                    for (File arquivo : arquivos)
+                    {
+                        if (!arquivo.isDirectory())
+                        {
+                            continue;
+                        }
+
+                        if (arquivo.getName().indexOf('.') >= 0)
+                        {
+                            // Sobras de escritas ou remoções interrompidas
+                            if (agora - arquivo.lastModified() > IDADE_MAXIMA_TEMPORARIOS)
+                            {
+                                remover(arquivo);
+                            }
+
+                            continue;
+                        }
+
+                        entradas.add(arquivo);
+                        tamanhoTotal += calcularTamanho(arquivo);
+                    }
+
+                    if (tamanhoTotal <= tamanhoMaximo)
+                    {
+                        return;
+                    }
+
+                    File[] ordenadas = entradas.toArray(new File[entradas.size()]);
+                    final Map<File, Long> ultimoAcesso = new LinkedHashMap<>();
+
+                    for (File entrada : ordenadas)
+                    {
+                        ultimoAcesso.put(entrada, entrada.lastModified());
+                    }
+
+                    Arrays.sort(ordenadas, new Comparator<File>()
+                    {
+                        @Override
+                        public int compare(File a, File b)
+                        {
+                            return Long.compare(ultimoAcesso.get(a), ultimoAcesso.get(b));
+                        }
+                    });
+
+                    for (File entrada : ordenadas)
+                    {
+                        if (tamanhoTotal <= tamanhoMaximo)
+                        {
+                            break;
+                        }
+
+                        long tamanho = calcularTamanho(entrada);
+                        File removida = new File(diretorio, entrada.getName() + ".del-" + UUID.randomUUID());
+
+                        try
+                        {
+                            mover(entrada, removida);
+                        }
+                        catch (IOException excecao)
+                        {
+                            continue;
+                        }
+
+                        remover(removida);
+                        tamanhoTotal -= tamanho;
+                    }
+                }
+                finally
+                {
+                    trava.release();
+                }
+            }
+        }
+    }
+
+    private static void mover(File origem, File destino) throws IOException
+    {
+        try
+        {
+            Files.move(origem.toPath(), destino.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (AtomicMoveNotSupportedException excecao)
+        {
+            Files.move(origem.toPath(), destino.toPath());
+        }
+        catch (IOException excecao)
+        {
+            if (destino.exists())
+            {
+                throw new FileAlreadyExistsException(destino.getPath());
+            }
+
+            throw excecao;
+        }
+    }
+
+    private static long calcularTamanho(File entrada)
+    {
+        long tamanho = 0;
+        File[] arquivos = entrada.listFiles();
+
+        if (arquivos != null)
+        {
+            for (File arquivo : arquivos)
+            {
+                tamanho += arquivo.length();
+            }
+        }
+
+        return tamanho;
+    }
+
+    private static void remover(File arquivo)
+    {
+        File[] arquivos = arquivo.listFiles();
+
+        if (arquivos != null)
+        {
+            for (File filho : arquivos)
+            {
+                remover(filho);
+            }
+        }
+
+        arquivo.delete();
+    }
+
+    private static String obterVersaoNucleo()
+    {
+        Package pacote = Portugol.class.getPackage();
+
+        if (pacote != null && pacote.getImplementationVersion() != null)
+        {
+            return pacote.getImplementationVersion();
+        }
+
+        CodeSource origem = Portugol.class.getProtectionDomain().getCodeSource();
+
+        if (origem != null && origem.getLocation() != null)
+        {
+            try
+            {
+                return obterVersaoArquivo(new File(origem.getLocation().toURI()));
+            }
+            catch (Exception excecao)
+            {
+                return origem.getLocation().toExternalForm();
+            }
+        }
+
+        return "";
+    }
+
+    private static String obterVersaoArquivo(File arquivo)
+    {
+        return arquivo.getAbsolutePath() + ":" + arquivo.length() + ":" + arquivo.lastModified();
+    }
+
+    private static void atualizar(MessageDigest digest, String valor)
+    {
+        byte[] bytes = (valor != null ? valor : "").getBytes(CHARSET);
+
+        digest.update(bytes);
+        digest.update((byte) 0);
+    }
+
+    static String paraHexadecimal(byte[] bytes)
+    {
+        StringBuilder hexadecimal = new StringBuilder(bytes.length * 2);
+
+        for (byte b : bytes)
+        {
+            hexadecimal.append(Character.forDigit((b >> 4) & 0xF, 16));
+            hexadecimal.append(Character.forDigit(b & 0xF, 16));
+        }
+
+        return hexadecimal.toString();
+    }
+}
@@ -18,6 +18,7 @@ public final class Caminhos
     public static final File diretorioInstalacao = resolverDiretorioInstalacao();
     private static final File diretorioTemporario = new File(diretorioInstalacao, "temp");
     private static final File diretorioCompilacao = new File(diretorioTemporario, "compilacao");
+    private static final File diretorioCacheCompilacao = new File(diretorioCompilacao, "cache");
     private static final File diretorioAplicacao = new File(diretorioInstalacao, "aplicacao");
 
     private static File resolverDiretorioInstalacao()
@@ -60,6 +61,11 @@ public final class Caminhos
         return diretorioCompilacao;
     }
 
+    public static File getDiretorioCacheCompilacao() 
+    {
+        return diretorioCacheCompilacao;
+    }
+
     public static File getDiretorioInstalacao() 
     {
         return diretorioInstalacao;
@@ -0,0 +1,31 @@
+package br.univali.portugol;
+
+import java.util.Map;
+
+/**
+ *
+ * @author Luiz Fernando Noschang
+ */
+final class CarregadorClassesMemoria extends ClassLoader
+{
+    private final Map<String, byte[]> classes;
+
+    CarregadorClassesMemoria(Map<String, byte[]> classes, ClassLoader pai)
+    {
+        super(pai);
+        this.classes = classes;
+    }
+
+    @Override
+    protected Class<?> findClass(String nome) throws ClassNotFoundException
+    {
+        byte[] bytes = classes.get(nome);
+
+        if (bytes == null)
+        {
+            throw new ClassNotFoundException(nome);
+        }
+
+        return defineClass(nome, bytes, 0, bytes.length);
+    }
+}
@@ -0,0 +1,444 @@
+package br.univali.portugol;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Cliente leve que repassa a sessão do terminal para o {@link ServidorDaemon}.
+ * <p>
+ * Só uma execução simples de programa é enviada ao daemon: os parâmetros
+ * {@code -in=}, {@code -out=}, {@code -err=} e {@code -no-wait} são tratados
+ * aqui, com a mesma semântica do {@link Console}, e {@code -limite-tempo=} é
+ * aplicado pelo daemon. Com qualquer outro parâmetro do console, com nenhum
+ * programa informado, quando não há daemon em execução ou quando ele não
+ * aceita a sessão, tudo é feito pelo próprio console neste processo. Depois
+ * que a sessão foi aceita o programa já pode ter lido a entrada e escrito a
+ * saída, então uma falha na conexão é apenas informada, sem executar o
+ * programa novamente.
+ * <p>
+ * Esta classe não deve depender do núcleo nem de outras classes pesadas, para
+ * que a JVM do cliente inicie o mais rápido possível.
+ *
+ * @author Luiz Fernando Noschang
+ */
+public final class ClienteDaemon
+{
+    private static final int TEMPO_CONEXAO = 200;
+    private static final int TEMPO_ACEITACAO = 2000;
+    private static final int CODIGO_ERRO = 1;
+    private static final int CODIGO_TEMPO_ESGOTADO = 2;
+    private static final byte[] FIM_ENTRADA = new byte[0];
+    private static final String[] PARAMETROS_SESSAO = { "-no-wait", "-in=", "-out=", "-err=", "-limite-tempo=" };
+
+    private final BlockingQueue<byte[]> entradaAposEncerramento = new LinkedBlockingQueue<>();
+    private volatile boolean sessaoEncerrada = false;
+
+    public static void main(String[] args)
+    {
+        String[] publicacao = atendidoPeloDaemon(args) ? ProtocoloDaemon.lerPublicacao() : null;
+
+        if (publicacao != null)
+        {
+            Integer codigo = new ClienteDaemon().executar(publicacao, args);
+
+            if (codigo != null)
+            {
+                System.exit(codigo);
+            }
+        }
+
+        Console.main(args);
+    }
+
+    /**
+     * O console trata os seus parâmetros em qualquer posição, então qualquer
+     * parâmetro iniciado por '-' que o daemon não conhece faz a execução ser
+     * local, para que ele não seja tomado pelo caminho do programa nem
+     * repassado ao programa.
+     *
+     * @return {@code true} se os parâmetros descrevem apenas a execução de um
+     * programa, com os parâmetros tratados pela sessão do daemon
+     */
+    private static boolean atendidoPeloDaemon(String[] args)
+    {
+        boolean programaInformado = false;
+
+        for (String parametro : args)
+        {
+            if (!parametro.startsWith("-"))
+            {
+                programaInformado = true;
+            }
+            else if (!parametroSessao(parametro))
+            {
+                return false;
+            }
+        }
+
+        return programaInformado;
+    }
+
+    private static boolean parametroSessao(String parametro)
+    {
+        String nome = parametro.toLowerCase();
+
+        for (String parametroSessao : PARAMETROS_SESSAO)
+        {
+            if (parametroSessao.endsWith("=") ? nome.startsWith(parametroSessao) : nome.equals(parametroSessao))
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @return o código de encerramento, ou {@code null} se o daemon não
+     * aceitou a sessão e o programa deve ser executado localmente
+     */
+    private Integer executar(String[] publicacao, String[] args)
+    {
+        List<String> parametros = new ArrayList<>(Arrays.asList(args));
+        boolean aguardarParaSair = extrairParametro(parametros, "-no-wait", false).isEmpty();
+        String arquivoEntrada = extrairParametro(parametros, "-in=", true);
+        String arquivoSaida = extrairParametro(parametros, "-out=", true);
+        String arquivoErros = extrairParametro(parametros, "-err=", true);
+        String limiteTempo = extrairParametro(parametros, "-limite-tempo=", true);
+
+        InputStream entrada = abrirEntrada(arquivoEntrada);
+        PrintStream saida = abrirSaida(arquivoSaida, System.out);
+        PrintStream erros = abrirSaida(arquivoErros, System.err);
+
+        String caminho = new File(parametros.remove(0)).getAbsolutePath();
+
+        if (limiteTempo != null)
+        {
+            parametros.add("-limite-tempo=" + limiteTempo);
+        }
+
+        Socket conexao = conectar(publicacao, caminho, parametros);
+
+        if (conexao == null)
+        {
+            return null;
+        }
+
+        try
+        {
+            final DataOutputStream envio = new DataOutputStream(new BufferedOutputStream(conexao.getOutputStream()));
+            DataInputStream recebimento = new DataInputStream(new BufferedInputStream(conexao.getInputStream()));
+
+            repassarEntrada(entrada, envio);
+
+            while (true)
+            {
+                byte tipo = recebimento.readByte();
+
+                if (tipo == ProtocoloDaemon.FIM)
+                {
+                    sessaoEncerrada = true;
+
+                    return encerrar(recebimento.readByte(), recebimento.readUTF(), aguardarParaSair, saida, erros);
+                }
+
+                byte[] bytes = new byte[recebimento.readInt()];
+                recebimento.readFully(bytes);
+
+                PrintStream destino = (tipo == ProtocoloDaemon.ERRO) ? erros : saida;
+                destino.write(bytes, 0, bytes.length);
+                destino.flush();
+            }
+        }
+        catch (IOException excecao)
+        {
+            sessaoEncerrada = true;
+            saida.flush();
+            erros.println("\nA conexão com o daemon foi interrompida: " + excecao.getMessage());
+            erros.flush();
+
+            return CODIGO_ERRO;
+        }
+        finally
+        {
+            try
+            {
+                conexao.close();
+            }
+            catch (IOException excecao)
+            {
+            }
+        }
+    }
+
+    /**
+     * Conecta ao daemon e envia o cabeçalho da sessão.
+     *
+     * @return a conexão, ou {@code null} se o daemon não está em execução ou
+     * não aceitou a sessão
+     */
+    private static Socket conectar(String[] publicacao, String caminho, List<String> parametros)
+    {
+        Socket conexao = new Socket();
+
+        try
+        {
+            conexao.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(publicacao[0])), TEMPO_CONEXAO);
+            conexao.setTcpNoDelay(true);
+            conexao.setSoTimeout(TEMPO_ACEITACAO);
+
+            DataOutputStream envio = new DataOutputStream(new BufferedOutputStream(conexao.getOutputStream()));
+
+            envio.writeInt(ProtocoloDaemon.VERSAO);
+            envio.writeUTF(publicacao[1]);
+            envio.writeUTF(Charset.defaultCharset().name());
+            envio.writeUTF(caminho);
+            envio.writeInt(parametros.size());
+
+            for (String parametro : parametros)
+            {
+                envio.writeUTF(parametro);
+            }
+
+            envio.flush();
+
+            if (conexao.getInputStream().read() != ProtocoloDaemon.ACEITO)
+            {
+                conexao.close();
+
+                return null;
+            }
+
+            conexao.setSoTimeout(0);
+
+            return conexao;
+        }
+        catch (IOException | NumberFormatException excecao)
+        {
+            // O daemon não está em execução ou é de outra versão
+            try
+            {
+                conexao.close();
+            }
+            catch (IOException excecaoFechamento)
+            {
+            }
+
+            return null;
+        }
+    }
+
+    /**
+     * Reproduz o que o {@link Console} faz ao fim da execução.
+     */
+    private int encerrar(byte modo, String mensagem, boolean aguardarParaSair, PrintStream saida, PrintStream erros)
+    {
+        if (modo == ProtocoloDaemon.FIM_TEMPO_ESGOTADO)
+        {
+            // Assim como no console, o limite excedido é informado mesmo com -no-wait
+            saida.flush();
+            erros.println("\n" + mensagem);
+            erros.flush();
+
+            return aguardarParaSair ? aguardar(saida, null, CODIGO_TEMPO_ESGOTADO) : CODIGO_TEMPO_ESGOTADO;
+        }
+
+        if (!aguardarParaSair)
+        {
+            return 0;
+        }
+
+        switch (modo)
+        {
+            case ProtocoloDaemon.FIM_NORMAL:
+                saida.println("\nPrograma finalizado");
+                saida.flush();
+                return aguardar(saida, null, 0);
+            case ProtocoloDaemon.FIM_INTERRUPCAO:
+                saida.println("\nO programa foi interrompido");
+                saida.flush();
+                return aguardar(saida, null, 0);
+            case ProtocoloDaemon.FIM_ERRO_EXECUCAO:
+                erros.println("\n" + mensagem);
+                erros.flush();
+                return aguardar(saida, null, 1);
+            default:
+                return aguardar(saida, null, 1);
+        }
+    }
+
+    private int aguardar(PrintStream saida, InputStream entrada, int codigo)
+    {
+        saida.println("");
+        saida.println("Pressione ENTER para continuar");
+        saida.flush();
+
+        try
+        {
+            if (entrada != null)
+            {
+                entrada.read();
+            }
+            else
+            {
+                entradaAposEncerramento.take();
+            }
+        }
+        catch (IOException | InterruptedException excecao)
+        {
+        }
+
+        return codigo;
+    }
+
+    /**
+     * Repassa a entrada ao daemon em segundo plano. O que for lido depois do
+     * fim da sessão é guardado para a espera do ENTER.
+     */
+    private void repassarEntrada(final InputStream entrada, final DataOutputStream envio)
+    {
+        Thread repasse = new Thread("repasse-entrada")
+        {
+            @Override
+            public void run()
+            {
+                byte[] buffer = new byte[8192];
+                boolean conectado = true;
+
+                try
+                {
+                    while (true)
+                    {
+                        int lidos = entrada.read(buffer);
+
+                        if (lidos < 0)
+                        {
+                            break;
+                        }
+
+                        if (sessaoEncerrada || !conectado)
+                        {
+                            entradaAposEncerramento.add(Arrays.copyOf(buffer, lidos));
+                            continue;
+                        }
+
+                        try
+                        {
+                            synchronized (envio)
+                            {
+                                envio.writeInt(lidos);
+                                envio.write(buffer, 0, lidos);
+                                envio.flush();
+                            }
+                        }
+                        catch (IOException excecao)
+                        {
+                            conectado = false;
+                        }
+                    }
+                }
+                catch (IOException excecao)
+                {
+                }
+
+                entradaAposEncerramento.add(FIM_ENTRADA);
+
+                if (conectado && !sessaoEncerrada)
+                {
+                    try
+                    {
+                        synchronized (envio)
+                        {
+                            envio.writeInt(0);
+                            envio.flush();
+                        }
+                    }
+                    catch (IOException excecao)
+                    {
+                    }
+                }
+            }
+        };
+
+        repasse.setDaemon(true);
+        repasse.start();
+    }
+
+    private static InputStream abrirEntrada(String nomeArquivo)
+    {
+        if (nomeArquivo != null && nomeArquivo.length() > 0)
+        {
+            File arquivo = new File(nomeArquivo);
+
+            if (arquivo.isFile() && arquivo.exists() && arquivo.canRead())
+            {
+                try
+                {
+                    return new FileInputStream(arquivo);
+                }
+                catch (IOException excecao)
+                {
+                }
+            }
+        }
+
+        return System.in;
+    }
+
+    private static PrintStream abrirSaida(String nomeArquivo, PrintStream padrao)
+    {
+        if (nomeArquivo != null && nomeArquivo.length() > 0)
+        {
+            try
+            {
+                return new PrintStream(new FileOutputStream(nomeArquivo));
+            }
+            catch (IOException excecao)
+            {
+            }
+        }
+
+        return padrao;
+    }
+
+    /**
+     * Remove o primeiro parâmetro com o nome informado. Para parâmetros com
+     * valor retorna o valor, para os demais retorna o próprio parâmetro.
+     */
+    private static String extrairParametro(List<String> parametros, String nome, boolean comValor)
+    {
+        Iterator<String> iterador = parametros.iterator();
+
+        while (iterador.hasNext())
+        {
+            String parametro = iterador.next();
+
+            if (comValor ? parametro.toLowerCase().startsWith(nome) : parametro.toLowerCase().equals(nome))
+            {
+                iterador.remove();
+
+                return comValor ? parametro.substring(nome.length()) : parametro;
+            }
+        }
+
+        return comValor ? null : "";
+    }
+}
@@ -0,0 +1,439 @@
+package br.univali.portugol;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+
+/**
+ * Compara a saída de um programa com uma saída esperada à medida que ela é
+ * escrita, para que um programa incorreto possa ser interrompido na primeira
+ * divergência em vez de executar até o fim.
+ * <p>
+ * O arquivo esperado é lido aos poucos, apenas o necessário para comparar o
+ * que já foi escrito. As duas saídas passam pela mesma {@link Normalizacao}
+ * antes de serem comparadas.
+ *
+ * @author Luiz Fernando Noschang
+ */
+public final class ComparadorSaida
+{
+    public static enum Normalizacao
+    {
+        /**
+         * As saídas devem ser idênticas.
+         */
+        EXATA,
+
+        /**
+         * Ignora '\r', espaços no fim de cada linha e linhas em branco no fim
+         * da saída.
+         */
+        LINHAS,
+
+        /**
+         * Considera qualquer sequência de espaços e quebras de linha como um
+         * único separador e ignora os espaços no início e no fim da saída.
+         */
+        ESPACOS
+    }
+
+    private static final int TAMANHO_LEITURA = 8192;
+
+    private final Reader esperado;
+    private final Normalizador normalizadorObtido;
+    private final Normalizador normalizadorEsperado;
+    private final char[] leitura = new char[TAMANHO_LEITURA];
+
+    private final StringBuilder pendentes = new StringBuilder();
+    private int inicioPendentes = 0;
+    private boolean fimEsperado = false;
+    private boolean concluido = false;
+
+    private Divergencia divergencia = null;
+    private IOException erroLeitura = null;
+
+    public ComparadorSaida(File arquivoEsperado, Charset charset, Normalizacao normalizacao) throws IOException
+    {
+        this.esperado = new InputStreamReader(new FileInputStream(arquivoEsperado), charset);
+
+        this.normalizadorObtido = new Normalizador(normalizacao)
+        {
+            @Override
+            protected void emitir(char caracter, int linha, int coluna)
+            {
+                comparar(caracter, linha, coluna);
+            }
+        };
+
+        this.normalizadorEsperado = new Normalizador(normalizacao)
+        {
+            @Override
+            protected void emitir(char caracter, int linha, int coluna)
+            {
+                pendentes.append(caracter);
+            }
+        };
+    }
+
+    /**
+     * Compara o texto escrito pelo programa.
+     *
+     * @return {@code false} se a saída já divergiu da esperada ou o arquivo
+     * esperado não pôde ser lido
+     */
+    public boolean comparar(String texto)
+    {
+        for (int i = 0; i < texto.length() && valido(); i++)
+        {
+            normalizadorObtido.adicionar(texto.charAt(i));
+        }
+
+        return valido();
+    }
+
+    /**
+     * Deve ser chamado quando o programa encerra, para verificar se a saída
+     * esperada não continua além do que foi escrito.
+     */
+    public void concluir()
+    {
+        if (concluido)
+        {
+            return;
+        }
+
+        concluido = true;
+
+        if (valido())
+        {
+            normalizadorObtido.concluir();
+        }
+
+        if (valido() && lerPendentes())
+        {
+            divergencia = new Divergencia(normalizadorObtido.getLinha(), normalizadorObtido.getColuna(), pendentes.charAt(inicioPendentes), null);
+        }
+
+        try
+        {
+            esperado.close();
+        }
+        catch (IOException excecao)
+        {
+        }
+    }
+
+    /**
+     * @return a primeira divergência encontrada, ou {@code null} se até o
+     * momento a saída corresponde à esperada
+     */
+    public Divergencia getDivergencia()
+    {
+        return divergencia;
+    }
+
+    public IOException getErroLeitura()
+    {
+        return erroLeitura;
+    }
+
+    private boolean valido()
+    {
+        return divergencia == null && erroLeitura == null;
+    }
+
+    private void comparar(char obtido, int linha, int coluna)
+    {
+        if (!valido())
+        {
+            return;
+        }
+
+        if (!lerPendentes())
+        {
+            if (erroLeitura == null)
+            {
+                divergencia = new Divergencia(linha, coluna, null, obtido);
+            }
+
+            return;
+        }
+
+        char caracterEsperado = pendentes.charAt(inicioPendentes++);
+
+        if (caracterEsperado != obtido)
+        {
+            divergencia = new Divergencia(linha, coluna, caracterEsperado, obtido);
+        }
+    }
+
+    /**
+     * Lê o arquivo esperado até haver ao menos um caracter normalizado
+     * pendente de comparação.
+     *
+     * @return {@code false} se o arquivo esperado terminou ou não pôde ser
+     * lido
+     */
+    private boolean lerPendentes()
+    {
+        if (inicioPendentes > TAMANHO_LEITURA)
+        {
+            pendentes.delete(0, inicioPendentes);
+            inicioPendentes = 0;
+        }
+
+        try
+        {
+            while (inicioPendentes == pendentes.length() && !fimEsperado)
+            {
+                int lidos = esperado.read(leitura);
+
+                if (lidos < 0)
+                {
+                    fimEsperado = true;
+                    normalizadorEsperado.concluir();
+                }
+
+                for (int i = 0; i < lidos; i++)
+                {
+                    normalizadorEsperado.adicionar(leitura[i]);
+                }
+            }
+        }
+        catch (IOException excecao)
+        {
+            erroLeitura = excecao;
+            return false;
+        }
+
+        return inicioPendentes < pendentes.length();
+    }
+
+    /**
+     * Primeiro ponto em que a saída obtida difere da esperada. A linha e a
+     * coluna se referem à saída obtida, contadas a partir de 1.
+     */
+    public static final class Divergencia
+    {
+        private final int linha;
+        private final int coluna;
+        private final Character esperado;
+        private final Character obtido;
+
+        Divergencia(int linha, int coluna, Character esperado, Character obtido)
+        {
+            this.linha = linha;
+            this.coluna = coluna;
+            this.esperado = esperado;
+            this.obtido = obtido;
+        }
+
+        public int getLinha()
+        {
+            return linha;
+        }
+
+        public int getColuna()
+        {
+            return coluna;
+        }
+
+        /**
+         * @return o caracter esperado, ou {@code null} se a saída esperada já
+         * havia terminado
+         */
+        public Character getEsperado()
+        {
+            return esperado;
+        }
+
+        /**
+         * @return o caracter obtido, ou {@code null} se a saída do programa
+         * terminou antes da esperada
+         */
+        public Character getObtido()
+        {
+            return obtido;
+        }
+
+        public String descrever()
+        {
+            return String.format("Saída diferente da esperada na linha %d, coluna %d: esperado %s, obtido %s", linha, coluna, descrever(esperado), descrever(obtido));
+        }
+
+        private static String descrever(Character caracter)
+        {
+            if (caracter == null)
+            {
+                return "fim da saída";
+            }
+
+            switch (caracter)
+            {
+                case '\n':
+                    return "quebra de linha";
+                case ' ':
+                    return "espaço";
+                case '\t':
+                    return "tabulação";
+                case '\r':
+                    return "'\\r'";
+                default:
+                    return "'" + caracter + "'";
+            }
+        }
+    }
+
+    /**
+     * Aplica a normalização a um fluxo de caracteres, emitindo cada caracter
+     * normalizado junto com a posição que ocupava no fluxo original. Os
+     * espaços que podem vir a ser descartados ficam pendentes até que o
+     * próximo caracter decida o seu destino.
+     */
+    private static abstract class Normalizador
+    {
+        private final Normalizacao normalizacao;
+
+        private int linha = 1;
+        private int coluna = 1;
+
+        private int espacosPendentes = 0;
+        private int linhaEspacos = 0;
+        private int colunaEspacos = 0;
+        private final StringBuilder espacos = new StringBuilder();
+
+        private int quebrasPendentes = 0;
+        private int linhaQuebras = 0;
+        private int colunaQuebras = 0;
+
+        private boolean emitiuConteudo = false;
+
+        Normalizador(Normalizacao normalizacao)
+        {
+            this.normalizacao = normalizacao;
+        }
+
+        protected abstract void emitir(char caracter, int linha, int coluna);
+
+        int getLinha()
+        {
+            return linha;
+        }
+
+        int getColuna()
+        {
+            return coluna;
+        }
+
+        void adicionar(char caracter)
+        {
+            switch (normalizacao)
+            {
+                case EXATA:
+                    emitir(caracter, linha, coluna);
+                    break;
+                case LINHAS:
+                    adicionarLinhas(caracter);
+                    break;
+                default:
+                    adicionarEspacos(caracter);
+                    break;
+            }
+
+            if (caracter == '\n')
+            {
+                linha++;
+                coluna = 1;
+            }
+            else
+            {
+                coluna++;
+            }
+        }
+
+        /**
+         * Descarta o que estava pendente, que só pode ser espaço no fim da
+         * saída.
+         */
+        void concluir()
+        {
+            espacosPendentes = 0;
+            espacos.setLength(0);
+            quebrasPendentes = 0;
+        }
+
+        private void adicionarLinhas(char caracter)
+        {
+            if (caracter == '\n')
+            {
+                if (quebrasPendentes == 0)
+                {
+                    linhaQuebras = linha;
+                    colunaQuebras = (espacosPendentes > 0) ? colunaEspacos : coluna;
+                }
+
+                quebrasPendentes++;
+                espacosPendentes = 0;
+                espacos.setLength(0);
+            }
+            else if (caracter == ' ' || caracter == '\t' || caracter == '\r')
+            {
+                if (espacosPendentes == 0)
+                {
+                    linhaEspacos = linha;
+                    colunaEspacos = coluna;
+                }
+
+                espacosPendentes++;
+                espacos.append(caracter);
+            }
+            else
+            {
+                for (int i = 0; i < quebrasPendentes; i++)
+                {
+                    emitir('\n', linhaQuebras + i, (i == 0) ? colunaQuebras : 1);
+                }
+
+                for (int i = 0; i < espacosPendentes; i++)
+                {
+                    emitir(espacos.charAt(i), linhaEspacos, colunaEspacos + i);
+                }
+
+                quebrasPendentes = 0;
+                espacosPendentes = 0;
+                espacos.setLength(0);
+
+                emitir(caracter, linha, coluna);
+            }
+        }
+
+        private void adicionarEspacos(char caracter)
+        {
+            if (Character.isWhitespace(caracter))
+            {
+                if (espacosPendentes == 0)
+                {
+                    linhaEspacos = linha;
+                    colunaEspacos = coluna;
+                }
+
+                espacosPendentes++;
+            }
+            else
+            {
+                if (espacosPendentes > 0 && emitiuConteudo)
+                {
+                    emitir(' ', linhaEspacos, colunaEspacos);
+                }
+
+                espacosPendentes = 0;
+                emitiuConteudo = true;
+
+                emitir(caracter, linha, coluna);
+            }
+        }
+    }
+}
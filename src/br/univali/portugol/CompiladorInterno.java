@@ -0,0 +1,323 @@
+package br.univali.portugol;
+
+import br.univali.portugol.nucleo.Programa;
+import br.univali.portugol.nucleo.execucao.gerador.GeradorCodigoJava;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+/**
+ * Compila o código Java gerado pelo núcleo usando a API javax.tools na
+ * própria JVM do console. Os fontes e as classes geradas ficam em memória,
+ * nada é escrito no diretório de compilação.
+ *
+ * @author Luiz Fernando Noschang
+ */
+public final class CompiladorInterno
+{
+    private static final String NOME_CLASSE = "ProgramaPortugol";
+    private static final Pattern PADRAO_PACOTE = Pattern.compile("^\\s*package\\s+([\\w.]+)\\s*;", Pattern.MULTILINE);
+
+    private static JavaCompiler compilador = null;
+    private static StandardJavaFileManager gerenciadorArquivos = null;
+
+    public static boolean disponivel()
+    {
+        return ToolProvider.getSystemJavaCompiler() != null;
+    }
+
+    /**
+     * Identifica o compilador para fins de cache: as classes geradas dependem
+     * da versão da JVM que as compilou.
+     */
+    public static String getVersao()
+    {
+        return "javax.tools:" + System.getProperty("java.vendor") + ":" + System.getProperty("java.version");
+    }
+
+    public ProgramaCompilado compilar(Programa programaAnalisado, String classPath, List<String> avisos) throws Exception
+    {
+        String codigo = gerarCodigoJava(programaAnalisado, NOME_CLASSE);
+        Map<String, String> fontes = Collections.singletonMap(NOME_CLASSE, codigo);
+        UnidadeCompilada unidade = compilarJava(fontes, classPath).get(NOME_CLASSE);
+
+        if (unidade.getErros() != null)
+        {
+            throw new IOException("Não foi possível compilar o código Java gerado para o programa:\n" + unidade.getErros());
+        }
+
+        return criarProgramaCompilado(NOME_CLASSE, codigo, unidade.getClasses(), avisos);
+    }
+
+    static String gerarCodigoJava(Programa programaAnalisado, String nomeClasse) throws Exception
+    {
+        StringWriter codigoJava = new StringWriter();
+
+        try (PrintWriter saida = new PrintWriter(codigoJava))
+        {
+            new GeradorCodigoJava().gera(programaAnalisado.getArvoreSintaticaAbstrata(), saida, nomeClasse);
+        }
+
+        return codigoJava.toString();
+    }
+
+    static ProgramaCompilado criarProgramaCompilado(String nomeClasse, String codigo, Map<String, byte[]> classes, List<String> avisos) throws IOException
+    {
+        Matcher pacote = PADRAO_PACOTE.matcher(codigo);
+        String nomeClassePrincipal = pacote.find() ? pacote.group(1) + "." + nomeClasse : nomeClasse;
+
+        if (!classes.containsKey(nomeClassePrincipal))
+        {
+            throw new IOException(String.format("O compilador não gerou a classe '%s'", nomeClassePrincipal));
+        }
+
+        return new ProgramaCompilado(nomeClassePrincipal, classes, avisos);
+    }
+
+    /**
+     * Compila vários fontes em uma única invocação do compilador. Se algum
+     * fonte tiver erros, os demais são compilados novamente sem ele, pois o
+     * javac não gera classes quando encontra erros.
+     *
+     * <p>
+     * Quando o jar reduzido da API do núcleo está instalado, os fontes são
+     * compilados com ele no lugar do classpath completo. Os que não compilam
+     * assim são compilados novamente com o classpath completo, caso usem algo
+     * que ficou fora do jar reduzido.
+     *
+     * @param fontes o código de cada fonte, indexado pelo nome da sua classe
+     * principal, que deve ser único
+     * @param classPath o classpath completo
+     * @return o resultado de cada fonte, indexado da mesma forma
+     */
+    static synchronized Map<String, UnidadeCompilada> compilarJava(Map<String, String> fontes, String classPath) throws IOException
+    {
+        String classPathApi = ApiCompilacao.getClassPath();
+
+        if (classPathApi == null)
+        {
+            return compilarComClassPath(fontes, classPath);
+        }
+
+        Map<String, UnidadeCompilada> resultados = compilarComClassPath(fontes, classPathApi);
+        Map<String, String> falhas = new LinkedHashMap<>();
+
+        for (Map.Entry<String, UnidadeCompilada> resultado : resultados.entrySet())
+        {
+            if (resultado.getValue().getErros() != null)
+            {
+                falhas.put(resultado.getKey(), fontes.get(resultado.getKey()));
+            }
+        }
+
+        if (!falhas.isEmpty())
+        {
+            resultados.putAll(compilarComClassPath(falhas, classPath));
+        }
+
+        return resultados;
+    }
+
+    private static Map<String, UnidadeCompilada> compilarComClassPath(Map<String, String> fontes, String classPath) throws IOException
+    {
+        if (compilador == null)
+        {
+            compilador = ToolProvider.getSystemJavaCompiler();
+
+            if (compilador == null)
+            {
+                throw new IOException("Não há um compilador Java disponível nesta JVM");
+            }
+
+            gerenciadorArquivos = compilador.getStandardFileManager(null, null, null);
+        }
+
+        Map<String, UnidadeCompilada> resultados = new LinkedHashMap<>();
+        Map<String, String> pendentes = new LinkedHashMap<>(fontes);
+        List<String> opcoes = new ArrayList<>(Arrays.asList("-nowarn", "-proc:none", "-classpath", classPath));
+
+        while (!pendentes.isEmpty())
+        {
+            Map<String, Map<String, ByteArrayOutputStream>> saidas = new LinkedHashMap<>();
+            DiagnosticCollector<JavaFileObject> diagnosticos = new DiagnosticCollector<>();
+            List<JavaFileObject> unidades = new ArrayList<>();
+
+            for (Map.Entry<String, String> fonte : pendentes.entrySet())
+            {
+                unidades.add(new FonteMemoria(fonte.getKey(), fonte.getValue()));
+                saidas.put(fonte.getKey(), new LinkedHashMap<String, ByteArrayOutputStream>());
+            }
+
+            GerenciadorArquivosMemoria gerenciador = new GerenciadorArquivosMemoria(gerenciadorArquivos, saidas);
+            Boolean sucesso = compilador.getTask(null, gerenciador, diagnosticos, opcoes, null, unidades).call();
+
+            if (Boolean.TRUE.equals(sucesso))
+            {
+                for (Map.Entry<String, Map<String, ByteArrayOutputStream>> saida : saidas.entrySet())
+                {
+                    Map<String, byte[]> classes = new LinkedHashMap<>();
+
+                    for (Map.Entry<String, ByteArrayOutputStream> classe : saida.getValue().entrySet())
+                    {
+                        classes.put(classe.getKey(), classe.getValue().toByteArray());
+                    }
+
+                    resultados.put(saida.getKey(), new UnidadeCompilada(classes, null));
+                }
+
+                break;
+            }
+
+            Map<String, StringBuilder> erros = new LinkedHashMap<>();
+
+            for (Diagnostic<? extends JavaFileObject> diagnostico : diagnosticos.getDiagnostics())
+            {
+                if (diagnostico.getKind() != Diagnostic.Kind.ERROR)
+                {
+                    continue;
+                }
+
+                String nome = (diagnostico.getSource() instanceof FonteMemoria) ? ((FonteMemoria) diagnostico.getSource()).nome : null;
+                String chave = (nome != null && pendentes.containsKey(nome)) ? nome : null;
+
+                if (!erros.containsKey(chave))
+                {
+                    erros.put(chave, new StringBuilder());
+                }
+
+                erros.get(chave).append(diagnostico.getLineNumber()).append(": ").append(diagnostico.getMessage(null)).append('\n');
+            }
+
+            if (erros.isEmpty() || erros.containsKey(null))
+            {
+                // Erros que não pertencem a um fonte específico afetam todos
+                String mensagem = erros.isEmpty() ? "Erro desconhecido no compilador Java" : erros.get(null).toString().trim();
+
+                for (String nome : pendentes.keySet())
+                {
+                    resultados.put(nome, new UnidadeCompilada(null, (erros.containsKey(nome) ? erros.get(nome).toString().trim() : mensagem)));
+                }
+
+                break;
+            }
+
+            for (Map.Entry<String, StringBuilder> erro : erros.entrySet())
+            {
+                resultados.put(erro.getKey(), new UnidadeCompilada(null, erro.getValue().toString().trim()));
+                pendentes.remove(erro.getKey());
+            }
+        }
+
+        return resultados;
+    }
+
+    static final class UnidadeCompilada
+    {
+        private final Map<String, byte[]> classes;
+        private final String erros;
+
+        UnidadeCompilada(Map<String, byte[]> classes, String erros)
+        {
+            this.classes = classes;
+            this.erros = erros;
+        }
+
+        Map<String, byte[]> getClasses()
+        {
+            return classes;
+        }
+
+        /**
+         * @return as mensagens do compilador Java, ou {@code null} se a
+         * compilação teve sucesso
+         */
+        String getErros()
+        {
+            return erros;
+        }
+    }
+
+    private static final class FonteMemoria extends SimpleJavaFileObject
+    {
+        private final String nome;
+        private final String codigo;
+
+        FonteMemoria(String nome, String codigo)
+        {
+            super(URI.create("string:///" + nome + Kind.SOURCE.extension), Kind.SOURCE);
+            this.nome = nome;
+            this.codigo = codigo;
+        }
+
+        @Override
+        public CharSequence getCharContent(boolean ignorarErrosCodificacao)
+        {
+            return codigo;
+        }
+    }
+
+    private static final class ClasseMemoria extends SimpleJavaFileObject
+    {
+        private final ByteArrayOutputStream bytes;
+
+        ClasseMemoria(String nome, ByteArrayOutputStream bytes)
+        {
+            super(URI.create("mem:///" + nome.replace('.', '/') + Kind.CLASS.extension), Kind.CLASS);
+            this.bytes = bytes;
+        }
+
+        @Override
+        public OutputStream openOutputStream()
+        {
+            return bytes;
+        }
+    }
+
+    private static final class GerenciadorArquivosMemoria extends ForwardingJavaFileManager<StandardJavaFileManager>
+    {
+        private final Map<String, Map<String, ByteArrayOutputStream>> saidas;
+
+        GerenciadorArquivosMemoria(StandardJavaFileManager gerenciador, Map<String, Map<String, ByteArrayOutputStream>> saidas)
+        {
+            super(gerenciador);
+            this.saidas = saidas;
+        }
+
+        @Override
+        public JavaFileObject getJavaFileForOutput(Location local, String nomeClasse, JavaFileObject.Kind tipo, FileObject origem) throws IOException
+        {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            String fonte = (origem instanceof FonteMemoria) ? ((FonteMemoria) origem).nome : saidas.keySet().iterator().next();
+
+            saidas.get(fonte).put(nomeClasse, bytes);
+
+            return new ClasseMemoria(nomeClasse, bytes);
+        }
+
+        @Override
+        public void close()
+        {
+            // O gerenciador padrão é mantido aberto entre compilações
+        }
+    }
+}
@@ -0,0 +1,369 @@
+package br.univali.portugol;
+
+import br.univali.portugol.nucleo.ErroCompilacao;
+import br.univali.portugol.nucleo.Portugol;
+import br.univali.portugol.nucleo.Programa;
+import br.univali.portugol.nucleo.analise.ResultadoAnalise;
+import br.univali.portugol.nucleo.mensagens.AvisoAnalise;
+import br.univali.portugol.nucleo.mensagens.ErroAnalise;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Compila programas Portugol usando o cache de compilação e o compilador
+ * Java configurados.
+ *
+ * @author Luiz Fernando Noschang
+ */
+public final class CompiladorPrograma
+{
+    public static enum Tipo { AUTOMATICO, INTERNO, EXTERNO };
+
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+    private static final String ARQUIVO_CLASSPATH = "classpath";
+
+    /**
+     * A chave e o classpath montado para ela.
+     */
+    private static volatile String[] classPathMemorizado = null;
+
+    private final boolean usarCache;
+    private final long tamanhoMaximoCache;
+    private final Tipo tipo;
+
+    public CompiladorPrograma(boolean usarCache, long tamanhoMaximoCache, Tipo tipo)
+    {
+        this.usarCache = usarCache;
+        this.tamanhoMaximoCache = tamanhoMaximoCache;
+        this.tipo = tipo;
+    }
+
+    /**
+     * @return um compilador do mesmo tipo que não usa o cache, para compilar
+     * programas que devem passar pelo compilador a cada vez
+     */
+    public CompiladorPrograma semCache()
+    {
+        return new CompiladorPrograma(false, 0, tipo);
+    }
+
+    public ProgramaCompilado compilar(String algoritmo) throws ErroCompilacao, Exception
+    {
+        return compilar(algoritmo, new TemposExecucao(null));
+    }
+
+    public ProgramaCompilado compilar(String algoritmo, TemposExecucao tempos) throws ErroCompilacao, Exception
+    {
+        TemposExecucao.Medicao medicao = tempos.iniciar(TemposExecucao.Fase.CLASSPATH);
+        String classPath = getClassPathParaCompilacao();
+        medicao.concluir();
+
+        medicao = tempos.iniciar(TemposExecucao.Fase.CACHE);
+        CacheCompilacao cache = criarCache();
+        ProgramaCompilado programaCompilado = null;
+        String chave = null;
+
+        if (cache != null && tipo != Tipo.EXTERNO)
+        {
+            // As classes geradas pelo compilador interno desta mesma JVM podem ser
+            // usadas sem verificar se ele está disponível, o que evita carregar o
+            // javac quando o programa já está no cache
+            chave = cache.calcularChave(algoritmo, classPath, CompiladorInterno.getVersao());
+            programaCompilado = cache.carregar(chave);
+        }
+
+        medicao.concluir();
+
+        if (programaCompilado != null)
+        {
+            return programaCompilado;
+        }
+
+        medicao = tempos.iniciar(TemposExecucao.Fase.COMPILACAO);
+        boolean compiladorInterno = usarCompiladorInterno();
+        String caminhoJavac = getIdentificacaoJavac();
+        medicao.concluir();
+
+        if (cache != null && !compiladorInterno)
+        {
+            medicao = tempos.iniciar(TemposExecucao.Fase.CACHE);
+            chave = cache.calcularChave(algoritmo, classPath, caminhoJavac);
+            programaCompilado = cache.carregar(chave);
+            medicao.concluir();
+
+            if (programaCompilado != null)
+            {
+                return programaCompilado;
+            }
+        }
+
+        if (compiladorInterno)
+        {
+            medicao = tempos.iniciar(TemposExecucao.Fase.ANALISE);
+            Programa analisado;
+
+            try
+            {
+                analisado = Portugol.compilarParaAnalise(algoritmo);
+            }
+            finally
+            {
+                medicao.concluir();
+            }
+
+            medicao = tempos.iniciar(TemposExecucao.Fase.COMPILACAO);
+            programaCompilado = new CompiladorInterno().compilar(analisado, classPath, formatarAvisos(analisado.getResultadoAnalise()));
+            medicao.concluir();
+
+            if (cache != null)
+            {
+                medicao = tempos.iniciar(TemposExecucao.Fase.CACHE);
+                cache.armazenar(chave, programaCompilado);
+                medicao.concluir();
+            }
+
+            return programaCompilado;
+        }
+
+        // O núcleo analisa e compila o programa em uma única chamada
+        medicao = tempos.iniciar(TemposExecucao.Fase.COMPILACAO);
+        Programa compilado;
+
+        try
+        {
+            compilado = Portugol.compilarParaExecucao(algoritmo, classPath, caminhoJavac);
+        }
+        finally
+        {
+            medicao.concluir();
+        }
+
+        if (compilado == null)
+            throw new RuntimeException("O programa não deveria ser nulo");
+
+        List<String> avisos = formatarAvisos(compilado.getResultadoAnalise());
+
+        if (cache != null)
+        {
+            medicao = tempos.iniciar(TemposExecucao.Fase.CACHE);
+
+            try
+            {
+                cache.armazenar(chave, ProgramaCompilado.extrair(compilado, avisos));
+            }
+            catch (IOException excecao)
+            {
+                Logger.getLogger(CompiladorPrograma.class.getName()).log(Level.WARNING, "Não foi possível armazenar o programa no cache", excecao);
+            }
+
+            medicao.concluir();
+        }
+
+        return new ProgramaCompilado(compilado, avisos);
+    }
+
+    /**
+     * @return o cache configurado, ou {@code null} se o cache está desativado
+     */
+    CacheCompilacao criarCache()
+    {
+        return usarCache ? new CacheCompilacao(Caminhos.getDiretorioCacheCompilacao(), tamanhoMaximoCache) : null;
+    }
+
+    /**
+     * @return o valor que identifica o compilador Java na chave do cache
+     */
+    String getIdentificacaoJavac()
+    {
+        return usarCompiladorInterno() ? CompiladorInterno.getVersao() : Caminhos.obterCaminhoExecutavelJavac();
+    }
+
+    boolean usarCompiladorInterno()
+    {
+        switch (tipo)
+        {
+            case INTERNO:
+                return true;
+            case EXTERNO:
+                return false;
+            default:
+                return CompiladorInterno.disponivel();
+        }
+    }
+
+    /**
+     * O classpath só muda quando arquivos são adicionados, removidos ou
+     * renomeados no diretório lib, o que altera a data de modificação do
+     * diretório. Por isso ele é montado uma única vez para cada data e
+     * guardado em memória e em disco, evitando listar o diretório e resolver
+     * o caminho canônico de cada jar a cada execução.
+     */
+    public static String getClassPathParaCompilacao() throws IOException
+    {
+        String classPathSeparator = !Caminhos.rodandoNoWindows() ? ":" : ";"; 
+        
+        if (Caminhos.rodandoNoNetbeans()) {
+
+            return System.getProperty("java.class.path") + classPathSeparator;
+        }
+        
+        File classpathDir = new File(Caminhos.getDiretorioAplicacao(), "lib");
+        String chave = classpathDir.getAbsolutePath() + ":" + classpathDir.lastModified();
+        String[] memorizado = classPathMemorizado;
+
+        if (memorizado != null && memorizado[0].equals(chave))
+        {
+            return memorizado[1];
+        }
+
+        synchronized (CompiladorPrograma.class)
+        {
+            // Outra thread pode ter montado o classpath enquanto esta aguardava
+            memorizado = classPathMemorizado;
+
+            if (memorizado == null || !memorizado[0].equals(chave))
+            {
+                memorizado = new String[] { chave, lerArmazenado(getArquivoClassPath(), chave) };
+
+                if (memorizado[1] == null)
+                {
+                    memorizado[1] = montarClassPath(classpathDir, classPathSeparator);
+                    armazenar(getArquivoClassPath(), chave, memorizado[1]);
+                }
+
+                classPathMemorizado = memorizado;
+            }
+
+            return memorizado[1];
+        }
+    }
+
+    private static String montarClassPath(File classpathDir, String classPathSeparator) throws IOException
+    {
+        StringBuilder expandedClassPath = new StringBuilder();
+
+        if (classpathDir.isDirectory()) {
+            File jars[] = classpathDir.listFiles();
+            
+            for (File jar : jars) {
+                expandedClassPath.append(jar.getCanonicalPath()).append(classPathSeparator);
+            }
+        }
+       
+        return expandedClassPath.toString();
+    }
+
+    /**
+     * O arquivo é lido com um {@link FileInputStream} porque, no início da
+     * execução, o primeiro uso da API de arquivos do NIO custa mais do que
+     * montar o classpath novamente.
+     *
+     * @return o valor armazenado em disco para a chave, ou {@code null} se
+     * ele não existe ou foi armazenado para outra chave, como um classpath
+     * montado para outra versão do diretório lib
+     */
+    static String lerArmazenado(File arquivo, String chave)
+    {
+        try (FileInputStream entrada = new FileInputStream(arquivo))
+        {
+            byte[] bytes = new byte[(int) arquivo.length()];
+            int total = 0;
+            int lidos;
+
+            while (total < bytes.length && (lidos = entrada.read(bytes, total, bytes.length - total)) > 0)
+            {
+                total += lidos;
+            }
+
+            String conteudo = new String(bytes, 0, total, CHARSET);
+            int separador = conteudo.indexOf('\n');
+
+            if (separador >= 0 && conteudo.substring(0, separador).equals(chave))
+            {
+                return conteudo.substring(separador + 1);
+            }
+        }
+        catch (IOException excecao)
+        {
+            // Ainda não foi armazenado
+        }
+
+        return null;
+    }
+
+    /**
+     * Grava a chave e o valor em um arquivo temporário que é então movido
+     * para o destino, para que uma leitura concorrente nunca veja um arquivo
+     * incompleto.
+     */
+    static void armazenar(File arquivo, String chave, String valor)
+    {
+        try
+        {
+            Files.createDirectories(arquivo.getParentFile().toPath());
+
+            File temporario = File.createTempFile(arquivo.getName(), ".tmp", arquivo.getParentFile());
+
+            try
+            {
+                Files.write(temporario.toPath(), (chave + "\n" + valor).getBytes(CHARSET));
+                Files.move(temporario.toPath(), arquivo.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            finally
+            {
+                temporario.delete();
+            }
+        }
+        catch (IOException excecao)
+        {
+            Logger.getLogger(CompiladorPrograma.class.getName()).log(Level.FINE, "Não foi possível armazenar " + arquivo.getName(), excecao);
+        }
+    }
+
+    private static File getArquivoClassPath()
+    {
+        return new File(Caminhos.getDiretorioCompilacao(), ARQUIVO_CLASSPATH);
+    }
+
+    public static List<String> formatarAvisos(ResultadoAnalise resultadoAnalise)
+    {
+        List<String> avisos = new ArrayList<>();
+
+        if (resultadoAnalise != null && resultadoAnalise.contemAvisos())
+        {
+            for (AvisoAnalise aviso : resultadoAnalise.getAvisos())
+            {
+                avisos.add(formatarAviso(aviso));
+            }
+        }
+
+        return avisos;
+    }
+
+    public static String formatarAviso(AvisoAnalise aviso)
+    {
+        return "AVISO: " + aviso.getMensagem() + ". Linha: " + aviso.getLinha() + ", Coluna: " + aviso.getColuna();
+    }
+
+    public static String formatarErro(ErroAnalise erro)
+    {
+        return formatarErro(erro, 0);
+    }
+
+    /**
+     * @param deslocamentoLinhas subtraído da linha do erro, quando o código
+     * analisado é um trecho inserido em um programa maior
+     */
+    public static String formatarErro(ErroAnalise erro, int deslocamentoLinhas)
+    {
+        return "ERRO: " + erro.getMensagem() + ". Linha: " + (erro.getLinha() - deslocamentoLinhas) + ", Coluna: " + erro.getColuna();
+    }
+}
@@ -0,0 +1,33 @@
+package br.univali.portugol;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.logging.Level;
+import java.util.logging.LogManager;
+import java.util.logging.Logger;
+
+/**
+ * Configura o mecanismo de log a partir do arquivo 'logging.properties'.
+ * <p>
+ * Esta classe é informada na propriedade
+ * {@code java.util.logging.config.class} e instanciada pelo próprio
+ * {@link LogManager} quando o primeiro logger é criado. Assim, execuções que
+ * não registram nada não pagam pela inicialização do log.
+ *
+ * @author Luiz Fernando Noschang
+ */
+public final class ConfiguracaoLog
+{
+    public ConfiguracaoLog()
+    {
+        try (InputStream inputStream = ConfiguracaoLog.class.getResourceAsStream("/logging.properties"))
+        {
+            LogManager.getLogManager().readConfiguration(inputStream);
+        }
+        catch (final IOException excecao)
+        {
+            Logger.getAnonymousLogger().severe("Não foi possível localizar o arquivo de configuração de log 'logging.properties'");
+            Logger.getAnonymousLogger().log(Level.SEVERE, excecao.getMessage(), excecao);
+        }
+    }
+}
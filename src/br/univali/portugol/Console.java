@@ -1,7 +1,6 @@
 package br.univali.portugol;
 
 import br.univali.portugol.nucleo.ErroCompilacao;
-import br.univali.portugol.nucleo.Portugol;
 import br.univali.portugol.nucleo.Programa;
 import br.univali.portugol.nucleo.analise.ResultadoAnalise;
 import br.univali.portugol.nucleo.asa.TipoDado;
@@ -13,22 +12,21 @@ import br.univali.portugol.nucleo.execucao.es.Saida;
 import br.univali.portugol.nucleo.mensagens.AvisoAnalise;
 import br.univali.portugol.nucleo.mensagens.ErroAnalise;
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.FileOutputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
 import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.InputMismatchException;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Scanner;
-import java.util.logging.Level;
-import java.util.logging.LogManager;
-import java.util.logging.Logger;
 
 
 /**
@@ -37,35 +35,130 @@ import java.util.logging.Logger;
  */
 public final class Console implements Entrada, Saida, ObservadorExecucao
 {
-    private static enum CodigoEncerramento { NORMAL, ERRO };
+    private static enum CodigoEncerramento { NORMAL, ERRO, TEMPO_ESGOTADO, LIMITE_SAIDA, LIMITE_LEITURAS, LIMITE_ALOCACAO, SAIDA_INCORRETA };
     
     private Scanner scannerEntrada = null;
+    private LeitorEntrada leitorEntrada = null;
     private static boolean aguardarParaSair = true;
+    private static boolean usarCache = true;
+    private static long tamanhoMaximoCache = 64L * 1024 * 1024;
+    private static CompiladorPrograma.Tipo tipoCompilador = CompiladorPrograma.Tipo.AUTOMATICO;
+    private static boolean usarSaidaBufferizada = false;
+    private static long intervaloDescargaSaida = 50;
+    private static boolean usarPerfil = false;
+    private static String caminhoArquivoPerfil = null;
+    private static boolean usarTempos = false;
+    private static String caminhoArquivoTempos = null;
+    private static LimitesExecucao limites = null;
+    private static boolean usarMedicaoMemoria = false;
+    private static String caminhoArquivoEsperado = null;
+    private static ComparadorSaida.Normalizacao normalizacaoSaida = ComparadorSaida.Normalizacao.LINHAS;
+    private static final List<SaidaAssincrona> saidasArquivo = new ArrayList<>();
+    
+    private SaidaBufferizada saidaBufferizada = null;
     
     private Programa programa = null;
+    private PerfilExecucao perfil = null;
+    private File arquivoPerfil = null;
+    private TemposExecucao tempos = new TemposExecucao(null);
+    private TemposExecucao.Medicao medicaoExecucao = null;
+    private VigilanteExecucao vigilante = null;
+    private MedicaoMemoria medicaoMemoria = null;
+    private ComparadorSaida comparador = null;
 
     private static void inicializarMecanismoLog()
     {
-        final InputStream inputStream = Console.class.getResourceAsStream("/logging.properties");
-
-        try
+        // O LogManager só é criado quando algum logger for usado
+        if (System.getProperty("java.util.logging.config.class") == null)
         {
-            LogManager.getLogManager().readConfiguration(inputStream);
-        }
-        catch (final IOException excecao)
-        {
-            Logger.getAnonymousLogger().severe("Não foi possível localizar o arquivo de configuração de log 'logging.properties'");
-            Logger.getAnonymousLogger().log(Level.SEVERE, excecao.getMessage(), excecao);
+            System.setProperty("java.util.logging.config.class", ConfiguracaoLog.class.getName());
         }
     }
     
     public static void main(String[] args)
     {   
         inicializarMecanismoLog();
+        InicializacaoConcorrente.iniciar();
         
         List<String> parametros = new ArrayList<>( Arrays.asList(args) );
         
         aguardarParaSair = extrairParametroAguardarParaSair(parametros);
+        usarCache = extrairParametroUsarCache(parametros);
+        tamanhoMaximoCache = extrairParametroTamanhoMaximoCache(parametros);
+        tipoCompilador = extrairParametroTipoCompilador(parametros);
+        usarSaidaBufferizada = extrairParametroSaidaBufferizada(parametros);
+        intervaloDescargaSaida = extrairParametroIntervaloDescargaSaida(parametros);
+        usarPerfil = extrairParametroPerfil(parametros);
+        caminhoArquivoPerfil = extrairParametroValor(parametros, "-perfil-arquivo=");
+        usarTempos = extrairParametroTempos(parametros);
+        caminhoArquivoTempos = extrairParametroValor(parametros, "-tempos=");
+        limites = new LimitesExecucao(
+            extrairParametroLimite(parametros, "-limite-cpu="),
+            extrairParametroLimite(parametros, "-limite-tempo="),
+            extrairParametroLimite(parametros, "-limite-saida="),
+            extrairParametroLimite(parametros, "-limite-leituras="),
+            extrairParametroLimite(parametros, "-limite-alocacao=") * 1024 * 1024);
+        usarMedicaoMemoria = extrairParametroMemoria(parametros);
+        caminhoArquivoEsperado = extrairParametroValor(parametros, "-esperado=");
+        normalizacaoSaida = extrairParametroNormalizacaoSaida(parametros);
+        
+        if (parametros.remove("-daemon"))
+        {
+            executarDaemon(parametros);
+            return;
+        }
+        
+        String manifestoLote = extrairParametroValor(parametros, "-lote=");
+        
+        if (manifestoLote != null)
+        {
+            executarLote(new File(manifestoLote), parametros);
+            return;
+        }
+        
+        String diretorioEntradas = extrairParametroValor(parametros, "-entradas=");
+        
+        if (diretorioEntradas != null)
+        {
+            executarEntradas(new File(diretorioEntradas), parametros);
+            return;
+        }
+        
+        String diretorioPrecompilacao = extrairParametroValor(parametros, "-precompilar=");
+        
+        if (diretorioPrecompilacao != null)
+        {
+            executarPrecompilacao(new File(diretorioPrecompilacao), parametros);
+            return;
+        }
+        
+        String caminhoVerificacao = extrairParametroValor(parametros, "-verificar=");
+        
+        if (caminhoVerificacao != null)
+        {
+            executarVerificacao(new File(caminhoVerificacao), parametros);
+            return;
+        }
+        
+        if (parametros.remove("-watch"))
+        {
+            executarObservacao(parametros);
+            return;
+        }
+        
+        if (parametros.remove("-repl"))
+        {
+            executarInterativo(parametros);
+            return;
+        }
+        
+        String destinoPacote = extrairParametroValor(parametros, "-compilar=");
+        
+        if (parametros.remove("-compilar") || destinoPacote != null)
+        {
+            executarCompilacao(destinoPacote, parametros);
+            return;
+        }
         
         definirEntradaDadosPadrao(parametros);
         definirSaidaDadosPadrao(parametros);
@@ -73,7 +166,7 @@ public final class Console implements Entrada, Saida, ObservadorExecucao
         
         try
         {
-            File arquivo = extrairArquivo(parametros);
+            File arquivo = extrairArquivo(parametros, true);
             
             Console console = new Console();
             console.executar(arquivo, parametros.toArray(new String[parametros.size()]));
@@ -92,10 +185,30 @@ public final class Console implements Entrada, Saida, ObservadorExecucao
 
     private void executar(File arquivo, String[] args) throws Exception
     {     
-        String algoritmo = lerArquivo(arquivo);
+        tempos = new TemposExecucao(arquivo.getPath());
+
+        TemposExecucao.Medicao medicao = tempos.iniciar(TemposExecucao.Fase.LEITURA);
+        String algoritmo;
+        PacotePrograma pacote = null;
+
+        if (PacotePrograma.isPacote(arquivo))
+        {
+            pacote = PacotePrograma.ler(arquivo);
+            algoritmo = pacote.getAlgoritmo();
+        }
+        else
+        {
+            algoritmo = lerArquivo(arquivo);
+        }
+
+        medicao.concluir();
         try
         {
-            programa = Portugol.compilarParaExecucao(algoritmo, getClassPathParaCompilacao(), Caminhos.obterCaminhoExecutavelJavac());
+            ProgramaCompilado programaCompilado = (pacote != null) ? pacote.getProgramaCompilado() : new CompiladorPrograma(usarCache, tamanhoMaximoCache, tipoCompilador).compilar(algoritmo, tempos);
+
+            medicao = tempos.iniciar(TemposExecucao.Fase.CARREGAMENTO);
+            programa = programaCompilado.instanciar();
+            medicao.concluir();
             if (programa == null)
                 throw new RuntimeException("O programa não deveria ser nulo");
 
@@ -103,115 +216,755 @@ public final class Console implements Entrada, Saida, ObservadorExecucao
             programa.setSaida(this);
             programa.adicionarObservadorExecucao(this);
 
-            if (programa.getResultadoAnalise().contemAvisos())
+            if (!programaCompilado.getAvisos().isEmpty())
             {
-                exibirResultadoAnalise(programa.getResultadoAnalise());
+                exibirAvisos(programaCompilado.getAvisos());
                 System.err.println("\n\n");
                 System.err.flush();
             }
 
+            if (usarSaidaBufferizada)
+            {
+                criarSaidaBufferizada();
+            }
+
+            if (usarPerfil || caminhoArquivoPerfil != null)
+            {
+                perfil = new PerfilExecucao(programa, arquivo, algoritmo);
+                arquivoPerfil = (caminhoArquivoPerfil != null) ? new File(caminhoArquivoPerfil) : new File(arquivo.getPath().replaceFirst("(?i)\\.porc?$", "") + ".perfil.json");
+                perfil.ativar();
+            }
+
+            if (limites.definidos())
+            {
+                criarVigilante();
+            }
+
+            if (caminhoArquivoEsperado != null)
+            {
+                criarComparador(new File(caminhoArquivoEsperado));
+            }
+
             programa.setDiretorioTrabalho(arquivo.getAbsoluteFile().getParentFile());
+            medicaoExecucao = tempos.iniciar(TemposExecucao.Fase.EXECUCAO);
+
+            if (usarMedicaoMemoria)
+            {
+                medicaoMemoria = new MedicaoMemoria();
+                medicaoMemoria.iniciar();
+            }
+
+            if (vigilante != null)
+            {
+                vigilante.iniciar();
+            }
+
             programa.executar(args, Programa.Estado.BREAK_POINT);            
         }
         catch(ErroCompilacao erroCompilacao) 
         {
             exibirResultadoAnalise(erroCompilacao.getResultadoAnalise());
+            concluirTempos();
 
             if (aguardarParaSair)
             {
-                aguardar(CodigoEncerramento.ERRO);
+                aguardar(CodigoEncerramento.ERRO);
+            }
+        }
+    }
+
+    private static void executarDaemon(List<String> parametros)
+    {
+        String porta = extrairParametroValor(parametros, "-daemon-porta=");
+        long tempoLimite = extrairParametroLimite(parametros, "-daemon-tempo-limite=");
+        
+        try
+        {
+            CompiladorPrograma compilador = new CompiladorPrograma(usarCache, tamanhoMaximoCache, tipoCompilador);
+            new ServidorDaemon(compilador, (porta != null) ? Integer.parseInt(porta) : 0, (tempoLimite > 0) ? tempoLimite : ServidorDaemon.TEMPO_LIMITE_PADRAO).iniciar();
+        }
+        catch (Exception excecao)
+        {
+            System.err.println(excecao.getMessage());
+            System.err.flush();
+            System.exit(CodigoEncerramento.ERRO.ordinal());
+        }
+    }
+
+    private static void executarLote(File manifesto, List<String> parametros)
+    {
+        try
+        {
+            executarCasos(ExecutorLote.lerManifesto(manifesto), parametros);
+        }
+        catch (Exception excecao)
+        {
+            System.err.println(excecao.getMessage());
+            System.err.flush();
+            System.exit(CodigoEncerramento.ERRO.ordinal());
+        }
+    }
+
+    /**
+     * Compila o programa uma única vez e o executa com cada entrada do
+     * diretório, em paralelo. Cada execução tem a sua própria instância do
+     * programa, carregada em um class loader próprio.
+     */
+    private static void executarEntradas(File diretorio, List<String> parametros)
+    {
+        try
+        {
+            File arquivo = extrairArquivo(parametros);
+            
+            executarCasos(ExecutorLote.listarEntradas(arquivo, diretorio), parametros);
+        }
+        catch (Exception excecao)
+        {
+            System.err.println(excecao.getMessage());
+            System.err.flush();
+            System.exit(CodigoEncerramento.ERRO.ordinal());
+        }
+    }
+
+    private static void executarCasos(List<ExecutorLote.Caso> casos, List<String> parametros)
+    {
+        String numeroThreads = extrairParametroValor(parametros, "-lote-threads=");
+        String tempoLimite = extrairParametroValor(parametros, "-lote-tempo-limite=");
+        String relatorio = extrairParametroValor(parametros, "-relatorio=");
+        
+        try
+        {
+            CompiladorPrograma compilador = new CompiladorPrograma(usarCache, tamanhoMaximoCache, tipoCompilador);
+            ExecutorLote executor = new ExecutorLote(compilador,
+                (numeroThreads != null) ? Integer.parseInt(numeroThreads) : Runtime.getRuntime().availableProcessors(),
+                (tempoLimite != null) ? Long.parseLong(tempoLimite) : 10000);
+            
+            List<ExecutorLote.ResultadoCaso> resultados = executor.executar(casos);
+            
+            try (Writer saida = (relatorio != null) ? new OutputStreamWriter(new FileOutputStream(relatorio), "UTF-8") : new OutputStreamWriter(System.out, "UTF-8"))
+            {
+                ExecutorLote.escreverRelatorio(resultados, saida);
+            }
+            
+            System.exit(CodigoEncerramento.NORMAL.ordinal());
+        }
+        catch (Exception excecao)
+        {
+            System.err.println(excecao.getMessage());
+            System.err.flush();
+            System.exit(CodigoEncerramento.ERRO.ordinal());
+        }
+    }
+
+    private static void executarPrecompilacao(File diretorio, List<String> parametros)
+    {
+        String numeroThreads = extrairParametroValor(parametros, "-precompilar-threads=");
+        
+        try
+        {
+            if (!diretorio.isDirectory())
+            {
+                throw new Exception(String.format("O caminho '%s' não é um diretório", obterCaminhoArquivo(diretorio)));
+            }
+            
+            long inicio = System.nanoTime();
+            CompiladorPrograma compilador = new CompiladorPrograma(usarCache, tamanhoMaximoCache, tipoCompilador);
+            Precompilador precompilador = new Precompilador(compilador,
+                (numeroThreads != null) ? Integer.parseInt(numeroThreads) : Runtime.getRuntime().availableProcessors());
+            
+            List<Precompilador.Resultado> resultados = precompilador.precompilar(Precompilador.listarProgramas(diretorio));
+            Precompilador.escreverRelatorio(resultados, System.nanoTime() - inicio, System.out);
+            
+            for (Precompilador.Resultado resultado : resultados)
+            {
+                if (resultado.getSituacao() == Precompilador.Situacao.ERRO)
+                {
+                    System.exit(CodigoEncerramento.ERRO.ordinal());
+                }
+            }
+            
+            System.exit(CodigoEncerramento.NORMAL.ordinal());
+        }
+        catch (Exception excecao)
+        {
+            System.err.println(excecao.getMessage());
+            System.err.flush();
+            System.exit(CodigoEncerramento.ERRO.ordinal());
+        }
+    }
+
+    /**
+     * Executa apenas a análise dos programas, sem compilá-los, e escreve os
+     * avisos e erros encontrados em JSON Lines ou SARIF. O resumo vai para a
+     * saída de erros, para não misturar com o relatório.
+     */
+    private static void executarVerificacao(File raiz, List<String> parametros)
+    {
+        String numeroThreads = extrairParametroValor(parametros, "-verificar-threads=");
+        String formato = extrairParametroValor(parametros, "-verificar-formato=");
+        String relatorio = extrairParametroValor(parametros, "-relatorio=");
+        
+        try
+        {
+            if (!raiz.exists())
+            {
+                throw new Exception(String.format("O caminho '%s' não existe", obterCaminhoArquivo(raiz)));
+            }
+            
+            Verificador.Formato formatoRelatorio = Verificador.Formato.JSONL;
+            
+            if (formato != null)
+            {
+                try
+                {
+                    formatoRelatorio = Verificador.Formato.valueOf(formato.toUpperCase());
+                }
+                catch (IllegalArgumentException excecao)
+                {
+                    throw new Exception(String.format("O formato '%s' não é válido, use jsonl ou sarif", formato));
+                }
+            }
+            
+            long inicio = System.nanoTime();
+            Verificador verificador = new Verificador((numeroThreads != null) ? Integer.parseInt(numeroThreads) : Runtime.getRuntime().availableProcessors());
+            List<Verificador.Resultado> resultados = verificador.verificar(raiz);
+            
+            try (Writer saida = new BufferedWriter((relatorio != null) ? new OutputStreamWriter(new FileOutputStream(relatorio), "UTF-8") : new OutputStreamWriter(System.out, "UTF-8"), 64 * 1024))
+            {
+                Verificador.escreverRelatorio(resultados, raiz, formatoRelatorio, saida);
+            }
+            
+            int comErros = 0;
+            
+            for (Verificador.Resultado resultado : resultados)
+            {
+                if (resultado.contemErros())
+                {
+                    comErros++;
+                }
+            }
+            
+            System.err.println(String.format("%d programas verificados em %d ms: %d com erros", resultados.size(), (System.nanoTime() - inicio) / 1000000, comErros));
+            System.err.flush();
+            System.exit(((comErros > 0) ? CodigoEncerramento.ERRO : CodigoEncerramento.NORMAL).ordinal());
+        }
+        catch (Exception excecao)
+        {
+            System.err.println(excecao.getMessage());
+            System.err.flush();
+            System.exit(CodigoEncerramento.ERRO.ordinal());
+        }
+    }
+
+    /**
+     * Compila o programa e grava um pacote que pode ser executado sem
+     * compilar novamente, inclusive em máquinas sem o javac.
+     */
+    private static void executarCompilacao(String destino, List<String> parametros)
+    {
+        try
+        {
+            File arquivo = extrairArquivo(parametros);
+            File arquivoPacote = (destino != null) ? new File(destino) : new File(arquivo.getPath().replaceFirst("(?i)\\.por$", "") + PacotePrograma.EXTENSAO);
+            String algoritmo = lerArquivo(arquivo);
+            ProgramaCompilado programaCompilado;
+            
+            try
+            {
+                programaCompilado = new CompiladorPrograma(usarCache, tamanhoMaximoCache, tipoCompilador).compilar(algoritmo);
+            }
+            catch (ErroCompilacao erroCompilacao)
+            {
+                for (String aviso : CompiladorPrograma.formatarAvisos(erroCompilacao.getResultadoAnalise()))
+                {
+                    System.err.println(aviso);
+                }
+                
+                for (ErroAnalise erro : erroCompilacao.getResultadoAnalise().getErros())
+                {
+                    System.err.println(CompiladorPrograma.formatarErro(erro));
+                }
+                
+                System.err.flush();
+                System.exit(CodigoEncerramento.ERRO.ordinal());
+                return;
+            }
+            
+            for (String aviso : programaCompilado.getAvisos())
+            {
+                System.err.println(aviso);
+            }
+            
+            System.err.flush();
+            
+            if (!programaCompilado.podeInstanciarNovamente())
+            {
+                // Compilado pelo núcleo: as classes estão no diretório de onde ele as carregou
+                programaCompilado = ProgramaCompilado.extrair(programaCompilado.instanciar(), programaCompilado.getAvisos());
+            }
+            
+            PacotePrograma.gravar(programaCompilado, algoritmo, arquivoPacote);
+            System.out.println(String.format("Pacote gravado em '%s'", obterCaminhoArquivo(arquivoPacote)));
+            System.out.flush();
+            System.exit(CodigoEncerramento.NORMAL.ordinal());
+        }
+        catch (Exception excecao)
+        {
+            System.err.println(excecao.getMessage());
+            System.err.flush();
+            System.exit(CodigoEncerramento.ERRO.ordinal());
+        }
+    }
+
+    private static void executarInterativo(List<String> parametros)
+    {
+        try
+        {
+            CompiladorPrograma compilador = new CompiladorPrograma(usarCache, tamanhoMaximoCache, tipoCompilador);
+            
+            new ModoInterativo(compilador, parametros.toArray(new String[parametros.size()])).executar();
+            System.exit(CodigoEncerramento.NORMAL.ordinal());
+        }
+        catch (Exception excecao)
+        {
+            System.err.println(excecao.getMessage());
+            System.err.flush();
+            System.exit(CodigoEncerramento.ERRO.ordinal());
+        }
+    }
+
+    private static void executarObservacao(List<String> parametros)
+    {
+        String arquivoEntrada = extrairParametroValor(parametros, "-in=");
+        
+        definirSaidaDadosPadrao(parametros);
+        definirSaidaErrosPadrao(parametros);
+        
+        try
+        {
+            File arquivo = extrairArquivo(parametros);
+            CompiladorPrograma compilador = new CompiladorPrograma(usarCache, tamanhoMaximoCache, tipoCompilador);
+            
+            new ModoObservacao(compilador, arquivo, (arquivoEntrada != null && arquivoEntrada.length() > 0) ? new File(arquivoEntrada) : null,
+                parametros.toArray(new String[parametros.size()])).executar();
+        }
+        catch (Exception excecao)
+        {
+            System.err.println(excecao.getMessage());
+            System.err.flush();
+            System.exit(CodigoEncerramento.ERRO.ordinal());
+        }
+    }
+
+    private void criarSaidaBufferizada()
+    {
+        saidaBufferizada = new SaidaBufferizada(System.out, SaidaBufferizada.charsetSaidaPadrao(), 8192, intervaloDescargaSaida);
+
+        final SaidaBufferizada saida = saidaBufferizada;
+
+        Runtime.getRuntime().addShutdownHook(new Thread()
+        {
+            @Override
+            public void run()
+            {
+                saida.fechar();
+            }
+        });
+    }
+
+    private void criarVigilante()
+    {
+        vigilante = new VigilanteExecucao(programa, limites, SaidaBufferizada.charsetSaidaPadrao(), new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                // O programa não atendeu à interrupção, provavelmente por estar
+                // bloqueado lendo a entrada
+                System.err.println("\n" + vigilante.descrever(vigilante.getViolacao()));
+                System.err.flush();
+                System.exit(obterCodigoEncerramento(vigilante.getViolacao()).ordinal());
+            }
+        });
+    }
+
+    private void criarComparador(File arquivoEsperado) throws Exception
+    {
+        try
+        {
+            // A saída do programa é codificada com o charset padrão, o mesmo
+            // de um arquivo esperado gerado com -out= na mesma máquina
+            comparador = new ComparadorSaida(arquivoEsperado, Charset.defaultCharset(), normalizacaoSaida);
+        }
+        catch (IOException ex)
+        {
+            throw new Exception(String.format("Ocorreu um erro ao ler o arquivo '%s'", obterCaminhoArquivo(arquivoEsperado)));
+        }
+    }
+
+    private static CodigoEncerramento obterCodigoEncerramento(VigilanteExecucao.Violacao violacao)
+    {
+        switch (violacao)
+        {
+            case SAIDA:
+                return CodigoEncerramento.LIMITE_SAIDA;
+            case LEITURAS:
+                return CodigoEncerramento.LIMITE_LEITURAS;
+            case ALOCACAO:
+                return CodigoEncerramento.LIMITE_ALOCACAO;
+            default:
+                return CodigoEncerramento.TEMPO_ESGOTADO;
+        }
+    }
+
+    private void concluirPerfil()
+    {
+        perfil.execucaoEncerrada();
+        perfil.escreverRelatorio(System.err);
+
+        try
+        {
+            perfil.escreverArquivo(arquivoPerfil);
+            System.err.println("Perfil gravado em " + obterCaminhoArquivo(arquivoPerfil));
+        }
+        catch (IOException excecao)
+        {
+            System.err.println("Não foi possível gravar o perfil: " + excecao.getMessage());
+        }
+
+        System.err.flush();
+    }
+
+    private void concluirTempos()
+    {
+        if (!usarTempos && caminhoArquivoTempos == null)
+        {
+            return;
+        }
+
+        if (caminhoArquivoTempos == null)
+        {
+            tempos.escreverRelatorio(System.err);
+            return;
+        }
+
+        try (PrintStream saida = new PrintStream(new FileOutputStream(caminhoArquivoTempos), false, "UTF-8"))
+        {
+            tempos.escreverRelatorio(saida);
+        }
+        catch (IOException excecao)
+        {
+            System.err.println("Não foi possível gravar os tempos: " + excecao.getMessage());
+            System.err.flush();
+        }
+    }
+
+    private void descarregarSaida()
+    {
+        if (saidaBufferizada != null)
+        {
+            saidaBufferizada.descarregar();
+        }
+    }
+
+    static File extrairArquivo(List<String> args) throws Exception
+    {
+        return extrairArquivo(args, false);
+    }
+
+    /**
+     * @param aceitarPacote se também é aceito um pacote gerado com
+     * {@code -compilar}
+     */
+    static File extrairArquivo(List<String> args, boolean aceitarPacote) throws Exception
+    {
+        if (!args.isEmpty())
+        {
+            String parametro = args.remove(0);
+            File arquivo = new File(parametro);
+            String caminho = obterCaminhoArquivo(arquivo);
+
+            if (!arquivo.exists())
+            {
+                throw new Exception(String.format("O caminho '%s' não existe", caminho));
+            }
+
+            if (!arquivo.isFile())
+            {
+                throw new Exception(String.format("O caminho '%s' não é um arquivo", caminho));
+            }
+
+            if (!arquivo.getName().toLowerCase().endsWith(".por") && !(aceitarPacote && PacotePrograma.isPacote(arquivo)))
+            {
+                throw new Exception(String.format("O arquivo '%s' não é um programa do Portugol", caminho));
+            }
+
+            if (!arquivo.canRead())
+            {
+                throw new Exception(String.format("O arquivo '%s' não pode ser lido", caminho));
+            }
+            
+            return arquivo;
+        }
+
+        throw new Exception("O arquivo de programa não foi informado");
+    }
+    
+    private static boolean extrairParametroAguardarParaSair(List<String> parametros) 
+    {
+        if (!parametros.isEmpty())
+        {
+            Iterator<String> iterador = parametros.iterator();
+            
+            while (iterador.hasNext())
+            {
+                String parametro = iterador.next();
+
+                if (parametro.toLowerCase().equals("-no-wait"))
+                {
+                    iterador.remove();
+                    return false;
+                }
+            }
+        }
+        
+        return true;
+    }
+    
+    private static boolean extrairParametroUsarCache(List<String> parametros) 
+    {
+        Iterator<String> iterador = parametros.iterator();
+
+        while (iterador.hasNext())
+        {
+            String parametro = iterador.next();
+
+            if (parametro.toLowerCase().equals("-no-cache"))
+            {
+                iterador.remove();
+                return false;
+            }
+        }
+        
+        return true;
+    }
+    
+    private static long extrairParametroTamanhoMaximoCache(List<String> parametros) 
+    {
+        Iterator<String> iterador = parametros.iterator();
+
+        while (iterador.hasNext())
+        {
+            String parametro = iterador.next();
+
+            if (parametro.toLowerCase().startsWith("-cache-max="))
+            {
+                iterador.remove();
+
+                try
+                {
+                    return Long.parseLong(parametro.substring("-cache-max=".length())) * 1024 * 1024;
+                }
+                catch (NumberFormatException excecao)
+                {
+                    break;
+                }
+            }
+        }
+        
+        return tamanhoMaximoCache;
+    }
+    
+    private static CompiladorPrograma.Tipo extrairParametroTipoCompilador(List<String> parametros)
+    {
+        Iterator<String> iterador = parametros.iterator();
+
+        while (iterador.hasNext())
+        {
+            String parametro = iterador.next();
+
+            if (parametro.toLowerCase().startsWith("-compilador="))
+            {
+                iterador.remove();
+
+                String valor = parametro.substring("-compilador=".length()).toLowerCase();
+
+                switch (valor)
+                {
+                    case "interno":
+                        return CompiladorPrograma.Tipo.INTERNO;
+                    case "externo":
+                        return CompiladorPrograma.Tipo.EXTERNO;
+                    default:
+                        return CompiladorPrograma.Tipo.AUTOMATICO;
+                }
+            }
+        }
+        
+        return CompiladorPrograma.Tipo.AUTOMATICO;
+    }
+    
+    private static ComparadorSaida.Normalizacao extrairParametroNormalizacaoSaida(List<String> parametros)
+    {
+        Iterator<String> iterador = parametros.iterator();
+
+        while (iterador.hasNext())
+        {
+            String parametro = iterador.next();
+
+            if (parametro.toLowerCase().startsWith("-esperado-normalizacao="))
+            {
+                iterador.remove();
+
+                String valor = parametro.substring("-esperado-normalizacao=".length()).toLowerCase();
+
+                switch (valor)
+                {
+                    case "exata":
+                        return ComparadorSaida.Normalizacao.EXATA;
+                    case "espacos":
+                        return ComparadorSaida.Normalizacao.ESPACOS;
+                    default:
+                        return ComparadorSaida.Normalizacao.LINHAS;
+                }
+            }
+        }
+        
+        return ComparadorSaida.Normalizacao.LINHAS;
+    }
+    
+    private static boolean extrairParametroSaidaBufferizada(List<String> parametros) 
+    {
+        Iterator<String> iterador = parametros.iterator();
+
+        while (iterador.hasNext())
+        {
+            String parametro = iterador.next();
+
+            if (parametro.toLowerCase().equals("-buffer"))
+            {
+                iterador.remove();
+                return true;
+            }
+        }
+        
+        return false;
+    }
+    
+    private static boolean extrairParametroPerfil(List<String> parametros) 
+    {
+        Iterator<String> iterador = parametros.iterator();
+
+        while (iterador.hasNext())
+        {
+            String parametro = iterador.next();
+
+            if (parametro.toLowerCase().equals("-perfil"))
+            {
+                iterador.remove();
+                return true;
+            }
+        }
+        
+        return false;
+    }
+
+    private static boolean extrairParametroTempos(List<String> parametros) 
+    {
+        Iterator<String> iterador = parametros.iterator();
+
+        while (iterador.hasNext())
+        {
+            String parametro = iterador.next();
+
+            if (parametro.toLowerCase().equals("-tempos"))
+            {
+                iterador.remove();
+                return true;
             }
         }
+        
+        return false;
     }
 
-    private static boolean rodandoEmmWindows()
-    {
-        String so = System.getProperty("os.name");
-
-        return (so != null && so.toLowerCase().contains("win"));
-    }
-    
-    private static boolean rodandoNoNetbeans()
-    {
-        return System.getProperty("netbeans") != null;
-    }
-    
-    private String getClassPathParaCompilacao() throws IOException
+    /**
+     * @return o valor do limite, ou zero quando ele não foi informado ou é
+     * inválido
+     */
+    private static long extrairParametroLimite(List<String> parametros, String prefixo) 
     {
-        String classPathSeparator = !rodandoEmmWindows() ? ":" : ";"; 
-        
-        if (rodandoNoNetbeans()) {
+        String valor = extrairParametroValor(parametros, prefixo);
 
-            return System.getProperty("java.class.path") + classPathSeparator;
+        try
+        {
+            return (valor != null) ? Long.parseLong(valor) : 0;
         }
-        
-        File classpathDir = new File(Caminhos.getDiretorioAplicacao(), "lib");
-     
-        String expandedClassPath = "";
-        if (classpathDir.isDirectory()) {
-            File jars[] = classpathDir.listFiles();
-            
-            for (File jar : jars) {
-                expandedClassPath += jar.getCanonicalPath() + classPathSeparator;
-            }
+        catch (NumberFormatException excecao)
+        {
+            return 0;
         }
-       
-        return expandedClassPath;
     }
-    
-    private static File extrairArquivo(List<String> args) throws Exception
+
+    private static boolean extrairParametroMemoria(List<String> parametros) 
     {
-        if (!args.isEmpty())
+        Iterator<String> iterador = parametros.iterator();
+
+        while (iterador.hasNext())
         {
-            String parametro = args.remove(0);
-            File arquivo = new File(parametro);
-            String caminho = obterCaminhoArquivo(arquivo);
+            String parametro = iterador.next();
 
-            if (!arquivo.exists())
+            if (parametro.toLowerCase().equals("-memoria"))
             {
-                throw new Exception(String.format("O caminho '%s' não existe", caminho));
+                iterador.remove();
+                return true;
             }
+        }
+        
+        return false;
+    }
 
-            if (!arquivo.isFile())
-            {
-                throw new Exception(String.format("O caminho '%s' não é um arquivo", caminho));
-            }
+    private static long extrairParametroIntervaloDescargaSaida(List<String> parametros) 
+    {
+        Iterator<String> iterador = parametros.iterator();
 
-            if (!arquivo.getName().toLowerCase().endsWith(".por"))
-            {
-                throw new Exception(String.format("O arquivo '%s' não é um programa do Portugol", caminho));
-            }
+        while (iterador.hasNext())
+        {
+            String parametro = iterador.next();
 
-            if (!arquivo.canRead())
+            if (parametro.toLowerCase().startsWith("-buffer-intervalo="))
             {
-                throw new Exception(String.format("O arquivo '%s' não pode ser lido", caminho));
+                iterador.remove();
+
+                try
+                {
+                    return Long.parseLong(parametro.substring("-buffer-intervalo=".length()));
+                }
+                catch (NumberFormatException excecao)
+                {
+                    break;
+                }
             }
-            
-            return arquivo;
         }
-
-        throw new Exception("O arquivo de programa não foi informado");
+        
+        return intervaloDescargaSaida;
     }
     
-    private static boolean extrairParametroAguardarParaSair(List<String> parametros) 
+    private static String extrairParametroValor(List<String> parametros, String prefixo) 
     {
-        if (!parametros.isEmpty())
+        Iterator<String> iterador = parametros.iterator();
+
+        while (iterador.hasNext())
         {
-            Iterator<String> iterador = parametros.iterator();
-            
-            while (iterador.hasNext())
-            {
-                String parametro = iterador.next();
+            String parametro = iterador.next();
 
-                if (parametro.toLowerCase().equals("-no-wait"))
-                {
-                    iterador.remove();
-                    return false;
-                }
+            if (parametro.toLowerCase().startsWith(prefixo))
+            {
+                iterador.remove();
+                return parametro.substring(prefixo.length());
             }
         }
         
-        return true;
+        return null;
     }
     
     private static void definirEntradaDadosPadrao(List<String> parametros)
@@ -240,9 +993,9 @@ public final class Console implements Entrada, Saida, ObservadorExecucao
                             {
                                 try
                                 {
-                                    System.setIn(new FileInputStream(arquivo));
+                                    System.setIn(InicializacaoConcorrente.anteciparEntrada(arquivo));
                                 }
-                                catch (FileNotFoundException ex)
+                                catch (IOException ex)
                                 {
                                     
                                 }
@@ -266,6 +1019,20 @@ public final class Console implements Entrada, Saida, ObservadorExecucao
         
         return scannerEntrada;
     }
+
+    /**
+     * @return o leitor de entrada ou {@code null} quando o charset padrão não
+     * é suportado por ele, caso em que o Scanner deve ser usado
+     */
+    public LeitorEntrada getLeitorEntrada() 
+    {
+        if (leitorEntrada == null && LeitorEntrada.suporta(Charset.defaultCharset()))
+        {
+            leitorEntrada = new LeitorEntrada(System.in, Charset.defaultCharset());
+        }
+        
+        return leitorEntrada;
+    }
     
     private static void definirSaidaDadosPadrao(List<String> parametros)
     {
@@ -291,9 +1058,9 @@ public final class Console implements Entrada, Saida, ObservadorExecucao
                                                        
                             try
                             {
-                                System.setOut(new PrintStream(arquivo));
+                                System.setOut(new PrintStream(abrirSaidaArquivo(arquivo)));
                             }
-                            catch (FileNotFoundException ex)
+                            catch (IOException ex)
                             {
 
                             }                           
@@ -331,9 +1098,9 @@ public final class Console implements Entrada, Saida, ObservadorExecucao
                             
                             try
                             {
-                                System.setErr(new PrintStream(arquivo));
+                                System.setErr(new PrintStream(abrirSaidaArquivo(arquivo)));
                             }
-                            catch (FileNotFoundException ex)
+                            catch (IOException ex)
                             {
 
                             }                            
@@ -347,6 +1114,56 @@ public final class Console implements Entrada, Saida, ObservadorExecucao
         }
     }    
 
+    private static SaidaAssincrona abrirSaidaArquivo(File arquivo) throws IOException
+    {
+        SaidaAssincrona saida = new SaidaAssincrona(arquivo);
+
+        synchronized (saidasArquivo)
+        {
+            if (saidasArquivo.isEmpty())
+            {
+                // Cobre os encerramentos que não passam por execucaoEncerrada
+                Runtime.getRuntime().addShutdownHook(new Thread()
+                {
+                    @Override
+                    public void run()
+                    {
+                        descarregarSaidasArquivo();
+                    }
+                });
+            }
+
+            saidasArquivo.add(saida);
+        }
+
+        return saida;
+    }
+
+    /**
+     * Grava no disco tudo o que foi escrito nos arquivos de saída. As escritas
+     * seguintes são gravadas diretamente, sem passar pela thread de gravação.
+     */
+    private static void descarregarSaidasArquivo()
+    {
+        System.out.flush();
+        System.err.flush();
+
+        synchronized (saidasArquivo)
+        {
+            for (SaidaAssincrona saida : saidasArquivo)
+            {
+                try
+                {
+                    saida.fechar();
+                }
+                catch (IOException ex)
+                {
+                    // Não há onde informar o erro, a saída pode ser o próprio arquivo
+                }
+            }
+        }
+    }
+
     private static String obterCaminhoArquivo(File arquivo)
     {
         try
@@ -379,7 +1196,10 @@ public final class Console implements Entrada, Saida, ObservadorExecucao
     @Override
     public void execucaoPausada() 
     {
-
+        if (perfil != null)
+        {
+            perfil.execucaoPausada();
+        }
     }
 
     @Override
@@ -391,6 +1211,67 @@ public final class Console implements Entrada, Saida, ObservadorExecucao
     @Override
     public void solicitaEntrada(TipoDado tipoDado, Armazenador armazenador)
     {
+        descarregarSaida();
+
+        if (vigilante != null && !vigilante.registrarLeitura())
+        {
+            armazenador.cancelarLeitura();
+            return;
+        }
+
+        TemposExecucao.Medicao medicao = tempos.iniciarEspera(tipoDado);
+
+        try
+        {
+            lerEntrada(tipoDado, armazenador);
+        }
+        finally
+        {
+            medicao.concluir();
+        }
+    }
+
+    private void lerEntrada(TipoDado tipoDado, Armazenador armazenador)
+    {
+        LeitorEntrada leitor = getLeitorEntrada();
+
+        if (leitor != null)
+        {
+            try
+            {
+                switch (tipoDado)
+                {
+                    case CADEIA:
+                        armazenador.setValor(leitor.proximoTexto());
+                        return;
+                    case CARACTER:
+                        armazenador.setValor(leitor.proximoCaracter());
+                        return;
+                    case INTEIRO:
+                        armazenador.setValor(leitor.proximoInteiro());
+                        return;
+                    case REAL:
+                        armazenador.setValor(leitor.proximoReal());
+                        return;
+                    case LOGICO:
+                    {
+                        String dado = leitor.proximoTexto();
+                        Object valor = dado.equals("verdadeiro") ? true : (dado.equals("falso")) ? false : null;
+
+                        armazenador.setValor(valor);
+                        return;
+                    }
+                }
+            }
+            catch (InputMismatchException excecao)
+            {
+
+            }
+
+            armazenador.cancelarLeitura();
+            return;
+        }
+
         Scanner scanner = getScannerEntrada();
 
         try
@@ -435,9 +1316,51 @@ public final class Console implements Entrada, Saida, ObservadorExecucao
 
     }
 
+    /**
+     * @return {@code true} se a saída precisa passar por
+     * {@link #registrarSaida(String)}. Sem limite de saída e sem saída
+     * esperada os valores primitivos não são convertidos em texto.
+     */
+    private boolean registrandoSaida()
+    {
+        return vigilante != null || comparador != null;
+    }
+
+    /**
+     * @return {@code false} se o texto não deve ser escrito, porque excede o
+     * limite de saída ou diverge da saída esperada. Na divergência o programa
+     * é interrompido imediatamente.
+     */
+    private boolean registrarSaida(String texto)
+    {
+        if (vigilante != null && !vigilante.registrarSaida(texto))
+        {
+            return false;
+        }
+
+        if (comparador != null && !comparador.comparar(texto))
+        {
+            programa.interromper();
+            return false;
+        }
+
+        return true;
+    }
+
     @Override
     public void escrever(String valor)
     {
+        if (registrandoSaida() && !registrarSaida(valor))
+        {
+            return;
+        }
+
+        if (saidaBufferizada != null)
+        {
+            saidaBufferizada.escrever(valor);
+            return;
+        }
+
         System.out.print(valor);
         System.out.flush();
     }
@@ -445,6 +1368,17 @@ public final class Console implements Entrada, Saida, ObservadorExecucao
     @Override
     public void escrever(boolean valor)
     {
+        if (registrandoSaida() && !registrarSaida(valor ? "verdadeiro" : "falso"))
+        {
+            return;
+        }
+
+        if (saidaBufferizada != null)
+        {
+            saidaBufferizada.escrever(valor);
+            return;
+        }
+
         if (valor == true)
         {
             System.out.print("verdadeiro");
@@ -460,6 +1394,17 @@ public final class Console implements Entrada, Saida, ObservadorExecucao
     @Override
     public void escrever(int valor)
     {
+        if (registrandoSaida() && !registrarSaida(Integer.toString(valor)))
+        {
+            return;
+        }
+
+        if (saidaBufferizada != null)
+        {
+            saidaBufferizada.escrever(valor);
+            return;
+        }
+
         System.out.print(Integer.toString(valor));
         System.out.flush();
     }
@@ -467,6 +1412,17 @@ public final class Console implements Entrada, Saida, ObservadorExecucao
     @Override
     public void escrever(double valor)
     {
+        if (registrandoSaida() && !registrarSaida(Double.toString(valor)))
+        {
+            return;
+        }
+
+        if (saidaBufferizada != null)
+        {
+            saidaBufferizada.escrever(valor);
+            return;
+        }
+
         System.out.print(Double.toString(valor));
         System.out.flush();
     }
@@ -474,6 +1430,17 @@ public final class Console implements Entrada, Saida, ObservadorExecucao
     @Override
     public void escrever(char valor)
     {
+        if (registrandoSaida() && !registrarSaida(Character.toString(valor)))
+        {
+            return;
+        }
+
+        if (saidaBufferizada != null)
+        {
+            saidaBufferizada.escrever(valor);
+            return;
+        }
+
         System.out.print(Character.toString(valor));
         System.out.flush();
     }
@@ -481,12 +1448,64 @@ public final class Console implements Entrada, Saida, ObservadorExecucao
     @Override
     public void execucaoIniciada(Programa programa)
     {
+        if (vigilante != null)
+        {
+            vigilante.execucaoIniciada();
+        }
 
+        if (medicaoMemoria != null)
+        {
+            medicaoMemoria.execucaoIniciada();
+        }
     }
 
     @Override
     public void execucaoEncerrada(Programa programa, ResultadoExecucao resultadoExecucao)
     {
+        if (saidaBufferizada != null)
+        {
+            saidaBufferizada.fechar();
+        }
+
+        medicaoExecucao.concluir();
+
+        if (medicaoMemoria != null)
+        {
+            medicaoMemoria.concluir();
+        }
+
+        if (perfil != null)
+        {
+            concluirPerfil();
+        }
+
+        concluirTempos();
+
+        if (medicaoMemoria != null)
+        {
+            medicaoMemoria.escreverRelatorio(System.err);
+        }
+
+        if (vigilante != null)
+        {
+            vigilante.encerrar();
+
+            if (vigilante.getViolacao() != null)
+            {
+                encerrarPorLimite(vigilante.getViolacao());
+            }
+        }
+
+        if (comparador != null)
+        {
+            comparador.concluir();
+
+            if (comparador.getDivergencia() != null || comparador.getErroLeitura() != null)
+            {
+                encerrarPorDivergencia();
+            }
+        }
+
         switch (resultadoExecucao.getModoEncerramento())
         {
             case NORMAL:
@@ -515,38 +1534,66 @@ public final class Console implements Entrada, Saida, ObservadorExecucao
                 break;
         }
         
+        descarregarSaidasArquivo();
         System.exit(CodigoEncerramento.NORMAL.ordinal());
     }
 
-    private String lerArquivo(File arquivo) throws Exception
+    /**
+     * Ao contrário dos demais encerramentos, o limite excedido é informado
+     * mesmo com -no-wait, pois é usado por quem executa programas de
+     * terceiros de forma automatizada.
+     */
+    private void encerrarPorLimite(VigilanteExecucao.Violacao violacao)
     {
-        try
+        CodigoEncerramento codigo = obterCodigoEncerramento(violacao);
+
+        System.out.flush();
+        System.err.println("\n" + vigilante.descrever(violacao));
+        System.err.flush();
+
+        if (aguardarParaSair)
         {
-            StringBuilder reading = new StringBuilder();
-            FileInputStream is = new FileInputStream(arquivo);
-            BufferedReader reader = new BufferedReader(new InputStreamReader(is, "ISO-8859-1"));
-            String line;
+            aguardar(codigo);
+        }
 
-            try
-            {
-                while ((line = reader.readLine()) != null)
-                {
-                    reading.append(line);
-                    reading.append("\n");
-                }
+        System.exit(codigo.ordinal());
+    }
 
-                return reading.toString().replace("/*${cursor}*/", "");
-            }
-            finally
-            {
-                try
-                {
-                    reader.close();
-                }
-                catch (IOException ex)
-                {
-                }
-            }
+    /**
+     * Assim como o limite excedido, a divergência é informada mesmo com
+     * -no-wait.
+     */
+    private void encerrarPorDivergencia()
+    {
+        CodigoEncerramento codigo = CodigoEncerramento.SAIDA_INCORRETA;
+
+        System.out.flush();
+
+        if (comparador.getErroLeitura() != null)
+        {
+            codigo = CodigoEncerramento.ERRO;
+            System.err.println("\n" + String.format("Ocorreu um erro ao ler o arquivo '%s'", obterCaminhoArquivo(new File(caminhoArquivoEsperado))));
+        }
+        else
+        {
+            System.err.println("\n" + comparador.getDivergencia().descrever());
+        }
+
+        System.err.flush();
+
+        if (aguardarParaSair)
+        {
+            aguardar(codigo);
+        }
+
+        System.exit(codigo.ordinal());
+    }
+
+    public static String lerArquivo(File arquivo) throws Exception
+    {
+        try
+        {
+            return LeitorCodigoFonte.ler(arquivo);
         }
         catch (IOException ex)
         {
@@ -558,13 +1605,22 @@ public final class Console implements Entrada, Saida, ObservadorExecucao
     {
         for (AvisoAnalise aviso : resultadoAnalise.getAvisos())
         {
-            System.err.println("AVISO: " + aviso.getMensagem() + ". Linha: " + aviso.getLinha() + ", Coluna: " + aviso.getColuna());
+            System.err.println(CompiladorPrograma.formatarAviso(aviso));
             System.err.flush();
         }
 
         for (ErroAnalise erro : resultadoAnalise.getErros())
         {
-            System.err.println("ERRO: " + erro.getMensagem() + ". Linha: " + erro.getLinha() + ", Coluna: " + erro.getColuna());
+            System.err.println(CompiladorPrograma.formatarErro(erro));
+            System.err.flush();
+        }
+    }
+
+    private void exibirAvisos(List<String> avisos)
+    {
+        for (String aviso : avisos)
+        {
+            System.err.println(aviso);
             System.err.flush();
         }
     }
@@ -575,7 +1631,7 @@ public final class Console implements Entrada, Saida, ObservadorExecucao
         {
             System.out.println("");
             System.out.println("Pressione ENTER para continuar");
-            System.out.flush();
+            descarregarSaidasArquivo();
             System.in.read();
             System.exit(codigoEncerramento.ordinal());
         }
@@ -596,12 +1652,18 @@ public final class Console implements Entrada, Saida, ObservadorExecucao
     @Override
     public void highlightLinha(int linha) 
     {
-        
+        if (perfil != null)
+        {
+            perfil.linhaExecutada(linha);
+        }
     }
 
     @Override
     public void highlightDetalhadoAtual(int linha, int coluna, int tamanho) 
     {
-        
+        if (perfil != null)
+        {
+            perfil.linhaExecutadaDetalhada(linha);
+        }
     }
 }
@@ -0,0 +1,81 @@
+package br.univali.portugol;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Eventos do Java Flight Recorder gerados pelo console.
+ * <p>
+ * Esta classe só deve ser usada através do {@link TemposExecucao}, que
+ * verifica antes se a JVM tem o JFR e se ele está gravando. Carregar uma
+ * classe de evento sem o JFR iniciado custa centenas de milissegundos, o que
+ * não se justifica em execuções comuns.
+ *
+ * @author Luiz Fernando Noschang
+ */
+final class EventosJfr
+{
+    private EventosJfr()
+    {
+    }
+
+    static boolean gravando()
+    {
+        return FlightRecorder.isInitialized();
+    }
+
+    static Object iniciarFase(String fase, String programa)
+    {
+        EventoFase evento = new EventoFase();
+        evento.fase = fase;
+        evento.programa = programa;
+        evento.begin();
+
+        return evento;
+    }
+
+    static Object iniciarEspera(String tipoDado, String programa)
+    {
+        EventoEsperaEntrada evento = new EventoEsperaEntrada();
+        evento.tipoDado = tipoDado;
+        evento.programa = programa;
+        evento.begin();
+
+        return evento;
+    }
+
+    static void concluir(Object evento)
+    {
+        ((Event) evento).commit();
+    }
+
+    @Name("br.univali.portugol.Fase")
+    @Label("Fase da execução")
+    @Description("Uma fase da leitura, compilação ou execução de um programa Portugol")
+    @Category("Portugol")
+    static final class EventoFase extends Event
+    {
+        @Label("Fase")
+        String fase;
+
+        @Label("Programa")
+        String programa;
+    }
+
+    @Name("br.univali.portugol.EsperaEntrada")
+    @Label("Espera por entrada")
+    @Description("Tempo em que o programa ficou bloqueado aguardando um valor da entrada")
+    @Category("Portugol")
+    static final class EventoEsperaEntrada extends Event
+    {
+        @Label("Tipo de dado")
+        String tipoDado;
+
+        @Label("Programa")
+        String programa;
+    }
+}
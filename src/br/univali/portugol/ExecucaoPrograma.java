@@ -0,0 +1,396 @@
+package br.univali.portugol;
+
+import br.univali.portugol.nucleo.Programa;
+import br.univali.portugol.nucleo.asa.TipoDado;
+import br.univali.portugol.nucleo.execucao.ObservadorExecucao;
+import br.univali.portugol.nucleo.execucao.ResultadoExecucao;
+import br.univali.portugol.nucleo.execucao.es.Armazenador;
+import br.univali.portugol.nucleo.execucao.es.Entrada;
+import br.univali.portugol.nucleo.execucao.es.Saida;
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.InputMismatchException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Executa um programa com entrada e saída próprias, sem usar o
+ * {@code System.in}/{@code System.out} do processo. Permite executar vários
+ * programas na mesma JVM.
+ * <p>
+ * O programa roda na thread criada pelo núcleo. O encerramento é notificado
+ * por essa thread e o tempo limite é controlado por um temporizador
+ * compartilhado, de modo que {@link #iniciar} não ocupa nenhuma outra thread
+ * enquanto o programa executa.
+ *
+ * @author Luiz Fernando Noschang
+ */
+public final class ExecucaoPrograma implements Entrada, Saida, ObservadorExecucao
+{
+    private static final long TEMPO_ESPERA_INTERRUPCAO = 2000;
+
+    private final Programa programa;
+    private final LeitorEntrada leitor;
+    private final SaidaBufferizada saida;
+    private final TemposExecucao tempos = new TemposExecucao(null);
+    private final Conclusao conclusao = new Conclusao();
+
+    private volatile ResultadoExecucao resultado = null;
+    private volatile boolean tempoEsgotado = false;
+    private volatile long inicio = 0;
+    private volatile long fim = 0;
+    private volatile long bytesAlocados = -1;
+    private volatile long alocacaoInicial = -1;
+    private volatile TemposExecucao.Medicao medicaoExecucao = null;
+    private volatile ScheduledFuture<?> limite = null;
+
+    public ExecucaoPrograma(Programa programa, InputStream entrada, OutputStream saida, Charset charset)
+    {
+        this(programa, entrada, saida, charset, 0);
+    }
+
+    /**
+     * @param intervaloDescarga intervalo em milissegundos para descarregar a
+     * saída mesmo sem o buffer estar cheio, útil em sessões interativas
+     */
+    public ExecucaoPrograma(Programa programa, InputStream entrada, OutputStream saida, Charset charset, long intervaloDescarga)
+    {
+        this(programa, entrada, saida, charset, intervaloDescarga, 64 * 1024, 8192);
+    }
+
+    /**
+     * @param capacidadeEntrada tamanho do buffer de leitura da entrada
+     * @param capacidadeSaida tamanho do buffer da saída
+     */
+    public ExecucaoPrograma(Programa programa, InputStream entrada, OutputStream saida, Charset charset, long intervaloDescarga, int capacidadeEntrada, int capacidadeSaida)
+    {
+        this(programa, new LeitorEntrada(entrada, charset, capacidadeEntrada), saida, charset, intervaloDescarga, capacidadeSaida);
+    }
+
+    /**
+     * Usa um leitor já existente, para que os bytes que ele mantém em buffer
+     * não se percam quando a mesma entrada é usada por várias execuções.
+     */
+    public ExecucaoPrograma(Programa programa, LeitorEntrada leitor, OutputStream saida, Charset charset, long intervaloDescarga, int capacidadeSaida)
+    {
+        this.programa = programa;
+        this.leitor = leitor;
+        this.saida = new SaidaBufferizada(saida, charset, capacidadeSaida, intervaloDescarga);
+    }
+
+    /**
+     * Executa o programa e aguarda o seu término.
+     *
+     * @param tempoLimite tempo máximo de execução em milissegundos, ou zero
+     * para aguardar indefinidamente. Ao fim desse tempo o programa é
+     * interrompido.
+     * @return o resultado da execução, ou {@code null} se o programa não
+     * encerrou nem depois de interrompido
+     */
+    public ResultadoExecucao executar(String[] args, File diretorioTrabalho, long tempoLimite) throws InterruptedException
+    {
+        Future<ResultadoExecucao> execucao = iniciar(args, diretorioTrabalho, tempoLimite, null);
+
+        try
+        {
+            return execucao.get();
+        }
+        catch (ExecutionException excecao)
+        {
+            throw new IllegalStateException(excecao.getCause());
+        }
+        finally
+        {
+            saida.fechar();
+        }
+    }
+
+    /**
+     * Inicia o programa sem aguardar o seu término.
+     *
+     * @param tempoLimite tempo máximo de execução em milissegundos, ou zero
+     * para não limitar. Ao fim desse tempo o programa é interrompido.
+     * @param aoEncerrar executado quando o resultado fica disponível, ou
+     * {@code null}
+     * @return o resultado da execução, disponível quando o programa encerra;
+     * o resultado é {@code null} se o programa não encerrou nem depois de
+     * interrompido
+     */
+    public Future<ResultadoExecucao> iniciar(String[] args, File diretorioTrabalho, long tempoLimite, Runnable aoEncerrar)
+    {
+        conclusao.aoEncerrar = aoEncerrar;
+
+        programa.setEntrada(this);
+        programa.setSaida(this);
+        programa.adicionarObservadorExecucao(this);
+        programa.setDiretorioTrabalho(diretorioTrabalho);
+
+        inicio = System.nanoTime();
+        medicaoExecucao = tempos.iniciar(TemposExecucao.Fase.EXECUCAO);
+        programa.executar(args, Programa.Estado.BREAK_POINT);
+
+        if (tempoLimite > 0 && !conclusao.isDone())
+        {
+            limite = Temporizador.INSTANCIA.schedule(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    esgotarTempo();
+                }
+            }, tempoLimite, TimeUnit.MILLISECONDS);
+        }
+
+        return conclusao;
+    }
+
+    /**
+     * Interrompe o programa e, se nem assim ele encerrar, conclui a execução
+     * sem resultado.
+     */
+    private void esgotarTempo()
+    {
+        if (!conclusao.isDone())
+        {
+            tempoEsgotado = true;
+            programa.interromper();
+            Temporizador.INSTANCIA.schedule(conclusao, TEMPO_ESPERA_INTERRUPCAO, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Interrompe o programa sem aguardar o seu encerramento.
+     */
+    public void interromper()
+    {
+        programa.interromper();
+    }
+
+    public boolean isTempoEsgotado()
+    {
+        return tempoEsgotado;
+    }
+
+    /**
+     * @return os bytes alocados pela thread do programa, ou -1 se a medida
+     * não está disponível
+     */
+    public long getBytesAlocados()
+    {
+        return bytesAlocados;
+    }
+
+    /**
+     * @return o tempo de execução em nanossegundos
+     */
+    public long getTempoExecucao()
+    {
+        return ((fim > 0) ? fim : System.nanoTime()) - inicio;
+    }
+
+    @Override
+    public void solicitaEntrada(TipoDado tipoDado, Armazenador armazenador)
+    {
+        saida.descarregar();
+
+        TemposExecucao.Medicao medicao = tempos.iniciarEspera(tipoDado);
+
+        try
+        {
+            lerEntrada(tipoDado, armazenador);
+        }
+        finally
+        {
+            medicao.concluir();
+        }
+    }
+
+    private void lerEntrada(TipoDado tipoDado, Armazenador armazenador)
+    {
+        try
+        {
+            switch (tipoDado)
+            {
+                case CADEIA:
+                    armazenador.setValor(leitor.proximoTexto());
+                    return;
+                case CARACTER:
+                    armazenador.setValor(leitor.proximoCaracter());
+                    return;
+                case INTEIRO:
+                    armazenador.setValor(leitor.proximoInteiro());
+                    return;
+                case REAL:
+                    armazenador.setValor(leitor.proximoReal());
+                    return;
+                case LOGICO:
+                {
+                    String dado = leitor.proximoTexto();
+                    Object valor = dado.equals("verdadeiro") ? true : (dado.equals("falso")) ? false : null;
+
+                    armazenador.setValor(valor);
+                    return;
+                }
+            }
+        }
+        catch (InputMismatchException excecao)
+        {
+
+        }
+
+        armazenador.cancelarLeitura();
+    }
+
+    @Override
+    public void limpar()
+    {
+
+    }
+
+    @Override
+    public void escrever(String valor)
+    {
+        saida.escrever(valor);
+    }
+
+    @Override
+    public void escrever(boolean valor)
+    {
+        saida.escrever(valor);
+    }
+
+    @Override
+    public void escrever(int valor)
+    {
+        saida.escrever(valor);
+    }
+
+    @Override
+    public void escrever(double valor)
+    {
+        saida.escrever(valor);
+    }
+
+    @Override
+    public void escrever(char valor)
+    {
+        saida.escrever(valor);
+    }
+
+    @Override
+    public void execucaoIniciada(Programa programa)
+    {
+        alocacaoInicial = MedicaoMemoria.bytesAlocados(Thread.currentThread());
+    }
+
+    @Override
+    public void execucaoEncerrada(Programa programa, ResultadoExecucao resultadoExecucao)
+    {
+        fim = System.nanoTime();
+        medicaoExecucao.concluir();
+
+        long alocacaoFinal = MedicaoMemoria.bytesAlocados(Thread.currentThread());
+
+        if (alocacaoInicial >= 0 && alocacaoFinal >= 0)
+        {
+            bytesAlocados = alocacaoFinal - alocacaoInicial;
+        }
+
+        resultado = resultadoExecucao;
+        saida.fechar();
+        conclusao.run();
+
+        ScheduledFuture<?> limiteAtual = limite;
+
+        if (limiteAtual != null)
+        {
+            limiteAtual.cancel(false);
+        }
+    }
+
+    @Override
+    public void execucaoPausada()
+    {
+
+    }
+
+    @Override
+    public void execucaoResumida()
+    {
+
+    }
+
+    @Override
+    public void highlightLinha(int linha)
+    {
+
+    }
+
+    @Override
+    public void highlightDetalhadoAtual(int linha, int coluna, int tamanho)
+    {
+
+    }
+
+    /**
+     * Fica concluída quando o programa encerra ou quando, esgotado o tempo
+     * limite, ele não encerra nem depois de interrompido. Só a primeira
+     * conclusão tem efeito.
+     */
+    private final class Conclusao extends FutureTask<ResultadoExecucao>
+    {
+        private volatile Runnable aoEncerrar = null;
+
+        Conclusao()
+        {
+            super(new Callable<ResultadoExecucao>()
+            {
+                @Override
+                public ResultadoExecucao call()
+                {
+                    return resultado;
+                }
+            });
+        }
+
+        @Override
+        protected void done()
+        {
+            if (aoEncerrar != null)
+            {
+                aoEncerrar.run();
+            }
+        }
+    }
+
+    /**
+     * Só é inicializado quando alguma execução tem tempo limite.
+     */
+    private static final class Temporizador
+    {
+        private static final ScheduledThreadPoolExecutor INSTANCIA = new ScheduledThreadPoolExecutor(1, new ThreadFactory()
+        {
+            @Override
+            public Thread newThread(Runnable tarefa)
+            {
+                Thread thread = new Thread(tarefa, "limite-execucao");
+                thread.setDaemon(true);
+
+                return thread;
+            }
+        });
+
+        static
+        {
+            INSTANCIA.setRemoveOnCancelPolicy(true);
+        }
+    }
+}
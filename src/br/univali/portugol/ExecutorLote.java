@@ -0,0 +1,594 @@
+package br.univali.portugol;
+
+import br.univali.portugol.nucleo.ErroCompilacao;
+import br.univali.portugol.nucleo.Programa;
+import br.univali.portugol.nucleo.execucao.ResultadoExecucao;
+import br.univali.portugol.nucleo.mensagens.ErroAnalise;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Executa em uma única JVM os programas listados em um manifesto,
+ * comparando a saída de cada um com a saída esperada.
+ * <p>
+ * Cada linha do manifesto tem o formato
+ * {@code programa.por[;entrada.txt[;esperado.txt]]}. Linhas em branco ou
+ * iniciadas por '#' são ignoradas e caminhos relativos são resolvidos a
+ * partir do diretório do manifesto. Um mesmo programa pode aparecer em várias
+ * linhas, sendo compilado uma única vez.
+ * <p>
+ * Os casos também podem vir de um diretório de entradas, com
+ * {@link #listarEntradas(File, File)}, para executar um mesmo programa com
+ * cada uma delas.
+ * <p>
+ * A saída de um caso só é guardada quando há saída esperada, e apenas até um
+ * pouco além do tamanho dela: um programa que escreve mais do que isso é
+ * interrompido e a sua resposta é considerada incorreta.
+ *
+ * @author Luiz Fernando Noschang
+ */
+public final class ExecutorLote
+{
+    private static final Logger LOGGER = Logger.getLogger(ExecutorLote.class.getName());
+
+    public static enum Veredito { ACEITO, RESPOSTA_INCORRETA, EXECUTADO, ERRO_COMPILACAO, ERRO_EXECUCAO, TEMPO_ESGOTADO, INTERROMPIDO, FALHA };
+
+    /**
+     * Espaço além do dobro da saída esperada (que cobre '\r\n' no lugar de
+     * '\n') para os espaços em branco no fim da saída, que são ignorados na
+     * comparação.
+     */
+    private static final int FOLGA_SAIDA = 64 * 1024;
+
+    private final CompiladorPrograma compilador;
+    private final int numeroThreads;
+    private final long tempoLimite;
+    private final Charset charset;
+    private final ConcurrentMap<File, Future<Compilacao>> compilacoes = new ConcurrentHashMap<>();
+
+    public ExecutorLote(CompiladorPrograma compilador, int numeroThreads, long tempoLimite)
+    {
+        this.compilador = compilador;
+        this.numeroThreads = Math.max(1, numeroThreads);
+        this.tempoLimite = tempoLimite;
+        this.charset = LeitorEntrada.suporta(Charset.defaultCharset()) ? Charset.defaultCharset() : Charset.forName("UTF-8");
+    }
+
+    public static List<Caso> lerManifesto(File manifesto) throws IOException
+    {
+        File diretorio = manifesto.getAbsoluteFile().getParentFile();
+        List<Caso> casos = new ArrayList<>();
+
+        for (String linha : Files.readAllLines(manifesto.toPath(), Charset.forName("UTF-8")))
+        {
+            linha = linha.trim();
+
+            if (linha.isEmpty() || linha.startsWith("#"))
+            {
+                continue;
+            }
+
+            String[] partes = linha.split(";", -1);
+
+            casos.add(new Caso(
+                resolver(diretorio, partes[0]),
+                (partes.length > 1) ? resolver(diretorio, partes[1]) : null,
+                (partes.length > 2) ? resolver(diretorio, partes[2]) : null));
+        }
+
+        return casos;
+    }
+
+    /**
+     * Cria um caso para cada arquivo {@code .in} do diretório, em ordem
+     * alfabética. A saída esperada de {@code nome.in} é {@code nome.out},
+     * quando existe.
+     */
+    public static List<Caso> listarEntradas(File programa, File diretorio) throws IOException
+    {
+        File[] arquivos = diretorio.listFiles();
+
+        if (arquivos == null)
+        {
+            throw new IOException(String.format("O caminho '%s' não é um diretório", diretorio.getPath()));
+        }
+
+        Arrays.sort(arquivos);
+
+        List<Caso> casos = new ArrayList<>();
+
+        for (File arquivo : arquivos)
+        {
+            String nome = arquivo.getName();
+
+            if (arquivo.isFile() && nome.toLowerCase().endsWith(".in"))
+            {
+                File esperado = new File(diretorio, nome.substring(0, nome.length() - 3) + ".out");
+
+                casos.add(new Caso(programa, arquivo, esperado.isFile() ? esperado : null));
+            }
+        }
+
+        if (casos.isEmpty())
+        {
+            throw new IOException(String.format("Nenhum arquivo .in foi encontrado em '%s'", diretorio.getPath()));
+        }
+
+        return casos;
+    }
+
+    private static File resolver(File diretorio, String caminho)
+    {
+        caminho = caminho.trim();
+
+        if (caminho.isEmpty())
+        {
+            return null;
+        }
+
+        File arquivo = new File(caminho);
+
+        return arquivo.isAbsolute() ? arquivo : new File(diretorio, caminho);
+    }
+
+    public List<ResultadoCaso> executar(List<Caso> casos) throws InterruptedException
+    {
+        ExecutorService executor = Executors.newFixedThreadPool(numeroThreads);
+        List<Future<ResultadoCaso>> futuros = new ArrayList<>();
+
+        try
+        {
+            for (final Caso caso : casos)
+            {
+                futuros.add(executor.submit(new Callable<ResultadoCaso>()
+                {
+                    @Override
+                    public ResultadoCaso call() throws Exception
+                    {
+                        return executar(caso);
+                    }
+                }));
+            }
+
+            List<ResultadoCaso> resultados = new ArrayList<>();
+
+            for (int i = 0; i < futuros.size(); i++)
+            {
+                try
+                {
+                    resultados.add(futuros.get(i).get());
+                }
+                catch (ExecutionException excecao)
+                {
+                    resultados.add(new ResultadoCaso(casos.get(i), Veredito.FALHA, 0, 0, String.valueOf(excecao.getCause())));
+                }
+            }
+
+            return resultados;
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    private ResultadoCaso executar(Caso caso) throws Exception
+    {
+        Compilacao compilacao = obterCompilacao(caso.getPrograma());
+
+        if (compilacao.erro != null)
+        {
+            return new ResultadoCaso(caso, Veredito.ERRO_COMPILACAO, compilacao.tempo, 0, compilacao.erro);
+        }
+
+        Programa programa = compilacao.instanciar();
+        byte[] esperado = (caso.getEsperado() != null) ? Files.readAllBytes(caso.getEsperado().toPath()) : null;
+        SaidaLimitada saida = new SaidaLimitada((esperado != null) ? 2L * esperado.length + FOLGA_SAIDA : 0);
+        ResultadoExecucao resultado;
+        final ExecucaoPrograma execucao;
+
+        try (InputStream entrada = (caso.getEntrada() != null) ? new FileInputStream(caso.getEntrada()) : new ByteArrayInputStream(new byte[0]))
+        {
+            execucao = new ExecucaoPrograma(programa, entrada, saida, charset);
+
+            saida.setAoExceder(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    execucao.interromper();
+                }
+            });
+
+            resultado = execucao.executar(new String[0], caso.getPrograma().getAbsoluteFile().getParentFile(), tempoLimite);
+        }
+
+        long tempoExecucao = execucao.getTempoExecucao();
+
+        long bytesAlocados = execucao.getBytesAlocados();
+
+        if (execucao.isTempoEsgotado())
+        {
+            return new ResultadoCaso(caso, Veredito.TEMPO_ESGOTADO, compilacao.tempo, tempoExecucao, bytesAlocados, null);
+        }
+
+        if (saida.isExcedida())
+        {
+            return new ResultadoCaso(caso, Veredito.RESPOSTA_INCORRETA, compilacao.tempo, tempoExecucao, bytesAlocados,
+                "A saída excedeu " + saida.getLimite() + " bytes sem corresponder à saída esperada");
+        }
+
+        if (resultado == null)
+        {
+            return new ResultadoCaso(caso, Veredito.FALHA, compilacao.tempo, tempoExecucao, "O programa não informou o seu encerramento");
+        }
+
+        switch (resultado.getModoEncerramento())
+        {
+            case ERRO:
+                return new ResultadoCaso(caso, Veredito.ERRO_EXECUCAO, compilacao.tempo, tempoExecucao, bytesAlocados,
+                    resultado.getErro().getMensagem() + ". Linha: " + resultado.getErro().getLinha() + ", Coluna: " + resultado.getErro().getColuna());
+            case INTERRUPCAO:
+                return new ResultadoCaso(caso, Veredito.INTERROMPIDO, compilacao.tempo, tempoExecucao, bytesAlocados, null);
+            default:
+                break;
+        }
+
+        if (esperado == null)
+        {
+            return new ResultadoCaso(caso, Veredito.EXECUTADO, compilacao.tempo, tempoExecucao, bytesAlocados, null);
+        }
+
+        boolean correto = normalizar(esperado).equals(normalizar(saida.toByteArray()));
+
+        return new ResultadoCaso(caso, correto ? Veredito.ACEITO : Veredito.RESPOSTA_INCORRETA, compilacao.tempo, tempoExecucao, bytesAlocados, null);
+    }
+
+    /**
+     * Ignora diferenças de fim de linha e espaços no final da saída.
+     */
+    private String normalizar(byte[] bytes)
+    {
+        String texto = new String(bytes, charset).replace("\r\n", "\n");
+        int fim = texto.length();
+
+        while (fim > 0 && Character.isWhitespace(texto.charAt(fim - 1)))
+        {
+            fim--;
+        }
+
+        return texto.substring(0, fim);
+    }
+
+    private Compilacao obterCompilacao(final File arquivo) throws Exception
+    {
+        File chave = arquivo.getCanonicalFile();
+        Future<Compilacao> futuro = compilacoes.get(chave);
+
+        if (futuro == null)
+        {
+            FutureTask<Compilacao> tarefa = new FutureTask<>(new Callable<Compilacao>()
+            {
+                @Override
+                public Compilacao call() throws Exception
+                {
+                    return compilar(arquivo);
+                }
+            });
+
+            futuro = compilacoes.putIfAbsent(chave, tarefa);
+
+            if (futuro == null)
+            {
+                futuro = tarefa;
+                tarefa.run();
+            }
+        }
+
+        try
+        {
+            return futuro.get();
+        }
+        catch (ExecutionException excecao)
+        {
+            if (excecao.getCause() instanceof Exception)
+            {
+                throw (Exception) excecao.getCause();
+            }
+
+            throw excecao;
+        }
+    }
+
+    private Compilacao compilar(File arquivo) throws Exception
+    {
+        long inicio = System.nanoTime();
+        String algoritmo = Console.lerArquivo(arquivo);
+
+        try
+        {
+            ProgramaCompilado programaCompilado = extrairClasses(compilador.compilar(algoritmo));
+
+            return new Compilacao(algoritmo, programaCompilado, null, System.nanoTime() - inicio);
+        }
+        catch (ErroCompilacao erroCompilacao)
+        {
+            StringBuilder erros = new StringBuilder();
+
+            for (ErroAnalise erro : erroCompilacao.getResultadoAnalise().getErros())
+            {
+                erros.append(CompiladorPrograma.formatarErro(erro)).append('\n');
+            }
+
+            return new Compilacao(algoritmo, null, erros.toString().trim(), System.nanoTime() - inicio);
+        }
+    }
+
+    /**
+     * O programa compilado pelo núcleo só tem a instância criada por ele. As
+     * classes são extraídas do diretório de onde o núcleo as carregou, para
+     * que cada caso tenha a sua instância sem compilar o programa novamente.
+     */
+    private static ProgramaCompilado extrairClasses(ProgramaCompilado programaCompilado) throws Exception
+    {
+        if (programaCompilado.podeInstanciarNovamente())
+        {
+            return programaCompilado;
+        }
+
+        try
+        {
+            return ProgramaCompilado.extrair(programaCompilado.instanciar(), programaCompilado.getAvisos());
+        }
+        catch (IOException excecao)
+        {
+            LOGGER.log(Level.FINE, "Não foi possível extrair as classes do programa compilado pelo núcleo", excecao);
+            return programaCompilado;
+        }
+    }
+
+    public static void escreverRelatorio(List<ResultadoCaso> resultados, Writer saida) throws IOException
+    {
+        saida.write("[\n");
+
+        for (int i = 0; i < resultados.size(); i++)
+        {
+            ResultadoCaso resultado = resultados.get(i);
+            Caso caso = resultado.getCaso();
+
+            saida.write("  {");
+            saida.write("\"programa\": " + Json.texto(caminho(caso.getPrograma())));
+            saida.write(", \"entrada\": " + Json.texto(caminho(caso.getEntrada())));
+            saida.write(", \"esperado\": " + Json.texto(caminho(caso.getEsperado())));
+            saida.write(", \"veredito\": " + Json.texto(resultado.getVeredito().name()));
+            saida.write(", \"tempoCompilacaoMs\": " + Json.milissegundos(resultado.getTempoCompilacao()));
+            saida.write(", \"tempoExecucaoMs\": " + Json.milissegundos(resultado.getTempoExecucao()));
+            saida.write(", \"bytesAlocados\": " + ((resultado.getBytesAlocados() >= 0) ? Long.toString(resultado.getBytesAlocados()) : "null"));
+            saida.write(", \"mensagem\": " + Json.texto(resultado.getMensagem()));
+            saida.write((i < resultados.size() - 1) ? "},\n" : "}\n");
+        }
+
+        saida.write("]\n");
+        saida.flush();
+    }
+
+    private static String caminho(File arquivo)
+    {
+        return (arquivo != null) ? arquivo.getPath() : null;
+    }
+
+    /**
+     * Guarda a saída do programa até o limite informado. Ao excedê-lo, deixa
+     * de guardar e avisa uma única vez, para que o programa seja
+     * interrompido. Com limite zero a saída é descartada.
+     */
+    private static final class SaidaLimitada extends OutputStream
+    {
+        private final long limite;
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        private volatile Runnable aoExceder = null;
+        private volatile boolean excedida = false;
+
+        SaidaLimitada(long limite)
+        {
+            this.limite = limite;
+        }
+
+        void setAoExceder(Runnable aoExceder)
+        {
+            this.aoExceder = aoExceder;
+        }
+
+        @Override
+        public void write(int valor)
+        {
+            write(new byte[] { (byte) valor }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] dados, int inicio, int tamanho)
+        {
+            if (limite == 0 || excedida)
+            {
+                return;
+            }
+
+            if (bytes.size() + (long) tamanho > limite)
+            {
+                excedida = true;
+
+                if (aoExceder != null)
+                {
+                    aoExceder.run();
+                }
+
+                return;
+            }
+
+            bytes.write(dados, inicio, tamanho);
+        }
+
+        boolean isExcedida()
+        {
+            return excedida;
+        }
+
+        long getLimite()
+        {
+            return limite;
+        }
+
+        byte[] toByteArray()
+        {
+            return bytes.toByteArray();
+        }
+    }
+
+    private final class Compilacao
+    {
+        private final String algoritmo;
+        private final ProgramaCompilado programaCompilado;
+        private final String erro;
+        private final long tempo;
+        private boolean instanciaUsada = false;
+
+        Compilacao(String algoritmo, ProgramaCompilado programaCompilado, String erro, long tempo)
+        {
+            this.algoritmo = algoritmo;
+            this.programaCompilado = programaCompilado;
+            this.erro = erro;
+            this.tempo = tempo;
+        }
+
+        Programa instanciar() throws Exception
+        {
+            synchronized (this)
+            {
+                if (programaCompilado.podeInstanciarNovamente() || !instanciaUsada)
+                {
+                    instanciaUsada = true;
+                    return programaCompilado.instanciar();
+                }
+            }
+
+            // Só quando as classes compiladas pelo núcleo não puderam ser extraídas
+            return compilador.compilar(algoritmo).instanciar();
+        }
+    }
+
+    public static final class Caso
+    {
+        private final File programa;
+        private final File entrada;
+        private final File esperado;
+
+        public Caso(File programa, File entrada, File esperado)
+        {
+            this.programa = programa;
+            this.entrada = entrada;
+            this.esperado = esperado;
+        }
+
+        public File getPrograma()
+        {
+            return programa;
+        }
+
+        public File getEntrada()
+        {
+            return entrada;
+        }
+
+        public File getEsperado()
+        {
+            return esperado;
+        }
+    }
+
+    public static final class ResultadoCaso
+    {
+        private final Caso caso;
+        private final Veredito veredito;
+        private final long tempoCompilacao;
+        private final long tempoExecucao;
+        private final long bytesAlocados;
+        private final String mensagem;
+
+        public ResultadoCaso(Caso caso, Veredito veredito, long tempoCompilacao, long tempoExecucao, String mensagem)
+        {
+            this(caso, veredito, tempoCompilacao, tempoExecucao, -1, mensagem);
+        }
+
+        public ResultadoCaso(Caso caso, Veredito veredito, long tempoCompilacao, long tempoExecucao, long bytesAlocados, String mensagem)
+        {
+            this.caso = caso;
+            this.veredito = veredito;
+            this.tempoCompilacao = tempoCompilacao;
+            this.tempoExecucao = tempoExecucao;
+            this.bytesAlocados = bytesAlocados;
+            this.mensagem = mensagem;
+        }
+
+        public Caso getCaso()
+        {
+            return caso;
+        }
+
+        public Veredito getVeredito()
+        {
+            return veredito;
+        }
+
+        /**
+         * @return o tempo de compilação em nanossegundos
+         */
+        public long getTempoCompilacao()
+        {
+            return tempoCompilacao;
+        }
+
+        /**
+         * @return o tempo de execução em nanossegundos
+         */
+        public long getTempoExecucao()
+        {
+            return tempoExecucao;
+        }
+
+        /**
+         * @return os bytes alocados pela execução, ou -1 se a medida não
+         * está disponível
+         */
+        public long getBytesAlocados()
+        {
+            return bytesAlocados;
+        }
+
+        public String getMensagem()
+        {
+            return mensagem;
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package br.univali.portugol;
+
+import br.univali.portugol.nucleo.execucao.ResultadoExecucao;
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Executa muitas sessões simultâneas na mesma JVM, cada uma com o seu
+ * programa e a sua própria entrada e saída, no lugar do {@code System.in} e
+ * do {@code System.out} do processo.
+ * <p>
+ * Uma sessão aberta com {@link #abrir} não ocupa nenhuma thread do
+ * hospedeiro: o resultado é concluído pela própria thread do programa, que é
+ * criada pelo núcleo e é uma thread comum. Essa thread fica bloqueada
+ * enquanto o programa aguarda a entrada, então cada sessão ociosa custa uma
+ * thread comum.
+ * <p>
+ * As tarefas enviadas com {@link #executar}, como o atendimento das conexões
+ * do daemon, usam threads virtuais quando a JVM as oferece (Java 21 ou
+ * superior) e um pool de threads comuns caso contrário.
+ *
+ * @author Luiz Fernando Noschang
+ */
+public final class HospedeiroSessoes
+{
+    private static final Logger LOGGER = Logger.getLogger(HospedeiroSessoes.class.getName());
+
+    /**
+     * As sessões são interativas e trocam poucos bytes por vez, então buffers
+     * pequenos bastam e mantêm baixo o custo de cada sessão ociosa.
+     */
+    private static final int CAPACIDADE_BUFFERS = 4096;
+
+    private final ExecutorService executor;
+    private final boolean threadsVirtuais;
+    private final AtomicInteger sessoesAtivas = new AtomicInteger();
+
+    public HospedeiroSessoes(String nome)
+    {
+        ExecutorService executorVirtual = criarExecutorVirtual(nome);
+
+        this.threadsVirtuais = (executorVirtual != null);
+        this.executor = threadsVirtuais ? executorVirtual : Executors.newCachedThreadPool(criarFabricaThreads(nome));
+    }
+
+    /**
+     * Cria um executor que usa uma thread virtual por tarefa, quando a JVM
+     * oferece threads virtuais, ou um pool de threads comuns (daemon) caso
+     * contrário.
+     */
+    public static ExecutorService criarExecutor(String nome)
+    {
+        ExecutorService executorVirtual = criarExecutorVirtual(nome);
+
+        return (executorVirtual != null) ? executorVirtual : Executors.newCachedThreadPool(criarFabricaThreads(nome));
+    }
+
+    public boolean usaThreadsVirtuais()
+    {
+        return threadsVirtuais;
+    }
+
+    public int getSessoesAtivas()
+    {
+        return sessoesAtivas.get();
+    }
+
+    /**
+     * Executa uma tarefa em uma thread própria de sessão.
+     */
+    public void executar(final Runnable tarefa)
+    {
+        sessoesAtivas.incrementAndGet();
+
+        try
+        {
+            executor.execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        tarefa.run();
+                    }
+                    finally
+                    {
+                        sessoesAtivas.decrementAndGet();
+                    }
+                }
+            });
+        }
+        catch (RuntimeException excecao)
+        {
+            sessoesAtivas.decrementAndGet();
+            throw excecao;
+        }
+    }
+
+    /**
+     * Inicia uma sessão que executa o programa com a entrada e a saída
+     * informadas. A saída não é fechada ao fim da sessão.
+     *
+     * @param tempoLimite tempo máximo de execução em milissegundos, ou zero
+     * para não limitar
+     */
+    public Sessao abrir(ProgramaCompilado programaCompilado, InputStream entrada, OutputStream saida, Charset charset,
+        String[] parametros, File diretorioTrabalho, long tempoLimite) throws Exception
+    {
+        ExecucaoPrograma execucao = new ExecucaoPrograma(programaCompilado.instanciar(), entrada, saida, charset, 50, CAPACIDADE_BUFFERS, CAPACIDADE_BUFFERS);
+
+        sessoesAtivas.incrementAndGet();
+
+        try
+        {
+            Future<ResultadoExecucao> resultado = execucao.iniciar(parametros, diretorioTrabalho, tempoLimite, new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    sessoesAtivas.decrementAndGet();
+                }
+            });
+
+            return new Sessao(execucao, resultado);
+        }
+        catch (RuntimeException excecao)
+        {
+            sessoesAtivas.decrementAndGet();
+            throw excecao;
+        }
+    }
+
+    /**
+     * Interrompe as tarefas enviadas com {@link #executar} em andamento.
+     */
+    public void encerrar()
+    {
+        executor.shutdownNow();
+    }
+
+    /**
+     * O console é compilado para o Java 7, então as threads virtuais são
+     * criadas por reflexão.
+     */
+    private static ExecutorService criarExecutorVirtual(String nome)
+    {
+        try
+        {
+            Class<?> classeConstrutor = Class.forName("java.lang.Thread$Builder");
+            Object construtor = Thread.class.getMethod("ofVirtual").invoke(null);
+
+            construtor = classeConstrutor.getMethod("name", String.class, long.class).invoke(construtor, nome + "-", 0L);
+
+            ThreadFactory fabrica = (ThreadFactory) classeConstrutor.getMethod("factory").invoke(construtor);
+
+            return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class).invoke(null, fabrica);
+        }
+        catch (ReflectiveOperationException | RuntimeException excecao)
+        {
+            // Inclui o Java 19 e 20, em que as threads virtuais exigem --enable-preview
+            LOGGER.log(Level.FINE, "Threads virtuais indisponíveis, serão usadas threads comuns", excecao);
+            return null;
+        }
+    }
+
+    private static ThreadFactory criarFabricaThreads(final String nome)
+    {
+        final AtomicInteger contador = new AtomicInteger();
+
+        return new ThreadFactory()
+        {
+            @Override
+            public Thread newThread(Runnable tarefa)
+            {
+                Thread thread = new Thread(tarefa, nome + "-" + contador.getAndIncrement());
+                thread.setDaemon(true);
+
+                return thread;
+            }
+        };
+    }
+
+    public static final class Sessao
+    {
+        private final ExecucaoPrograma execucao;
+        private final Future<ResultadoExecucao> resultado;
+
+        Sessao(ExecucaoPrograma execucao, Future<ResultadoExecucao> resultado)
+        {
+            this.execucao = execucao;
+            this.resultado = resultado;
+        }
+
+        public ExecucaoPrograma getExecucao()
+        {
+            return execucao;
+        }
+
+        /**
+         * @return o resultado da execução, disponível quando o programa
+         * encerra; o resultado é {@code null} se o programa não encerrou nem
+         * depois de interrompido
+         */
+        public Future<ResultadoExecucao> getResultado()
+        {
+            return resultado;
+        }
+
+        public void interromper()
+        {
+            execucao.interromper();
+        }
+    }
+}
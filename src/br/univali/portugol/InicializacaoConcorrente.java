@@ -0,0 +1,257 @@
+package br.univali.portugol;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Etapas da inicialização que não dependem do programa e podem ser feitas
+ * em segundo plano enquanto a thread principal interpreta os parâmetros, lê o
+ * código fonte e compila o programa.
+ * <p>
+ * Nenhuma etapa é obrigatória: quem precisa do resultado de uma delas chama
+ * o mesmo método normalmente e, se a etapa ainda estiver em andamento,
+ * apenas aguarda o seu término em vez de repetir o trabalho. Com um único
+ * processador as etapas apenas disputariam a CPU com a thread principal,
+ * então nada é feito em segundo plano.
+ *
+ * @author Luiz Fernando Noschang
+ */
+public final class InicializacaoConcorrente
+{
+    private static final int TAMANHO_ANTECIPACAO_ENTRADA = 64 * 1024;
+
+    /**
+     * Classes do núcleo usadas para instanciar e executar o programa. Elas
+     * são carregadas enquanto o programa ainda está sendo compilado.
+     */
+    private static final String[] CLASSES_NUCLEO =
+    {
+        "br.univali.portugol.nucleo.Portugol",
+        "br.univali.portugol.nucleo.Programa",
+        "br.univali.portugol.nucleo.Programa$Estado",
+        "br.univali.portugol.nucleo.ErroCompilacao",
+        "br.univali.portugol.nucleo.analise.ResultadoAnalise",
+        "br.univali.portugol.nucleo.asa.TipoDado",
+        "br.univali.portugol.nucleo.execucao.ResultadoExecucao",
+        "br.univali.portugol.nucleo.execucao.ModoEncerramento",
+        "br.univali.portugol.nucleo.mensagens.ErroExecucao"
+    };
+
+    private static final boolean CONCORRENTE = Runtime.getRuntime().availableProcessors() > 1;
+
+    private static ExecutorService executor = null;
+
+    private InicializacaoConcorrente()
+    {
+    }
+
+    /**
+     * Inicia a montagem do classpath de compilação, a preparação do hash
+     * usado pelo cache de compilação e o carregamento das classes do núcleo.
+     * O log não é inicializado aqui porque ele já só é configurado quando
+     * algo é registrado.
+     */
+    public static void iniciar()
+    {
+        if (!CONCORRENTE)
+        {
+            return;
+        }
+
+        getExecutor().execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    // A primeira obtenção de um MessageDigest carrega os provedores
+                    // de segurança, o que leva dezenas de milissegundos
+                    MessageDigest.getInstance("SHA-256");
+                }
+                catch (NoSuchAlgorithmException excecao)
+                {
+                    // O cache de compilação informará o erro
+                }
+
+                ClassLoader carregador = InicializacaoConcorrente.class.getClassLoader();
+
+                for (String classe : CLASSES_NUCLEO)
+                {
+                    try
+                    {
+                        Class.forName(classe, true, carregador);
+                    }
+                    catch (ClassNotFoundException | LinkageError excecao)
+                    {
+                        Logger.getLogger(InicializacaoConcorrente.class.getName()).log(Level.FINE, "Classe do núcleo não encontrada: " + classe, excecao);
+                    }
+                }
+            }
+        });
+
+        getExecutor().execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    CompiladorPrograma.getClassPathParaCompilacao();
+                }
+                catch (IOException excecao)
+                {
+                    // A compilação tentará novamente e informará o erro
+                }
+            }
+        });
+    }
+
+    /**
+     * Abre o arquivo de entrada e começa a ler o seu início em segundo
+     * plano, para que a primeira leitura do programa não espere pelo disco.
+     */
+    public static InputStream anteciparEntrada(File arquivo) throws IOException
+    {
+        return CONCORRENTE ? new EntradaAntecipada(new FileInputStream(arquivo)) : new FileInputStream(arquivo);
+    }
+
+    private static synchronized ExecutorService getExecutor()
+    {
+        if (executor == null)
+        {
+            executor = Executors.newFixedThreadPool(3, new ThreadFactory()
+            {
+                @Override
+                public Thread newThread(Runnable tarefa)
+                {
+                    Thread thread = new Thread(tarefa, "inicializacao");
+                    thread.setDaemon(true);
+
+                    return thread;
+                }
+            });
+        }
+
+        return executor;
+    }
+
+    /**
+     * Entrega primeiro os bytes lidos antecipadamente e depois continua
+     * lendo do arquivo, que já está posicionado logo após eles.
+     */
+    private static final class EntradaAntecipada extends InputStream
+    {
+        private final InputStream arquivo;
+        private final Future<byte[]> antecipacao;
+
+        private byte[] inicio = null;
+        private int posicao = 0;
+
+        EntradaAntecipada(final InputStream arquivo)
+        {
+            this.arquivo = arquivo;
+            this.antecipacao = getExecutor().submit(new Callable<byte[]>()
+            {
+                @Override
+                public byte[] call() throws IOException
+                {
+                    byte[] buffer = new byte[TAMANHO_ANTECIPACAO_ENTRADA];
+                    int total = 0;
+                    int lidos;
+
+                    while (total < buffer.length && (lidos = arquivo.read(buffer, total, buffer.length - total)) > 0)
+                    {
+                        total += lidos;
+                    }
+
+                    byte[] conteudo = new byte[total];
+                    System.arraycopy(buffer, 0, conteudo, 0, total);
+
+                    return conteudo;
+                }
+            });
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            byte[] bytes = new byte[1];
+
+            return (read(bytes, 0, 1) < 0) ? -1 : (bytes[0] & 0xFF);
+        }
+
+        @Override
+        public synchronized int read(byte[] bytes, int deslocamento, int tamanho) throws IOException
+        {
+            if (tamanho == 0)
+            {
+                return 0;
+            }
+
+            aguardarAntecipacao();
+
+            if (posicao < inicio.length)
+            {
+                int quantidade = Math.min(tamanho, inicio.length - posicao);
+                System.arraycopy(inicio, posicao, bytes, deslocamento, quantidade);
+                posicao += quantidade;
+
+                return quantidade;
+            }
+
+            return arquivo.read(bytes, deslocamento, tamanho);
+        }
+
+        @Override
+        public synchronized int available() throws IOException
+        {
+            if (inicio == null)
+            {
+                return 0;
+            }
+
+            return (inicio.length - posicao) + arquivo.available();
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            arquivo.close();
+        }
+
+        private void aguardarAntecipacao() throws IOException
+        {
+            if (inicio != null)
+            {
+                return;
+            }
+
+            try
+            {
+                inicio = antecipacao.get();
+            }
+            catch (InterruptedException excecao)
+            {
+                Thread.currentThread().interrupt();
+                throw new IOException("A leitura da entrada foi interrompida", excecao);
+            }
+            catch (ExecutionException excecao)
+            {
+                throw (excecao.getCause() instanceof IOException) ? (IOException) excecao.getCause() : new IOException(excecao.getCause());
+            }
+        }
+    }
+}
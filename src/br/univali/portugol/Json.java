@@ -0,0 +1,71 @@
+package br.univali.portugol;
+
+import java.util.Locale;
+
+/**
+ * Funções mínimas para escrever relatórios em JSON sem depender de
+ * bibliotecas externas.
+ *
+ * @author Luiz Fernando Noschang
+ */
+final class Json
+{
+    private Json()
+    {
+    }
+
+    static String texto(String valor)
+    {
+        if (valor == null)
+        {
+            return "null";
+        }
+
+        StringBuilder texto = new StringBuilder(valor.length() + 2);
+        texto.append('"');
+
+        for (int i = 0; i < valor.length(); i++)
+        {
+            char caracter = valor.charAt(i);
+
+            switch (caracter)
+            {
+                case '"':
+                    texto.append("\\\"");
+                    break;
+                case '\\':
+                    texto.append("\\\\");
+                    break;
+                case '\n':
+                    texto.append("\\n");
+                    break;
+                case '\r':
+                    texto.append("\\r");
+                    break;
+                case '\t':
+                    texto.append("\\t");
+                    break;
+                default:
+                    if (caracter < 0x20)
+                    {
+                        texto.append(String.format("\\u%04x", (int) caracter));
+                    }
+                    else
+                    {
+                        texto.append(caracter);
+                    }
+            }
+        }
+
+        return texto.append('"').toString();
+    }
+
+    /**
+     * Converte um intervalo em nanossegundos para milissegundos com três
+     * casas decimais.
+     */
+    static String milissegundos(long nanossegundos)
+    {
+        return String.format(Locale.ROOT, "%.3f", nanossegundos / 1e6);
+    }
+}
@@ -0,0 +1,239 @@
+package br.univali.portugol;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Lê o código fonte de um programa Portugol em uma única passagem.
+ * <p>
+ * O arquivo é lido de uma vez para um buffer, ou mapeado em memória quando é
+ * grande. A codificação é detectada pelo conteúdo: arquivos com BOM ou que
+ * são UTF-8 válido são lidos como UTF-8, os demais como ISO-8859-1, que é a
+ * codificação usada pelo Portugol Studio. Durante a decodificação as quebras
+ * de linha são normalizadas para '\n' e a marca de cursor deixada pelo
+ * editor é removida, de modo que o texto é copiado apenas para a
+ * {@code String} final.
+ *
+ * @author Luiz Fernando Noschang
+ */
+public final class LeitorCodigoFonte
+{
+    private static final long TAMANHO_MINIMO_MAPEAMENTO = 1024 * 1024;
+    private static final long TAMANHO_MAXIMO = Integer.MAX_VALUE - 1;
+    private static final char[] MARCA_CURSOR = "/*${cursor}*/".toCharArray();
+
+    private static enum Conteudo { ASCII, UTF8, INVALIDO };
+
+    private LeitorCodigoFonte()
+    {
+    }
+
+    public static String ler(File arquivo) throws IOException
+    {
+        try (FileChannel canal = FileChannel.open(arquivo.toPath(), StandardOpenOption.READ))
+        {
+            long tamanho = canal.size();
+
+            if (tamanho > TAMANHO_MAXIMO)
+            {
+                throw new IOException(String.format("O arquivo '%s' é grande demais", arquivo.getPath()));
+            }
+
+            ByteBuffer bytes;
+
+            if (tamanho >= TAMANHO_MINIMO_MAPEAMENTO)
+            {
+                bytes = canal.map(FileChannel.MapMode.READ_ONLY, 0, tamanho);
+            }
+            else
+            {
+                bytes = ByteBuffer.allocate((int) tamanho);
+
+                while (bytes.hasRemaining() && canal.read(bytes) >= 0)
+                {
+                }
+
+                bytes.flip();
+            }
+
+            return decodificar(bytes);
+        }
+    }
+
+    /**
+     * Decodifica o conteúdo do buffer, entre a posição e o limite atuais.
+     */
+    static String decodificar(ByteBuffer bytes)
+    {
+        int inicio = bytes.position();
+        int fim = bytes.limit();
+        boolean bom = fim - inicio >= 3 && bytes.get(inicio) == (byte) 0xEF && bytes.get(inicio + 1) == (byte) 0xBB && bytes.get(inicio + 2) == (byte) 0xBF;
+
+        if (bom)
+        {
+            inicio += 3;
+        }
+
+        Conteudo conteudo = analisar(bytes, inicio, fim);
+        boolean utf8 = (conteudo == Conteudo.UTF8) || (bom && conteudo == Conteudo.ASCII);
+
+        // Nenhum caracter decodificado ocupa mais posições do que bytes. A
+        // posição extra é para a quebra de linha final.
+        char[] texto = new char[fim - inicio + 1];
+        int tamanho = 0;
+        int inicioBusca = 0;
+        boolean terminaComQuebra = true;
+        int i = inicio;
+
+        while (i < fim)
+        {
+            int b = bytes.get(i++) & 0xFF;
+            char caracter;
+
+            if (b == '\r')
+            {
+                if (i < fim && bytes.get(i) == '\n')
+                {
+                    i++;
+                }
+
+                caracter = '\n';
+            }
+            else if (b < 0x80 || !utf8)
+            {
+                caracter = (char) b;
+            }
+            else if (b < 0xE0)
+            {
+                caracter = (char) (((b & 0x1F) << 6) | (bytes.get(i++) & 0x3F));
+            }
+            else if (b < 0xF0)
+            {
+                caracter = (char) (((b & 0x0F) << 12) | ((bytes.get(i++) & 0x3F) << 6) | (bytes.get(i++) & 0x3F));
+            }
+            else
+            {
+                int codigo = ((b & 0x07) << 18) | ((bytes.get(i++) & 0x3F) << 12) | ((bytes.get(i++) & 0x3F) << 6) | (bytes.get(i++) & 0x3F);
+
+                texto[tamanho++] = Character.highSurrogate(codigo);
+                caracter = Character.lowSurrogate(codigo);
+            }
+
+            texto[tamanho++] = caracter;
+            terminaComQuebra = (caracter == '\n');
+
+            if (caracter == '/' && terminaComMarcaCursor(texto, tamanho, inicioBusca))
+            {
+                tamanho -= MARCA_CURSOR.length;
+                inicioBusca = tamanho;
+            }
+        }
+
+        // Toda linha termina com '\n', inclusive a última
+        if (!terminaComQuebra)
+        {
+            texto[tamanho++] = '\n';
+        }
+
+        return new String(texto, 0, tamanho);
+    }
+
+    /**
+     * A marca só é procurada depois do ponto da última remoção, para que o
+     * texto ao redor de uma marca removida não forme uma nova marca.
+     */
+    private static boolean terminaComMarcaCursor(char[] texto, int tamanho, int inicioBusca)
+    {
+        int inicio = tamanho - MARCA_CURSOR.length;
+
+        if (inicio < inicioBusca)
+        {
+            return false;
+        }
+
+        for (int i = 0; i < MARCA_CURSOR.length; i++)
+        {
+            if (texto[inicio + i] != MARCA_CURSOR[i])
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Verifica se os bytes são ASCII puro, UTF-8 bem formado com algum
+     * caracter não ASCII ou nenhum dos dois.
+     */
+    private static Conteudo analisar(ByteBuffer bytes, int inicio, int fim)
+    {
+        boolean naoAscii = false;
+        int i = inicio;
+
+        while (i < fim)
+        {
+            int b = bytes.get(i++) & 0xFF;
+
+            if (b < 0x80)
+            {
+                continue;
+            }
+
+            int continuacoes;
+            int minimo = 0x80;
+            int maximo = 0xBF;
+
+            if (b >= 0xC2 && b <= 0xDF)
+            {
+                continuacoes = 1;
+            }
+            else if (b >= 0xE0 && b <= 0xEF)
+            {
+                continuacoes = 2;
+                minimo = (b == 0xE0) ? 0xA0 : 0x80;
+                maximo = (b == 0xED) ? 0x9F : 0xBF;
+            }
+            else if (b >= 0xF0 && b <= 0xF4)
+            {
+                continuacoes = 3;
+                minimo = (b == 0xF0) ? 0x90 : 0x80;
+                maximo = (b == 0xF4) ? 0x8F : 0xBF;
+            }
+            else
+            {
+                return Conteudo.INVALIDO;
+            }
+
+            if (fim - i < continuacoes)
+            {
+                return Conteudo.INVALIDO;
+            }
+
+            // Só o primeiro byte de continuação tem faixa restrita
+            int segundo = bytes.get(i++) & 0xFF;
+
+            if (segundo < minimo || segundo > maximo)
+            {
+                return Conteudo.INVALIDO;
+            }
+
+            for (int j = 1; j < continuacoes; j++)
+            {
+                int continuacao = bytes.get(i++) & 0xFF;
+
+                if (continuacao < 0x80 || continuacao > 0xBF)
+                {
+                    return Conteudo.INVALIDO;
+                }
+            }
+
+            naoAscii = true;
+        }
+
+        return naoAscii ? Conteudo.UTF8 : Conteudo.ASCII;
+    }
+}
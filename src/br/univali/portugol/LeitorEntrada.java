@@ -0,0 +1,431 @@
+package br.univali.portugol;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * Leitor de valores separados por espaços em branco que trabalha diretamente
+ * sobre os bytes da entrada, sem expressões regulares.
+ * <p>
+ * Os tokens e os erros produzidos são os mesmos do {@link java.util.Scanner}
+ * com o delimitador padrão seguido de {@code Integer.parseInt} ou
+ * {@code Double.parseDouble}: os casos que não são tratados pelos caminhos
+ * rápidos são delegados a esses métodos.
+ *
+ * @author Luiz Fernando Noschang
+ */
+public final class LeitorEntrada
+{
+    private static final double[] POTENCIAS_DEZ = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+        1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private static final long MAXIMO_MANTISSA_EXATA = 1L << 53;
+
+    private final InputStream entrada;
+    private final Charset charset;
+    private final byte[] buffer;
+    private final ArrayDeque<String> tokensPendentes = new ArrayDeque<>();
+
+    private int posicao = 0;
+    private int limite = 0;
+    private boolean fimEntrada = false;
+
+    private byte[] token = new byte[64];
+    private int tamanhoToken = 0;
+    private boolean tokenAscii = true;
+    private String tokenTexto = null;
+
+    public LeitorEntrada(InputStream entrada, Charset charset)
+    {
+        this(entrada, charset, 64 * 1024);
+    }
+
+    public LeitorEntrada(InputStream entrada, Charset charset, int capacidade)
+    {
+        if (!suporta(charset))
+        {
+            throw new IllegalArgumentException(String.format("O charset '%s' não é compatível com ASCII", charset.name()));
+        }
+
+        this.entrada = entrada;
+        this.charset = charset;
+        this.buffer = new byte[Math.max(capacidade, 16)];
+    }
+
+    /**
+     * Lê o restante da linha atual, sem a quebra de linha, assim como o
+     * {@code Scanner.nextLine}.
+     *
+     * @return a linha, ou {@code null} se a entrada terminou
+     */
+    public String proximaLinha()
+    {
+        tokensPendentes.clear();
+        tamanhoToken = 0;
+
+        int b = lerByte();
+
+        if (b < 0)
+        {
+            return null;
+        }
+
+        while (b >= 0 && b != '\n')
+        {
+            if (tamanhoToken == token.length)
+            {
+                token = Arrays.copyOf(token, token.length * 2);
+            }
+
+            token[tamanhoToken++] = (byte) b;
+            b = lerByte();
+        }
+
+        if (tamanhoToken > 0 && token[tamanhoToken - 1] == '\r')
+        {
+            tamanhoToken--;
+        }
+
+        tokenTexto = null;
+
+        return new String(token, 0, tamanhoToken, charset);
+    }
+
+    /**
+     * Descarta o que restou da linha atual, por exemplo valores digitados a
+     * mais, a não ser que a leitura já esteja no início de uma linha.
+     */
+    public void descartarRestoLinha()
+    {
+        tokensPendentes.clear();
+
+        if (posicao > 0 && buffer[posicao - 1] != '\n')
+        {
+            proximaLinha();
+        }
+    }
+
+    public String proximoTexto()
+    {
+        lerToken();
+
+        return textoToken();
+    }
+
+    public char proximoCaracter()
+    {
+        lerToken();
+
+        if (tokenTexto == null && tokenAscii)
+        {
+            return (char) token[0];
+        }
+
+        return textoToken().charAt(0);
+    }
+
+    public int proximoInteiro()
+    {
+        lerToken();
+
+        if (tokenTexto == null && tokenAscii && tamanhoToken <= 10)
+        {
+            int inicio = 0;
+            boolean negativo = false;
+
+            if (token[0] == '-' || token[0] == '+')
+            {
+                negativo = (token[0] == '-');
+                inicio = 1;
+            }
+
+            if (inicio < tamanhoToken)
+            {
+                long valor = 0;
+                int i = inicio;
+
+                for (; i < tamanhoToken; i++)
+                {
+                    int digito = token[i] - '0';
+
+                    if (digito < 0 || digito > 9)
+                    {
+                        break;
+                    }
+
+                    valor = valor * 10 + digito;
+                }
+
+                if (i == tamanhoToken && valor <= (negativo ? 2147483648L : 2147483647L))
+                {
+                    return (int) (negativo ? -valor : valor);
+                }
+            }
+        }
+
+        return Integer.parseInt(textoToken());
+    }
+
+    public double proximoReal()
+    {
+        lerToken();
+
+        if (tokenTexto == null && tokenAscii)
+        {
+            double valor = converterRealSimples();
+
+            if (!Double.isNaN(valor))
+            {
+                return valor;
+            }
+        }
+
+        return Double.parseDouble(textoToken());
+    }
+
+    /**
+     * Caminho rápido para reais no formato [+-]digitos[.digitos] com até 15
+     * dígitos significativos: a mantissa e a potência de dez são exatas em
+     * double, então uma única divisão dá o mesmo resultado arredondado que o
+     * Double.parseDouble. Retorna NaN quando o token não se encaixa nesse caso.
+     */
+    private double converterRealSimples()
+    {
+        int i = 0;
+        boolean negativo = false;
+
+        if (token[0] == '-' || token[0] == '+')
+        {
+            negativo = (token[0] == '-');
+            i = 1;
+        }
+
+        long mantissa = 0;
+        int digitosLidos = 0;
+        int digitos = 0;
+        int casasDecimais = 0;
+        boolean ponto = false;
+
+        for (; i < tamanhoToken; i++)
+        {
+            byte b = token[i];
+
+            if (b == '.' && !ponto)
+            {
+                ponto = true;
+            }
+            else if (b >= '0' && b <= '9')
+            {
+                digitosLidos++;
+
+                if (mantissa > 0 || b != '0')
+                {
+                    digitos++;
+                }
+
+                if (digitos > 15)
+                {
+                    return Double.NaN;
+                }
+
+                mantissa = mantissa * 10 + (b - '0');
+
+                if (ponto)
+                {
+                    casasDecimais++;
+                }
+            }
+            else
+            {
+                return Double.NaN;
+            }
+        }
+
+        if (digitosLidos == 0 || casasDecimais >= POTENCIAS_DEZ.length || mantissa >= MAXIMO_MANTISSA_EXATA)
+        {
+            return Double.NaN;
+        }
+
+        double valor = mantissa / POTENCIAS_DEZ[casasDecimais];
+
+        return negativo ? -valor : valor;
+    }
+
+    private String textoToken()
+    {
+        if (tokenTexto == null)
+        {
+            tokenTexto = new String(token, 0, tamanhoToken, charset);
+        }
+
+        return tokenTexto;
+    }
+
+    private void lerToken()
+    {
+        if (!tokensPendentes.isEmpty())
+        {
+            tokenTexto = tokensPendentes.poll();
+            tokenAscii = false;
+            return;
+        }
+
+        tamanhoToken = 0;
+        tokenAscii = true;
+        tokenTexto = null;
+
+        int b;
+
+        do
+        {
+            b = lerByte();
+
+            if (b < 0)
+            {
+                throw new NoSuchElementException();
+            }
+        }
+        while (espacoAscii(b));
+
+        while (b >= 0 && !espacoAscii(b))
+        {
+            if (tamanhoToken == token.length)
+            {
+                token = Arrays.copyOf(token, token.length * 2);
+            }
+
+            token[tamanhoToken++] = (byte) b;
+
+            if (b >= 0x80)
+            {
+                tokenAscii = false;
+            }
+
+            b = lerByte();
+        }
+
+        if (!tokenAscii)
+        {
+            separarEspacosUnicode();
+        }
+    }
+
+    /**
+     * Tokens com bytes fora do ASCII podem conter espaços Unicode, que também
+     * são delimitadores para o Scanner.
+     */
+    private void separarEspacosUnicode()
+    {
+        String texto = new String(token, 0, tamanhoToken, charset);
+        int inicio = -1;
+        String primeiro = null;
+
+        for (int i = 0; i <= texto.length(); i++)
+        {
+            boolean espaco = (i == texto.length()) || Character.isWhitespace(texto.charAt(i));
+
+            if (!espaco && inicio < 0)
+            {
+                inicio = i;
+            }
+            else if (espaco && inicio >= 0)
+            {
+                String parte = texto.substring(inicio, i);
+
+                if (primeiro == null)
+                {
+                    primeiro = parte;
+                }
+                else
+                {
+                    tokensPendentes.add(parte);
+                }
+
+                inicio = -1;
+            }
+        }
+
+        if (primeiro == null)
+        {
+            lerToken();
+            return;
+        }
+
+        tokenTexto = primeiro;
+        tokenAscii = false;
+    }
+
+    private int lerByte()
+    {
+        if (posicao == limite)
+        {
+            if (fimEntrada)
+            {
+                return -1;
+            }
+
+            try
+            {
+                limite = entrada.read(buffer, 0, buffer.length);
+            }
+            catch (InterruptedIOException excecao)
+            {
+                // Só a leitura atual é cancelada: a entrada continua disponível
+                // para quem usar o leitor depois
+                limite = 0;
+                return -1;
+            }
+            catch (IOException excecao)
+            {
+                limite = -1;
+            }
+
+            posicao = 0;
+
+            if (limite <= 0)
+            {
+                limite = 0;
+                fimEntrada = true;
+                return -1;
+            }
+        }
+
+        return buffer[posicao++] & 0xFF;
+    }
+
+    private static boolean espacoAscii(int b)
+    {
+        return b == ' ' || (b >= 0x09 && b <= 0x0D) || (b >= 0x1C && b <= 0x1F);
+    }
+
+    /**
+     * Os delimitadores são procurados byte a byte, o que só é válido para
+     * charsets em que os caracteres ASCII são codificados em um único byte.
+     * A saída usa o mesmo teste para escrever textos ASCII sem codificá-los.
+     */
+    public static boolean suporta(Charset charset)
+    {
+        if (!charset.canEncode())
+        {
+            return false;
+        }
+
+        byte[] ascii = new byte[0x80];
+        char[] caracteres = new char[0x80];
+
+        for (int i = 0; i < ascii.length; i++)
+        {
+            ascii[i] = (byte) i;
+            caracteres[i] = (char) i;
+        }
+
+        return Arrays.equals(ascii, new String(caracteres).getBytes(charset));
+    }
+}
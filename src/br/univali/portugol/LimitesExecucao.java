@@ -0,0 +1,67 @@
+package br.univali.portugol;
+
+/**
+ * Limites de recursos impostos a um programa. Um limite igual a zero indica
+ * que o recurso não é limitado.
+ *
+ * @author Luiz Fernando Noschang
+ */
+public final class LimitesExecucao
+{
+    private final long tempoCpu;
+    private final long tempoTotal;
+    private final long tamanhoSaida;
+    private final long leituras;
+    private final long alocacao;
+
+    /**
+     * @param tempoCpu tempo de CPU da thread do programa, em milissegundos
+     * @param tempoTotal tempo de relógio desde o início da execução, em
+     * milissegundos
+     * @param tamanhoSaida bytes escritos pelo programa, já codificados no
+     * charset da saída
+     * @param leituras quantidade de valores lidos da entrada
+     * @param alocacao bytes alocados pela thread do programa
+     */
+    public LimitesExecucao(long tempoCpu, long tempoTotal, long tamanhoSaida, long leituras, long alocacao)
+    {
+        this.tempoCpu = Math.max(0, tempoCpu);
+        this.tempoTotal = Math.max(0, tempoTotal);
+        this.tamanhoSaida = Math.max(0, tamanhoSaida);
+        this.leituras = Math.max(0, leituras);
+        this.alocacao = Math.max(0, alocacao);
+    }
+
+    public long getTempoCpu()
+    {
+        return tempoCpu;
+    }
+
+    public long getTempoTotal()
+    {
+        return tempoTotal;
+    }
+
+    public long getTamanhoSaida()
+    {
+        return tamanhoSaida;
+    }
+
+    public long getLeituras()
+    {
+        return leituras;
+    }
+
+    public long getAlocacao()
+    {
+        return alocacao;
+    }
+
+    /**
+     * @return {@code true} se ao menos um recurso é limitado
+     */
+    public boolean definidos()
+    {
+        return tempoCpu > 0 || tempoTotal > 0 || tamanhoSaida > 0 || leituras > 0 || alocacao > 0;
+    }
+}
@@ -0,0 +1,178 @@
+package br.univali.portugol;
+
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.ThreadMXBean;
+import java.util.Locale;
+
+/**
+ * Mede o uso de memória de uma execução: os bytes alocados pela thread do
+ * programa, o pico de uso do heap e as coletas de lixo ocorridas.
+ * <p>
+ * O pico do heap é a soma dos picos de cada área do heap, que podem ter
+ * ocorrido em momentos diferentes, e portanto é um limite superior. O pico e
+ * as coletas são da JVM inteira e só descrevem o programa quando ele é o
+ * único em execução.
+ *
+ * @author Luiz Fernando Noschang
+ */
+public final class MedicaoMemoria
+{
+    private volatile Thread thread = null;
+    private long alocadoInicial = 0;
+    private long coletasIniciais = 0;
+    private long tempoColetaInicial = 0;
+
+    private long alocado = -1;
+    private long picoHeap = 0;
+    private long coletas = 0;
+    private long tempoColeta = 0;
+
+    /**
+     * @return os bytes alocados pela thread desde a sua criação, ou -1 se a
+     * JVM não oferece essa medida
+     */
+    public static long bytesAlocados(Thread thread)
+    {
+        try
+        {
+            ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+            if (threads instanceof com.sun.management.ThreadMXBean)
+            {
+                com.sun.management.ThreadMXBean threadsHotSpot = (com.sun.management.ThreadMXBean) threads;
+
+                if (threadsHotSpot.isThreadAllocatedMemorySupported() && threadsHotSpot.isThreadAllocatedMemoryEnabled())
+                {
+                    return threadsHotSpot.getThreadAllocatedBytes(thread.getId());
+                }
+            }
+        }
+        catch (LinkageError erro)
+        {
+            // JVM sem a extensão com.sun.management
+        }
+
+        return -1;
+    }
+
+    /**
+     * Deve ser chamado imediatamente antes de iniciar a execução.
+     */
+    public void iniciar()
+    {
+        for (MemoryPoolMXBean area : ManagementFactory.getMemoryPoolMXBeans())
+        {
+            if (area.getType() == MemoryType.HEAP)
+            {
+                area.resetPeakUsage();
+            }
+        }
+
+        coletasIniciais = contarColetas();
+        tempoColetaInicial = somarTempoColeta();
+    }
+
+    /**
+     * Deve ser chamado pela própria thread do programa.
+     */
+    public void execucaoIniciada()
+    {
+        thread = Thread.currentThread();
+        alocadoInicial = bytesAlocados(thread);
+    }
+
+    /**
+     * Deve ser chamado enquanto a thread do programa ainda está ativa.
+     */
+    public void concluir()
+    {
+        if (thread != null && alocadoInicial >= 0)
+        {
+            long alocadoFinal = bytesAlocados(thread);
+            alocado = (alocadoFinal >= 0) ? alocadoFinal - alocadoInicial : -1;
+        }
+
+        picoHeap = 0;
+
+        for (MemoryPoolMXBean area : ManagementFactory.getMemoryPoolMXBeans())
+        {
+            if (area.getType() == MemoryType.HEAP && area.getPeakUsage() != null)
+            {
+                picoHeap += area.getPeakUsage().getUsed();
+            }
+        }
+
+        coletas = contarColetas() - coletasIniciais;
+        tempoColeta = somarTempoColeta() - tempoColetaInicial;
+    }
+
+    /**
+     * @return os bytes alocados pela thread do programa, ou -1 se a medida
+     * não está disponível
+     */
+    public long getBytesAlocados()
+    {
+        return alocado;
+    }
+
+    public long getPicoHeap()
+    {
+        return picoHeap;
+    }
+
+    public long getColetas()
+    {
+        return coletas;
+    }
+
+    /**
+     * @return o tempo gasto em coletas de lixo, em milissegundos
+     */
+    public long getTempoColeta()
+    {
+        return tempoColeta;
+    }
+
+    public void escreverRelatorio(PrintStream saida)
+    {
+        saida.println();
+        saida.println("Memória");
+        saida.println("  Alocado pela execução   " + ((alocado >= 0) ? megabytes(alocado) + " MB" : "indisponível"));
+        saida.println("  Pico do heap            " + megabytes(picoHeap) + " MB");
+        saida.println("  Coletas de lixo         " + coletas + " (" + tempoColeta + " ms)");
+        saida.flush();
+    }
+
+    private static String megabytes(long bytes)
+    {
+        return String.format(Locale.ROOT, "%.1f", bytes / (1024.0 * 1024.0));
+    }
+
+    private static long contarColetas()
+    {
+        long total = 0;
+
+        for (GarbageCollectorMXBean coletor : ManagementFactory.getGarbageCollectorMXBeans())
+        {
+            total += Math.max(0, coletor.getCollectionCount());
+        }
+
+        return total;
+    }
+
+    private static long somarTempoColeta()
+    {
+        long total = 0;
+
+        for (GarbageCollectorMXBean coletor : ManagementFactory.getGarbageCollectorMXBeans())
+        {
+            total += Math.max(0, coletor.getCollectionTime());
+        }
+
+        return total;
+    }
+}
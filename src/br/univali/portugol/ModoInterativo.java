@@ -0,0 +1,407 @@
+package br.univali.portugol;
+
+import br.univali.portugol.nucleo.ErroCompilacao;
+import br.univali.portugol.nucleo.execucao.ModoEncerramento;
+import br.univali.portugol.nucleo.execucao.ResultadoExecucao;
+import br.univali.portugol.nucleo.mensagens.ErroAnalise;
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Lê trechos de código Portugol da entrada padrão e executa cada um assim
+ * que é digitado, sem precisar criar um arquivo.
+ * <p>
+ * Os comandos são inseridos na função {@code inicio} de um programa. As
+ * funções e as inclusões de bibliotecas digitadas são mantidas e ficam
+ * disponíveis para os trechos seguintes; uma função com o mesmo nome de uma
+ * anterior a substitui. Um trecho que começa com {@code programa} é
+ * executado como está. Um trecho continua nas linhas seguintes enquanto
+ * houver chaves abertas.
+ * <p>
+ * O compilador é aquecido em segundo plano ao iniciar e permanece carregado,
+ * de modo que após os primeiros trechos só resta o custo da compilação do
+ * próprio trecho. A entrada padrão é compartilhada entre o modo interativo e
+ * os programas, que leem os valores digitados após o trecho.
+ *
+ * @author Luiz Fernando Noschang
+ */
+public final class ModoInterativo
+{
+    private static final int TRECHOS_AQUECIMENTO = 10;
+    private static final String PROMPT = "portugol> ";
+    private static final String PROMPT_CONTINUACAO = "      ... ";
+    private static final Pattern LINHA_AVISO = Pattern.compile("\\. Linha: (\\d+), Coluna: ");
+    private static final Pattern NOME_FUNCAO = Pattern.compile("^funcao\\s+(?:[a-z]+(?:\\s*\\[\\s*\\])*\\s+)?([A-Za-z_][A-Za-z0-9_]*)\\s*\\(");
+
+    private final CompiladorPrograma compilador;
+    private final String[] parametros;
+    private final File diretorioTrabalho;
+    private final Charset charset;
+    private final LeitorEntrada leitor;
+    private final PrintStream saida = System.out;
+    private final PrintStream erros = System.err;
+
+    private final List<String> inclusoes = new ArrayList<>();
+    private final Map<String, String> funcoes = new LinkedHashMap<>();
+
+    public ModoInterativo(CompiladorPrograma compilador, String[] parametros)
+    {
+        this.compilador = compilador;
+        this.parametros = parametros;
+        this.diretorioTrabalho = new File(".").getAbsoluteFile();
+        this.charset = LeitorEntrada.suporta(Charset.defaultCharset()) ? Charset.defaultCharset() : Charset.forName("UTF-8");
+        this.leitor = new LeitorEntrada(System.in, charset);
+    }
+
+    /**
+     * Executa os trechos digitados até o fim da entrada ou o comando
+     * {@code :sair}.
+     */
+    public void executar() throws InterruptedException
+    {
+        aquecer();
+
+        saida.println("Portugol interativo. Digite :sair para encerrar ou :limpar para esquecer as funções definidas.");
+
+        String trecho;
+
+        while ((trecho = lerTrecho()) != null)
+        {
+            String comando = trecho.trim();
+
+            if (comando.isEmpty())
+            {
+                continue;
+            }
+
+            if (comando.equals(":sair"))
+            {
+                return;
+            }
+
+            if (comando.equals(":limpar"))
+            {
+                inclusoes.clear();
+                funcoes.clear();
+                continue;
+            }
+
+            processar(comando);
+        }
+    }
+
+    private String lerTrecho()
+    {
+        saida.print(PROMPT);
+        saida.flush();
+
+        String linha = leitor.proximaLinha();
+
+        if (linha == null)
+        {
+            return null;
+        }
+
+        StringBuilder trecho = new StringBuilder(linha);
+        int chaves = contarChaves(linha);
+
+        while (chaves > 0)
+        {
+            saida.print(PROMPT_CONTINUACAO);
+            saida.flush();
+
+            linha = leitor.proximaLinha();
+
+            if (linha == null)
+            {
+                break;
+            }
+
+            trecho.append('\n').append(linha);
+            chaves += contarChaves(linha);
+        }
+
+        return trecho.toString();
+    }
+
+    /**
+     * @return a quantidade de chaves abertas menos a de fechadas, ignorando
+     * as que estão em textos e caracteres
+     */
+    private static int contarChaves(String linha)
+    {
+        int chaves = 0;
+        char delimitador = 0;
+
+        for (int i = 0; i < linha.length(); i++)
+        {
+            char caracter = linha.charAt(i);
+
+            if (delimitador != 0)
+            {
+                if (caracter == '\\')
+                {
+                    i++;
+                }
+                else if (caracter == delimitador)
+                {
+                    delimitador = 0;
+                }
+            }
+            else if (caracter == '"' || caracter == '\'')
+            {
+                delimitador = caracter;
+            }
+            else if (caracter == '/' && i + 1 < linha.length() && linha.charAt(i + 1) == '/')
+            {
+                break;
+            }
+            else if (caracter == '{')
+            {
+                chaves++;
+            }
+            else if (caracter == '}')
+            {
+                chaves--;
+            }
+        }
+
+        return chaves;
+    }
+
+    private void processar(String trecho) throws InterruptedException
+    {
+        if (trecho.startsWith("programa"))
+        {
+            compilarEExecutar(trecho, 0);
+            return;
+        }
+
+        if (trecho.startsWith("inclua "))
+        {
+            inclusoes.add(trecho);
+
+            if (compilar(montarPrograma(""), 0) == null)
+            {
+                inclusoes.remove(inclusoes.size() - 1);
+            }
+
+            return;
+        }
+
+        Matcher nomeFuncao = NOME_FUNCAO.matcher(trecho);
+
+        if (nomeFuncao.find())
+        {
+            String nome = nomeFuncao.group(1);
+            String anterior = funcoes.remove(nome);
+
+            // A nova função fica por último, logo antes de inicio
+            int deslocamento = contarLinhas(montarDeclaracoes());
+            funcoes.put(nome, trecho);
+
+            if (compilar(montarPrograma(""), deslocamento) == null)
+            {
+                funcoes.remove(nome);
+
+                if (anterior != null)
+                {
+                    funcoes.put(nome, anterior);
+                }
+            }
+
+            return;
+        }
+
+        compilarEExecutar(montarPrograma(trecho), contarLinhas(montarDeclaracoes()) + 2);
+    }
+
+    private String montarPrograma(String comandos)
+    {
+        return montarDeclaracoes() + "funcao inicio()\n{\n" + comandos + "\n}\n}\n";
+    }
+
+    /**
+     * @return o início do programa, com as inclusões e as funções mantidas
+     */
+    private String montarDeclaracoes()
+    {
+        StringBuilder declaracoes = new StringBuilder("programa\n{\n");
+
+        for (String inclusao : inclusoes)
+        {
+            declaracoes.append(inclusao).append('\n');
+        }
+
+        for (String funcao : funcoes.values())
+        {
+            declaracoes.append(funcao).append('\n');
+        }
+
+        return declaracoes.toString();
+    }
+
+    private static int contarLinhas(String texto)
+    {
+        int linhas = 0;
+
+        for (int i = 0; i < texto.length(); i++)
+        {
+            if (texto.charAt(i) == '\n')
+            {
+                linhas++;
+            }
+        }
+
+        return linhas;
+    }
+
+    /**
+     * @return o programa compilado, ou {@code null} se ele contém erros
+     */
+    private ProgramaCompilado compilarEExecutar(String programa, int deslocamento) throws InterruptedException
+    {
+        ProgramaCompilado programaCompilado = compilar(programa, deslocamento);
+
+        if (programaCompilado != null)
+        {
+            executar(programaCompilado, deslocamento);
+        }
+
+        return programaCompilado;
+    }
+
+    private ProgramaCompilado compilar(String programa, int deslocamento)
+    {
+        try
+        {
+            ProgramaCompilado programaCompilado = compilador.compilar(programa);
+
+            exibirAvisos(programaCompilado.getAvisos(), deslocamento);
+
+            return programaCompilado;
+        }
+        catch (ErroCompilacao erroCompilacao)
+        {
+            exibirAvisos(CompiladorPrograma.formatarAvisos(erroCompilacao.getResultadoAnalise()), deslocamento);
+
+            for (ErroAnalise erro : erroCompilacao.getResultadoAnalise().getErros())
+            {
+                erros.println(CompiladorPrograma.formatarErro(erro, deslocamentoPara(erro.getLinha(), deslocamento)));
+            }
+        }
+        catch (Exception excecao)
+        {
+            erros.println("Não foi possível compilar o trecho: " + excecao.getMessage());
+        }
+
+        erros.flush();
+
+        return null;
+    }
+
+    /**
+     * Os avisos chegam já formatados, inclusive os que vêm do cache de
+     * compilação, então a linha é corrigida no texto.
+     */
+    private void exibirAvisos(List<String> avisos, int deslocamento)
+    {
+        for (String aviso : avisos)
+        {
+            Matcher linha = LINHA_AVISO.matcher(aviso);
+
+            if (linha.find())
+            {
+                int numero = Integer.parseInt(linha.group(1));
+
+                aviso = aviso.substring(0, linha.start(1)) + (numero - deslocamentoPara(numero, deslocamento)) + aviso.substring(linha.end(1));
+            }
+
+            erros.println(aviso);
+        }
+
+        erros.flush();
+    }
+
+    /**
+     * Mensagens sobre o código mantido de trechos anteriores ficam com a
+     * linha do programa completo.
+     */
+    private static int deslocamentoPara(int linha, int deslocamento)
+    {
+        return (linha > deslocamento) ? deslocamento : 0;
+    }
+
+    private void executar(ProgramaCompilado programaCompilado, int deslocamento) throws InterruptedException
+    {
+        ResultadoExecucao resultado;
+
+        try
+        {
+            ExecucaoPrograma execucao = new ExecucaoPrograma(programaCompilado.instanciar(), leitor, saida, charset, 50, 8192);
+            resultado = execucao.executar(parametros, diretorioTrabalho, 0);
+        }
+        catch (InterruptedException excecao)
+        {
+            throw excecao;
+        }
+        catch (Exception excecao)
+        {
+            erros.println("Não foi possível executar o trecho: " + excecao.getMessage());
+            erros.flush();
+            return;
+        }
+
+        // Valores digitados a mais não devem ser tomados como o próximo trecho
+        leitor.descartarRestoLinha();
+        saida.flush();
+
+        if (resultado != null && resultado.getModoEncerramento() == ModoEncerramento.ERRO)
+        {
+            int linha = resultado.getErro().getLinha();
+
+            erros.println("Erro de execução: " + resultado.getErro().getMensagem() + "\nLinha: " + (linha - deslocamentoPara(linha, deslocamento)) + ", Coluna: " + resultado.getErro().getColuna());
+            erros.flush();
+        }
+    }
+
+    /**
+     * Compila alguns trechos em segundo plano, enquanto o primeiro trecho é
+     * digitado, para carregar as classes do núcleo e do compilador e dar
+     * tempo ao JIT de otimizá-las. O cache não é usado, pois trechos já
+     * compilados em execuções anteriores seriam apenas carregados dele.
+     */
+    private void aquecer()
+    {
+        final CompiladorPrograma compiladorAquecimento = compilador.semCache();
+
+        Thread aquecimento = new Thread("aquecimento-interativo")
+        {
+            @Override
+            public void run()
+            {
+                for (int i = 0; i < TRECHOS_AQUECIMENTO; i++)
+                {
+                    try
+                    {
+                        compiladorAquecimento.compilar("programa\n{\nfuncao inicio()\n{\ninteiro x = " + i + "\nescreva(x)\n}\n}\n");
+                    }
+                    catch (Exception excecao)
+                    {
+                        return;
+                    }
+                }
+            }
+        };
+
+        aquecimento.setDaemon(true);
+        aquecimento.start();
+    }
+}
@@ -0,0 +1,435 @@
+package br.univali.portugol;
+
+import br.univali.portugol.nucleo.ErroCompilacao;
+import br.univali.portugol.nucleo.Programa;
+import br.univali.portugol.nucleo.execucao.ResultadoExecucao;
+import br.univali.portugol.nucleo.mensagens.ErroAnalise;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mantém a JVM em execução e executa o programa novamente sempre que o seu
+ * arquivo, ou o arquivo de entrada, é alterado.
+ * <p>
+ * Os diretórios dos arquivos são observados com um {@link WatchService}, o
+ * que também cobre os editores que salvam gravando um arquivo temporário e
+ * renomeando-o. As alterações são agrupadas até que fiquem um intervalo sem
+ * ocorrer. O programa só é compilado novamente se o seu conteúdo mudou. Uma
+ * execução ainda em andamento é interrompida antes de iniciar a próxima.
+ * <p>
+ * Sem arquivo de entrada, todas as execuções leem a entrada padrão pelo mesmo
+ * {@link LeitorEntrada}, como no {@link ModoInterativo}, para que os valores
+ * já lidos do {@code System.in} e ainda não usados passem para a execução
+ * seguinte. Uma execução interrompida enquanto aguarda a entrada deixa de
+ * aguardar sem consumir o que for digitado depois.
+ * <p>
+ * As mensagens do próprio modo de observação são escritas na saída de erros,
+ * para não se misturarem à saída do programa.
+ *
+ * @author Luiz Fernando Noschang
+ */
+public final class ModoObservacao
+{
+    private static final long INTERVALO_ESTABILIZACAO = 150;
+    private static final long TEMPO_ESPERA_INTERRUPCAO = 2000;
+
+    private final CompiladorPrograma compilador;
+    private final File arquivo;
+    private final File arquivoEntrada;
+    private final String[] parametros;
+    private final Charset charset;
+    private final Path caminhoPrograma;
+    private final Path caminhoEntrada;
+    private final LeitorEntrada leitorPadrao;
+
+    private String algoritmo = null;
+    private ProgramaCompilado programaCompilado = null;
+    private ExecucaoPrograma execucao = null;
+    private Thread threadExecucao = null;
+
+    /**
+     * @param arquivoEntrada o arquivo lido pelo programa em cada execução, ou
+     * {@code null} para usar a entrada padrão
+     */
+    public ModoObservacao(CompiladorPrograma compilador, File arquivo, File arquivoEntrada, String[] parametros)
+    {
+        this.compilador = compilador;
+        this.arquivo = arquivo.getAbsoluteFile();
+        this.arquivoEntrada = (arquivoEntrada != null) ? arquivoEntrada.getAbsoluteFile() : null;
+        this.parametros = parametros;
+        this.charset = LeitorEntrada.suporta(Charset.defaultCharset()) ? Charset.defaultCharset() : Charset.forName("UTF-8");
+        this.caminhoPrograma = this.arquivo.toPath().normalize();
+        this.caminhoEntrada = (this.arquivoEntrada != null) ? this.arquivoEntrada.toPath().normalize() : null;
+        this.leitorPadrao = (this.arquivoEntrada == null) ? new LeitorEntrada(new EntradaPadrao(), charset) : null;
+    }
+
+    /**
+     * Executa o programa e passa a observar os arquivos. Só retorna se a
+     * thread for interrompida.
+     */
+    public void executar() throws IOException, InterruptedException
+    {
+        try (WatchService observador = FileSystems.getDefault().newWatchService())
+        {
+            registrar(observador, caminhoPrograma.getParent());
+
+            if (caminhoEntrada != null && !caminhoEntrada.getParent().equals(caminhoPrograma.getParent()))
+            {
+                registrar(observador, caminhoEntrada.getParent());
+            }
+
+            processar();
+
+            while (true)
+            {
+                boolean alterado = coletar(observador.take());
+                WatchKey proxima;
+
+                while ((proxima = observador.poll(INTERVALO_ESTABILIZACAO, TimeUnit.MILLISECONDS)) != null)
+                {
+                    alterado |= coletar(proxima);
+                }
+
+                if (alterado)
+                {
+                    processar();
+                }
+            }
+        }
+        finally
+        {
+            interromperExecucao();
+        }
+    }
+
+    private static void registrar(WatchService observador, Path diretorio) throws IOException
+    {
+        diretorio.register(observador, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+    }
+
+    /**
+     * @return {@code true} se algum dos eventos se refere ao programa ou ao
+     * arquivo de entrada
+     */
+    private boolean coletar(WatchKey chave)
+    {
+        Path diretorio = (Path) chave.watchable();
+        boolean alterado = false;
+
+        for (WatchEvent<?> evento : chave.pollEvents())
+        {
+            if (evento.kind() == StandardWatchEventKinds.OVERFLOW)
+            {
+                alterado = true;
+                continue;
+            }
+
+            Path caminho = diretorio.resolve((Path) evento.context()).normalize();
+
+            if (caminho.equals(caminhoPrograma) || caminho.equals(caminhoEntrada))
+            {
+                alterado = true;
+            }
+        }
+
+        chave.reset();
+
+        return alterado;
+    }
+
+    private void processar() throws InterruptedException
+    {
+        interromperExecucao();
+
+        String novoAlgoritmo;
+
+        try
+        {
+            novoAlgoritmo = Console.lerArquivo(arquivo);
+        }
+        catch (Exception excecao)
+        {
+            // O arquivo pode estar sendo salvo; uma nova alteração virá em seguida
+            informar(excecao.getMessage());
+            return;
+        }
+
+        if (programaCompilado != null && novoAlgoritmo.equals(algoritmo) && programaCompilado.podeInstanciarNovamente())
+        {
+            informar("Código sem alterações, a compilação anterior será usada");
+        }
+        else if (!compilar(novoAlgoritmo))
+        {
+            aguardarAlteracoes();
+            return;
+        }
+
+        iniciarExecucao();
+    }
+
+    private boolean compilar(String novoAlgoritmo)
+    {
+        long inicio = System.nanoTime();
+
+        algoritmo = novoAlgoritmo;
+        programaCompilado = null;
+
+        try
+        {
+            programaCompilado = compilador.compilar(novoAlgoritmo);
+            informar(String.format("Programa compilado em %s ms", Json.milissegundos(System.nanoTime() - inicio)));
+
+            for (String aviso : programaCompilado.getAvisos())
+            {
+                System.err.println(aviso);
+            }
+
+            return true;
+        }
+        catch (ErroCompilacao erroCompilacao)
+        {
+            for (String aviso : CompiladorPrograma.formatarAvisos(erroCompilacao.getResultadoAnalise()))
+            {
+                System.err.println(aviso);
+            }
+
+            for (ErroAnalise erro : erroCompilacao.getResultadoAnalise().getErros())
+            {
+                System.err.println(CompiladorPrograma.formatarErro(erro));
+            }
+
+            informar("O programa contém erros");
+        }
+        catch (Exception excecao)
+        {
+            informar("Não foi possível compilar o programa: " + excecao.getMessage());
+        }
+
+        return false;
+    }
+
+    private void iniciarExecucao()
+    {
+        final InputStream entrada;
+
+        try
+        {
+            Programa programa = programaCompilado.instanciar();
+
+            if (leitorPadrao != null)
+            {
+                entrada = null;
+                execucao = new ExecucaoPrograma(programa, leitorPadrao, System.out, charset, 50, 8192);
+            }
+            else
+            {
+                entrada = new FileInputStream(arquivoEntrada);
+                execucao = new ExecucaoPrograma(programa, entrada, System.out, charset, 50);
+            }
+        }
+        catch (Exception excecao)
+        {
+            informar("Não foi possível executar o programa: " + excecao.getMessage());
+            return;
+        }
+
+        final ExecucaoPrograma execucaoIniciada = execucao;
+
+        threadExecucao = new Thread("execucao-observada")
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    ResultadoExecucao resultado = execucaoIniciada.executar(parametros, arquivo.getParentFile(), 0);
+
+                    System.out.flush();
+                    informar(String.format("Programa executado em %s ms%s", Json.milissegundos(execucaoIniciada.getTempoExecucao()), descrever(resultado)));
+                    aguardarAlteracoes();
+                }
+                catch (InterruptedException excecao)
+                {
+                }
+                finally
+                {
+                    fechar(entrada);
+                }
+            }
+        };
+
+        threadExecucao.setDaemon(true);
+        threadExecucao.start();
+    }
+
+    private static String descrever(ResultadoExecucao resultado)
+    {
+        if (resultado == null)
+        {
+            return ", sem informar o seu encerramento";
+        }
+
+        switch (resultado.getModoEncerramento())
+        {
+            case ERRO:
+                return " com erro: " + resultado.getErro().getMensagem() + ". Linha: " + resultado.getErro().getLinha() + ", Coluna: " + resultado.getErro().getColuna();
+            case INTERRUPCAO:
+                return ", interrompido";
+            default:
+                return "";
+        }
+    }
+
+    private void interromperExecucao() throws InterruptedException
+    {
+        if (threadExecucao != null && threadExecucao.isAlive())
+        {
+            informar("Interrompendo a execução anterior");
+            execucao.interromper();
+            threadExecucao.join(TEMPO_ESPERA_INTERRUPCAO);
+        }
+
+        threadExecucao = null;
+        execucao = null;
+    }
+
+    private static void fechar(InputStream entrada)
+    {
+        if (entrada != null)
+        {
+            try
+            {
+                entrada.close();
+            }
+            catch (IOException excecao)
+            {
+            }
+        }
+    }
+
+    private void aguardarAlteracoes()
+    {
+        informar("Aguardando alterações em " + arquivo.getName());
+    }
+
+    private static void informar(String mensagem)
+    {
+        PrintStream erros = System.err;
+
+        synchronized (erros)
+        {
+            erros.println("--- " + mensagem);
+            erros.flush();
+        }
+    }
+
+    /**
+     * O {@code System.in} é lido por uma thread própria e os bytes são
+     * entregues a quem estiver lendo. Assim a leitura pode ser interrompida,
+     * o que não acontece com uma leitura bloqueada no {@code System.in}, e os
+     * bytes que chegam depois ficam para a próxima leitura.
+     */
+    private static final class EntradaPadrao extends InputStream
+    {
+        private static final byte[] FIM = new byte[0];
+
+        private final BlockingQueue<byte[]> blocos = new LinkedBlockingQueue<>();
+        private byte[] atual = null;
+        private int posicao = 0;
+
+        EntradaPadrao()
+        {
+            Thread leitura = new Thread("entrada-observacao")
+            {
+                @Override
+                public void run()
+                {
+                    byte[] buffer = new byte[8192];
+
+                    try
+                    {
+                        int lidos;
+
+                        while ((lidos = System.in.read(buffer)) >= 0)
+                        {
+                            if (lidos > 0)
+                            {
+                                blocos.add(Arrays.copyOf(buffer, lidos));
+                            }
+                        }
+                    }
+                    catch (IOException excecao)
+                    {
+                    }
+
+                    blocos.add(FIM);
+                }
+            };
+
+            leitura.setDaemon(true);
+            leitura.start();
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            byte[] bytes = new byte[1];
+
+            return (read(bytes, 0, 1) < 0) ? -1 : (bytes[0] & 0xFF);
+        }
+
+        @Override
+        public synchronized int read(byte[] destino, int inicio, int tamanho) throws IOException
+        {
+            if (tamanho == 0)
+            {
+                return 0;
+            }
+
+            if (atual == FIM)
+            {
+                return -1;
+            }
+
+            if (atual == null || posicao == atual.length)
+            {
+                try
+                {
+                    atual = blocos.take();
+                    posicao = 0;
+                }
+                catch (InterruptedException excecao)
+                {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("A leitura da entrada foi interrompida");
+                }
+
+                if (atual == FIM)
+                {
+                    return -1;
+                }
+            }
+
+            int quantidade = Math.min(tamanho, atual.length - posicao);
+            System.arraycopy(atual, posicao, destino, inicio, quantidade);
+            posicao += quantidade;
+
+            return quantidade;
+        }
+    }
+}
@@ -0,0 +1,406 @@
+package br.univali.portugol;
+
+import br.univali.portugol.nucleo.Portugol;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarInputStream;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+/**
+ * Pacote com um programa já compilado, que pode ser executado em outra
+ * máquina sem passar pela análise e sem precisar do javac.
+ * <p>
+ * O pacote é um arquivo jar com as classes geradas, os avisos da análise, o
+ * código fonte (usado apenas pelo perfil de execução) e um manifesto com a
+ * classe principal e a identificação do núcleo usado na compilação. As
+ * classes geradas dependem da API interna do núcleo, então um pacote só é
+ * aceito pelo mesmo núcleo que o gerou, identificado pelo hash do seu jar.
+ *
+ * @author Luiz Fernando Noschang
+ */
+public final class PacotePrograma
+{
+    public static final String EXTENSAO = ".porc";
+
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+    private static final int VERSAO_FORMATO = 1;
+
+    private static final Attributes.Name ATRIBUTO_FORMATO = new Attributes.Name("Portugol-Pacote-Formato");
+    private static final Attributes.Name ATRIBUTO_CLASSE_PRINCIPAL = new Attributes.Name("Portugol-Classe-Principal");
+    private static final Attributes.Name ATRIBUTO_NUCLEO = new Attributes.Name("Portugol-Nucleo");
+    private static final Attributes.Name ATRIBUTO_VERSAO_NUCLEO = new Attributes.Name("Portugol-Nucleo-Versao");
+
+    private static final String ENTRADA_AVISOS = "avisos.txt";
+    private static final String ENTRADA_FONTE = "programa.por";
+    private static final String EXTENSAO_CLASSE = ".class";
+    private static final String ARQUIVO_IDENTIFICACAO_NUCLEO = "nucleo";
+
+    private static final Map<String, String> identificacoesJars = new HashMap<>();
+
+    private final ProgramaCompilado programaCompilado;
+    private final String algoritmo;
+
+    private PacotePrograma(ProgramaCompilado programaCompilado, String algoritmo)
+    {
+        this.programaCompilado = programaCompilado;
+        this.algoritmo = algoritmo;
+    }
+
+    public ProgramaCompilado getProgramaCompilado()
+    {
+        return programaCompilado;
+    }
+
+    public String getAlgoritmo()
+    {
+        return algoritmo;
+    }
+
+    public static boolean isPacote(File arquivo)
+    {
+        return arquivo.getName().toLowerCase().endsWith(EXTENSAO);
+    }
+
+    /**
+     * Grava o pacote em um arquivo temporário e o move para o destino, para
+     * que um pacote incompleto nunca seja executado.
+     */
+    public static void gravar(ProgramaCompilado programaCompilado, String algoritmo, File destino) throws IOException
+    {
+        if (programaCompilado.getClasses().isEmpty())
+        {
+            throw new IOException("As classes do programa compilado não estão disponíveis");
+        }
+
+        Manifest manifesto = new Manifest();
+        Attributes atributos = manifesto.getMainAttributes();
+
+        atributos.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        atributos.put(ATRIBUTO_FORMATO, Integer.toString(VERSAO_FORMATO));
+        atributos.put(ATRIBUTO_CLASSE_PRINCIPAL, programaCompilado.getNomeClassePrincipal());
+        atributos.put(ATRIBUTO_NUCLEO, obterIdentificacaoNucleo());
+        atributos.put(ATRIBUTO_VERSAO_NUCLEO, obterVersaoNucleo());
+
+        File diretorio = destino.getAbsoluteFile().getParentFile();
+        File temporario = File.createTempFile(destino.getName(), ".tmp", diretorio);
+
+        try
+        {
+            try (JarOutputStream saida = new JarOutputStream(new FileOutputStream(temporario), manifesto))
+            {
+                escreverEntrada(saida, ENTRADA_AVISOS, juntarLinhas(programaCompilado.getAvisos()).getBytes(CHARSET));
+                escreverEntrada(saida, ENTRADA_FONTE, algoritmo.getBytes(CHARSET));
+
+                for (Map.Entry<String, byte[]> classe : programaCompilado.getClasses().entrySet())
+                {
+                    escreverEntrada(saida, classe.getKey().replace('.', '/') + EXTENSAO_CLASSE, classe.getValue());
+                }
+            }
+
+            Files.move(temporario.toPath(), destino.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        finally
+        {
+            temporario.delete();
+        }
+    }
+
+    /**
+     * Lê o pacote, verificando se ele foi gerado pelo núcleo em uso e se as
+     * suas classes podem ser carregadas por esta JVM.
+     */
+    public static PacotePrograma ler(File arquivo) throws IOException
+    {
+        String caminho = arquivo.getPath();
+
+        try (JarInputStream entrada = new JarInputStream(new FileInputStream(arquivo)))
+        {
+            Manifest manifesto = entrada.getManifest();
+
+            if (manifesto == null || manifesto.getMainAttributes().getValue(ATRIBUTO_FORMATO) == null)
+            {
+                throw new IOException(String.format("O arquivo '%s' não é um pacote de programa do Portugol", caminho));
+            }
+
+            Attributes atributos = manifesto.getMainAttributes();
+            verificarFormato(caminho, atributos.getValue(ATRIBUTO_FORMATO));
+            verificarNucleo(caminho, atributos.getValue(ATRIBUTO_NUCLEO), atributos.getValue(ATRIBUTO_VERSAO_NUCLEO));
+
+            String nomeClassePrincipal = atributos.getValue(ATRIBUTO_CLASSE_PRINCIPAL);
+            Map<String, byte[]> classes = new LinkedHashMap<>();
+            List<String> avisos = new ArrayList<>();
+            String algoritmo = "";
+            JarEntry item;
+
+            while ((item = entrada.getNextJarEntry()) != null)
+            {
+                String nome = item.getName();
+
+                if (nome.endsWith(EXTENSAO_CLASSE))
+                {
+                    classes.put(nome.substring(0, nome.length() - EXTENSAO_CLASSE.length()).replace('/', '.'), lerEntrada(entrada));
+                }
+                else if (nome.equals(ENTRADA_AVISOS))
+                {
+                    String texto = new String(lerEntrada(entrada), CHARSET);
+
+                    if (!texto.isEmpty())
+                    {
+                        avisos.addAll(Arrays.asList(texto.split("\n")));
+                    }
+                }
+                else if (nome.equals(ENTRADA_FONTE))
+                {
+                    algoritmo = new String(lerEntrada(entrada), CHARSET);
+                }
+            }
+
+            if (nomeClassePrincipal == null || !classes.containsKey(nomeClassePrincipal))
+            {
+                throw new IOException(String.format("O pacote '%s' está incompleto: a classe principal não foi encontrada", caminho));
+            }
+
+            verificarVersaoClasses(caminho, classes.get(nomeClassePrincipal));
+
+            return new PacotePrograma(new ProgramaCompilado(nomeClassePrincipal, classes, avisos), algoritmo);
+        }
+    }
+
+    private static void verificarFormato(String caminho, String formato) throws IOException
+    {
+        int versao;
+
+        try
+        {
+            versao = Integer.parseInt(formato.trim());
+        }
+        catch (NumberFormatException excecao)
+        {
+            versao = -1;
+        }
+
+        if (versao != VERSAO_FORMATO)
+        {
+            throw new IOException(String.format("O pacote '%s' usa um formato (%s) que não é suportado por esta versão do console", caminho, formato));
+        }
+    }
+
+    private static void verificarNucleo(String caminho, String nucleo, String versao) throws IOException
+    {
+        String nucleoAtual = obterIdentificacaoNucleo();
+
+        if (!nucleoAtual.equals(nucleo))
+        {
+            throw new IOException(String.format("O pacote '%s' foi compilado com outro núcleo do Portugol (%s) e não pode ser executado com o núcleo instalado (%s). Compile o programa novamente com -compilar",
+                caminho, descreverNucleo(versao, nucleo), descreverNucleo(obterVersaoNucleo(), nucleoAtual)));
+        }
+    }
+
+    /**
+     * Uma classe gerada por um javac mais novo que a JVM só falharia ao ser
+     * carregada, já durante a execução.
+     */
+    private static void verificarVersaoClasses(String caminho, byte[] classe) throws IOException
+    {
+        if (classe.length < 8)
+        {
+            throw new IOException(String.format("O pacote '%s' está corrompido", caminho));
+        }
+
+        int versaoClasse = ((classe[6] & 0xFF) << 8) | (classe[7] & 0xFF);
+        int versaoSuportada = obterVersaoClassesSuportada();
+
+        if (versaoClasse > versaoSuportada)
+        {
+            throw new IOException(String.format("O pacote '%s' foi compilado para o Java %d e não pode ser executado no Java %s",
+                caminho, versaoClasse - 44, System.getProperty("java.specification.version")));
+        }
+    }
+
+    private static int obterVersaoClassesSuportada()
+    {
+        String versao = System.getProperty("java.specification.version", "1.7");
+
+        if (versao.startsWith("1."))
+        {
+            versao = versao.substring(2);
+        }
+
+        try
+        {
+            return 44 + Integer.parseInt(versao);
+        }
+        catch (NumberFormatException excecao)
+        {
+            return Integer.MAX_VALUE;
+        }
+    }
+
+    private static String descreverNucleo(String versao, String identificacao)
+    {
+        String hash = (identificacao != null && identificacao.length() > 19) ? identificacao.substring(0, 19) : identificacao;
+
+        return ((versao != null && !versao.isEmpty()) ? "versão " + versao + ", " : "") + hash;
+    }
+
+    private static String obterVersaoNucleo()
+    {
+        Package pacote = Portugol.class.getPackage();
+
+        return (pacote != null && pacote.getImplementationVersion() != null) ? pacote.getImplementationVersion() : "";
+    }
+
+    /**
+     * O hash do jar do núcleo, ao contrário do caminho e da data usados pelo
+     * cache de compilação, é o mesmo em todas as máquinas que têm o mesmo
+     * núcleo instalado.
+     */
+    static String obterIdentificacaoNucleo()
+    {
+        CodeSource origem = Portugol.class.getProtectionDomain().getCodeSource();
+
+        if (origem != null && origem.getLocation() != null)
+        {
+            try
+            {
+                File arquivo = new File(origem.getLocation().toURI());
+
+                if (arquivo.isFile())
+                {
+                    return identificarJar(arquivo);
+                }
+            }
+            catch (Exception excecao)
+            {
+                // O núcleo não está em um jar local, resta a versão declarada
+            }
+        }
+
+        return "versao:" + obterVersaoNucleo();
+    }
+
+    /**
+     * Identifica um jar pelo hash do seu conteúdo. O hash só é calculado
+     * novamente quando o caminho, o tamanho ou a data do jar mudam; entre
+     * execuções ele é guardado em disco, como o classpath de compilação, para
+     * que executar um pacote não precise ler o núcleo inteiro.
+     *
+     * @return {@code sha256:} seguido do hash em hexadecimal
+     */
+    static String identificarJar(File jar) throws IOException
+    {
+        String chave = jar.getAbsolutePath() + ":" + jar.length() + ":" + jar.lastModified();
+
+        synchronized (identificacoesJars)
+        {
+            String identificacao = identificacoesJars.get(chave);
+
+            if (identificacao != null)
+            {
+                return identificacao;
+            }
+        }
+
+        File arquivo = new File(Caminhos.getDiretorioCompilacao(), ARQUIVO_IDENTIFICACAO_NUCLEO);
+        String identificacao = CompiladorPrograma.lerArmazenado(arquivo, chave);
+
+        if (identificacao == null)
+        {
+            identificacao = calcularIdentificacaoJar(jar);
+            CompiladorPrograma.armazenar(arquivo, chave, identificacao);
+        }
+
+        synchronized (identificacoesJars)
+        {
+            identificacoesJars.put(chave, identificacao);
+        }
+
+        return identificacao;
+    }
+
+    /**
+     * Calcula a identificação sem consultar nem alterar o que está guardado,
+     * para identificar jars fora da instalação, como durante o build.
+     */
+    static String calcularIdentificacaoJar(File jar) throws IOException
+    {
+        try
+        {
+            return "sha256:" + calcularHash(jar);
+        }
+        catch (NoSuchAlgorithmException excecao)
+        {
+            throw new IOException(excecao);
+        }
+    }
+
+    private static String calcularHash(File arquivo) throws IOException, NoSuchAlgorithmException
+    {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        byte[] buffer = new byte[64 * 1024];
+
+        try (InputStream entrada = new FileInputStream(arquivo))
+        {
+            int lidos;
+
+            while ((lidos = entrada.read(buffer)) > 0)
+            {
+                digest.update(buffer, 0, lidos);
+            }
+        }
+
+        return CacheCompilacao.paraHexadecimal(digest.digest());
+    }
+
+    private static void escreverEntrada(JarOutputStream saida, String nome, byte[] conteudo) throws IOException
+    {
+        saida.putNextEntry(new JarEntry(nome));
+        saida.write(conteudo);
+        saida.closeEntry();
+    }
+
+    private static byte[] lerEntrada(InputStream entrada) throws IOException
+    {
+        ByteArrayOutputStream conteudo = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int lidos;
+
+        while ((lidos = entrada.read(buffer)) > 0)
+        {
+            conteudo.write(buffer, 0, lidos);
+        }
+
+        return conteudo.toByteArray();
+    }
+
+    private static String juntarLinhas(List<String> linhas)
+    {
+        StringBuilder texto = new StringBuilder();
+
+        for (String linha : linhas)
+        {
+            texto.append(linha).append('\n');
+        }
+
+        return texto.toString();
+    }
+}
@@ -0,0 +1,234 @@
+package br.univali.portugol;
+
+import br.univali.portugol.nucleo.Programa;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Conta quantas vezes cada linha do programa foi executada e quanto tempo foi
+ * gasto nela.
+ * <p>
+ * Um ponto de parada é ativado em cada linha. A cada parada o núcleo avisa a
+ * linha atual ao observador e o programa é retomado logo em seguida. O tempo
+ * entre duas paradas é atribuído à linha da primeira, descontando o custo da
+ * própria parada. Os contadores ficam em vetores indexados pelo número da
+ * linha, de modo que cada parada custa apenas alguns acessos a vetor.
+ *
+ * @author Luiz Fernando Noschang
+ */
+public final class PerfilExecucao
+{
+    private static final int LINHAS_RELATORIO = 15;
+    private static final int TAMANHO_MAXIMO_CODIGO = 50;
+
+    private final Programa programa;
+    private final File arquivo;
+    private final String[] linhasCodigo;
+    private final long[] execucoes;
+    private final long[] tempos;
+
+    private int linhaAtual = -1;
+    private long ultimoInstante = 0;
+    private long inicio = 0;
+    private long fim = 0;
+    private boolean eventosDetalhados = false;
+    private boolean tipoEventoDefinido = false;
+
+    public PerfilExecucao(Programa programa, File arquivo, String algoritmo)
+    {
+        this.programa = programa;
+        this.arquivo = arquivo;
+        this.linhasCodigo = algoritmo.split("\n", -1);
+        this.execucoes = new long[linhasCodigo.length + 1];
+        this.tempos = new long[linhasCodigo.length + 1];
+    }
+
+    /**
+     * Ativa os pontos de parada em todas as linhas. Deve ser chamado antes de
+     * iniciar a execução.
+     */
+    public void ativar()
+    {
+        Set<Integer> linhas = new HashSet<>();
+
+        for (int linha = 1; linha <= linhasCodigo.length; linha++)
+        {
+            linhas.add(linha);
+        }
+
+        programa.ativarPontosDeParada(linhas);
+
+        inicio = System.nanoTime();
+        ultimoInstante = inicio;
+    }
+
+    public void linhaExecutada(int linha)
+    {
+        registrar(linha, false);
+    }
+
+    public void linhaExecutadaDetalhada(int linha)
+    {
+        registrar(linha, true);
+    }
+
+    /**
+     * Alguns núcleos avisam a linha pelos dois eventos de destaque. Só o
+     * primeiro tipo de evento recebido é usado, para não contar a mesma
+     * parada duas vezes.
+     */
+    private void registrar(int linha, boolean detalhado)
+    {
+        long agora = System.nanoTime();
+
+        if (!tipoEventoDefinido)
+        {
+            eventosDetalhados = detalhado;
+            tipoEventoDefinido = true;
+        }
+
+        if (detalhado != eventosDetalhados)
+        {
+            return;
+        }
+
+        contabilizar(agora);
+
+        if (linha > 0 && linha < execucoes.length)
+        {
+            execucoes[linha]++;
+            linhaAtual = linha;
+        }
+        else
+        {
+            linhaAtual = -1;
+        }
+    }
+
+    /**
+     * Retoma o programa a cada parada. O aviso de pausa é feito pela própria
+     * thread do programa, depois que o núcleo já o marcou como pausado, então
+     * a retomada é registrada antes de o núcleo passar a aguardar e nenhuma
+     * parada fica sem retomada.
+     */
+    public void execucaoPausada()
+    {
+        contabilizar(System.nanoTime());
+
+        programa.continuar(Programa.Estado.BREAK_POINT);
+        ultimoInstante = System.nanoTime();
+    }
+
+    public void execucaoEncerrada()
+    {
+        fim = System.nanoTime();
+        contabilizar(fim);
+        linhaAtual = -1;
+    }
+
+    private void contabilizar(long agora)
+    {
+        if (linhaAtual > 0)
+        {
+            tempos[linhaAtual] += agora - ultimoInstante;
+        }
+
+        ultimoInstante = agora;
+    }
+
+    /**
+     * @return as linhas executadas ao menos uma vez, da mais demorada para a
+     * menos demorada
+     */
+    private List<Integer> ordenarLinhas()
+    {
+        List<Integer> linhas = new ArrayList<>();
+
+        for (int linha = 1; linha < execucoes.length; linha++)
+        {
+            if (execucoes[linha] > 0)
+            {
+                linhas.add(linha);
+            }
+        }
+
+        Collections.sort(linhas, new Comparator<Integer>()
+        {
+            @Override
+            public int compare(Integer a, Integer b)
+            {
+                int comparacao = Long.compare(tempos[b], tempos[a]);
+
+                return (comparacao != 0) ? comparacao : Long.compare(execucoes[b], execucoes[a]);
+            }
+        });
+
+        return linhas;
+    }
+
+    public void escreverRelatorio(PrintStream saida)
+    {
+        long tempoTotal = fim - inicio;
+        List<Integer> linhas = ordenarLinhas();
+
+        saida.println();
+        saida.println(String.format(Locale.ROOT, "Perfil de execução (%s ms no total)", Json.milissegundos(tempoTotal)));
+        saida.println(String.format(Locale.ROOT, "%7s %14s %12s %7s   %s", "Linha", "Execuções", "Tempo (ms)", "%", "Código"));
+
+        for (int i = 0; i < Math.min(LINHAS_RELATORIO, linhas.size()); i++)
+        {
+            int linha = linhas.get(i);
+            double percentual = (tempoTotal > 0) ? 100.0 * tempos[linha] / tempoTotal : 0;
+
+            saida.println(String.format(Locale.ROOT, "%7d %14d %12s %6.1f%%   %s", linha, execucoes[linha], Json.milissegundos(tempos[linha]), percentual, resumirCodigo(linha)));
+        }
+
+        saida.flush();
+    }
+
+    private String resumirCodigo(int linha)
+    {
+        String codigo = linhasCodigo[linha - 1].trim();
+
+        return (codigo.length() > TAMANHO_MAXIMO_CODIGO) ? codigo.substring(0, TAMANHO_MAXIMO_CODIGO - 3) + "..." : codigo;
+    }
+
+    public void escreverArquivo(File destino) throws IOException
+    {
+        try (Writer saida = new OutputStreamWriter(new FileOutputStream(destino), "UTF-8"))
+        {
+            List<Integer> linhas = ordenarLinhas();
+
+            saida.write("{\n");
+            saida.write("  \"programa\": " + Json.texto(arquivo.getPath()) + ",\n");
+            saida.write("  \"tempoTotalMs\": " + Json.milissegundos(fim - inicio) + ",\n");
+            saida.write("  \"linhas\": [\n");
+
+            for (int i = 0; i < linhas.size(); i++)
+            {
+                int linha = linhas.get(i);
+
+                saida.write("    {");
+                saida.write("\"linha\": " + linha);
+                saida.write(", \"execucoes\": " + execucoes[linha]);
+                saida.write(", \"tempoMs\": " + Json.milissegundos(tempos[linha]));
+                saida.write(", \"codigo\": " + Json.texto(linhasCodigo[linha - 1].trim()));
+                saida.write((i < linhas.size() - 1) ? "},\n" : "}\n");
+            }
+
+            saida.write("  ]\n");
+            saida.write("}\n");
+        }
+    }
+}
@@ -0,0 +1,379 @@
+package br.univali.portugol;
+
+import br.univali.portugol.nucleo.ErroCompilacao;
+import br.univali.portugol.nucleo.Portugol;
+import br.univali.portugol.nucleo.Programa;
+import br.univali.portugol.nucleo.mensagens.ErroAnalise;
+import java.io.File;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Compila antecipadamente todos os programas de um diretório, deixando-os no
+ * cache de compilação.
+ * <p>
+ * A análise dos programas e a geração do código Java são feitas em paralelo.
+ * Os fontes Java gerados são então compilados juntos, em poucas invocações do
+ * compilador interno, evitando o custo de iniciar o javac e de ler o
+ * classpath para cada programa. Quando o compilador interno não está
+ * disponível, cada programa é compilado separadamente, ainda em paralelo.
+ *
+ * @author Luiz Fernando Noschang
+ */
+public final class Precompilador
+{
+    public static enum Situacao { COMPILADO, EM_CACHE, ERRO };
+
+    private static final String PREFIXO_CLASSE = "ProgramaPortugol";
+    private static final int TAMANHO_MAXIMO_LOTE = 500;
+
+    private final CompiladorPrograma compilador;
+    private final int numeroThreads;
+
+    public Precompilador(CompiladorPrograma compilador, int numeroThreads)
+    {
+        this.compilador = compilador;
+        this.numeroThreads = Math.max(1, numeroThreads);
+    }
+
+    /**
+     * @return os programas Portugol do diretório e dos seus subdiretórios, em
+     * ordem alfabética
+     */
+    public static List<File> listarProgramas(File diretorio)
+    {
+        List<File> programas = new ArrayList<>();
+        File[] arquivos = diretorio.listFiles();
+
+        if (arquivos != null)
+        {
+            Arrays.sort(arquivos);
+
+            for (File arquivo : arquivos)
+            {
+                if (arquivo.isDirectory())
+                {
+                    programas.addAll(listarProgramas(arquivo));
+                }
+                else if (arquivo.getName().toLowerCase().endsWith(".por"))
+                {
+                    programas.add(arquivo);
+                }
+            }
+        }
+
+        return programas;
+    }
+
+    public List<Resultado> precompilar(List<File> arquivos) throws Exception
+    {
+        final String classPath = CompiladorPrograma.getClassPathParaCompilacao();
+        final String caminhoJavac = compilador.getIdentificacaoJavac();
+        final CacheCompilacao cache = compilador.criarCache();
+        final boolean compiladorInterno = compilador.usarCompiladorInterno();
+
+        ExecutorService executor = Executors.newFixedThreadPool(numeroThreads);
+
+        try
+        {
+            List<Future<Unidade>> futuros = new ArrayList<>();
+
+            for (int i = 0; i < arquivos.size(); i++)
+            {
+                final File arquivo = arquivos.get(i);
+                final String nomeClasse = PREFIXO_CLASSE + i;
+
+                futuros.add(executor.submit(new Callable<Unidade>()
+                {
+                    @Override
+                    public Unidade call() throws Exception
+                    {
+                        return prepararUnidade(arquivo, nomeClasse, classPath, caminhoJavac, cache, compiladorInterno);
+                    }
+                }));
+            }
+
+            List<Unidade> unidades = new ArrayList<>();
+
+            for (int i = 0; i < futuros.size(); i++)
+            {
+                unidades.add(obter(futuros.get(i), arquivos.get(i)));
+            }
+
+            compilarUnidades(unidades, classPath, cache);
+
+            List<Resultado> resultados = new ArrayList<>();
+
+            for (Unidade unidade : unidades)
+            {
+                resultados.add(unidade.resultado);
+            }
+
+            return resultados;
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Lê e analisa um programa. Se o programa já está no cache, ou se não há
+     * compilador interno, a unidade já sai daqui com o seu resultado.
+     */
+    private Unidade prepararUnidade(File arquivo, String nomeClasse, String classPath, String caminhoJavac, CacheCompilacao cache, boolean compiladorInterno) throws Exception
+    {
+        long inicio = System.nanoTime();
+        String algoritmo = Console.lerArquivo(arquivo);
+        Unidade unidade = new Unidade(arquivo, nomeClasse, inicio);
+
+        if (cache != null)
+        {
+            unidade.chave = cache.calcularChave(algoritmo, classPath, caminhoJavac);
+
+            ProgramaCompilado programaCompilado = cache.carregar(unidade.chave);
+
+            if (programaCompilado != null)
+            {
+                unidade.concluir(Situacao.EM_CACHE, programaCompilado.getAvisos());
+                return unidade;
+            }
+        }
+
+        try
+        {
+            if (!compiladorInterno)
+            {
+                unidade.concluir(Situacao.COMPILADO, compilador.compilar(algoritmo).getAvisos());
+                return unidade;
+            }
+
+            Programa analisado = Portugol.compilarParaAnalise(algoritmo);
+
+            unidade.avisos = CompiladorPrograma.formatarAvisos(analisado.getResultadoAnalise());
+            unidade.codigo = CompiladorInterno.gerarCodigoJava(analisado, nomeClasse);
+        }
+        catch (ErroCompilacao erroCompilacao)
+        {
+            List<String> erros = new ArrayList<>();
+
+            for (ErroAnalise erro : erroCompilacao.getResultadoAnalise().getErros())
+            {
+                erros.add(CompiladorPrograma.formatarErro(erro));
+            }
+
+            unidade.concluir(Situacao.ERRO, erros);
+        }
+
+        return unidade;
+    }
+
+    /**
+     * Compila em lotes os fontes Java das unidades que ainda não têm
+     * resultado. Um programa cujo código Java não compila não impede a
+     * compilação dos demais.
+     */
+    private void compilarUnidades(List<Unidade> unidades, String classPath, CacheCompilacao cache) throws Exception
+    {
+        Map<String, Unidade> lote = new LinkedHashMap<>();
+
+        for (Unidade unidade : unidades)
+        {
+            if (unidade.resultado == null)
+            {
+                lote.put(unidade.nomeClasse, unidade);
+            }
+
+            if (lote.size() == TAMANHO_MAXIMO_LOTE)
+            {
+                compilarLote(lote, classPath, cache);
+                lote.clear();
+            }
+        }
+
+        if (!lote.isEmpty())
+        {
+            compilarLote(lote, classPath, cache);
+        }
+    }
+
+    private void compilarLote(Map<String, Unidade> lote, String classPath, CacheCompilacao cache) throws Exception
+    {
+        Map<String, String> fontes = new LinkedHashMap<>();
+
+        for (Unidade unidade : lote.values())
+        {
+            fontes.put(unidade.nomeClasse, unidade.codigo);
+        }
+
+        Map<String, CompiladorInterno.UnidadeCompilada> compiladas = CompiladorInterno.compilarJava(fontes, classPath);
+        Map<String, ProgramaCompilado> programas = new LinkedHashMap<>();
+
+        for (Unidade unidade : lote.values())
+        {
+            CompiladorInterno.UnidadeCompilada compilada = compiladas.get(unidade.nomeClasse);
+
+            if (compilada.getErros() != null)
+            {
+                unidade.concluir(Situacao.ERRO, Collections.singletonList(descreverErroGeracao(unidade, compilada.getErros())));
+                continue;
+            }
+
+            try
+            {
+                ProgramaCompilado programaCompilado = CompiladorInterno.criarProgramaCompilado(unidade.nomeClasse, unidade.codigo, compilada.getClasses(), unidade.avisos);
+
+                if (unidade.chave != null)
+                {
+                    programas.put(unidade.chave, programaCompilado);
+                }
+
+                unidade.concluir(Situacao.COMPILADO, unidade.avisos);
+            }
+            catch (Exception excecao)
+            {
+                unidade.concluir(Situacao.ERRO, Collections.singletonList("ERRO: " + excecao.getMessage()));
+            }
+        }
+
+        if (cache != null && !programas.isEmpty())
+        {
+            cache.armazenar(programas);
+        }
+    }
+
+    /**
+     * Os erros do javac se referem ao fonte Java gerado, cujas linhas não
+     * correspondem às do programa, e não a um erro do aluno: o programa já
+     * passou pela análise. A mensagem deixa claro de qual programa é o fonte
+     * e que o erro é da geração de código.
+     */
+    private static String descreverErroGeracao(Unidade unidade, String erros)
+    {
+        StringBuilder mensagem = new StringBuilder();
+
+        mensagem.append(String.format("ERRO INTERNO: o código Java gerado para o programa '%s' (classe %s) não compila. ", unidade.arquivo.getPath(), unidade.nomeClasse));
+        mensagem.append("O programa é válido; o erro está na geração de código do Portugol.");
+
+        for (String linha : erros.split("\n"))
+        {
+            mensagem.append('\n').append(linha.replaceFirst("^(\\d+): ", "Linha $1 do código Java gerado: "));
+        }
+
+        return mensagem.toString();
+    }
+
+    private static Unidade obter(Future<Unidade> futuro, File arquivo) throws InterruptedException
+    {
+        try
+        {
+            return futuro.get();
+        }
+        catch (ExecutionException excecao)
+        {
+            Unidade unidade = new Unidade(arquivo, null, System.nanoTime());
+            unidade.concluir(Situacao.ERRO, Collections.singletonList("ERRO: " + excecao.getCause().getMessage()));
+
+            return unidade;
+        }
+    }
+
+    public static void escreverRelatorio(List<Resultado> resultados, long tempoTotal, PrintStream saida)
+    {
+        int[] contagem = new int[Situacao.values().length];
+
+        for (Resultado resultado : resultados)
+        {
+            contagem[resultado.getSituacao().ordinal()]++;
+            saida.println(resultado.getSituacao() + ": " + resultado.getArquivo().getPath());
+
+            for (String mensagem : resultado.getMensagens())
+            {
+                saida.println("    " + mensagem.replace("\n", "\n    "));
+            }
+        }
+
+        saida.println();
+        saida.println(String.format("%d programas em %d ms: %d compilados, %d em cache, %d com erros", resultados.size(), tempoTotal / 1000000,
+            contagem[Situacao.COMPILADO.ordinal()], contagem[Situacao.EM_CACHE.ordinal()], contagem[Situacao.ERRO.ordinal()]));
+        saida.flush();
+    }
+
+    private static final class Unidade
+    {
+        private final File arquivo;
+        private final String nomeClasse;
+        private final long inicio;
+        private String chave;
+        private String codigo;
+        private List<String> avisos;
+        private Resultado resultado;
+
+        Unidade(File arquivo, String nomeClasse, long inicio)
+        {
+            this.arquivo = arquivo;
+            this.nomeClasse = nomeClasse;
+            this.inicio = inicio;
+        }
+
+        void concluir(Situacao situacao, List<String> mensagens)
+        {
+            codigo = null;
+            resultado = new Resultado(arquivo, situacao, mensagens, System.nanoTime() - inicio);
+        }
+    }
+
+    public static final class Resultado
+    {
+        private final File arquivo;
+        private final Situacao situacao;
+        private final List<String> mensagens;
+        private final long tempo;
+
+        public Resultado(File arquivo, Situacao situacao, List<String> mensagens, long tempo)
+        {
+            this.arquivo = arquivo;
+            this.situacao = situacao;
+            this.mensagens = mensagens;
+            this.tempo = tempo;
+        }
+
+        public File getArquivo()
+        {
+            return arquivo;
+        }
+
+        public Situacao getSituacao()
+        {
+            return situacao;
+        }
+
+        /**
+         * @return os avisos do programa ou, em caso de erro, as mensagens de
+         * erro
+         */
+        public List<String> getMensagens()
+        {
+            return mensagens;
+        }
+
+        /**
+         * @return o tempo desde a leitura do programa até o fim da sua
+         * compilação, em nanossegundos
+         */
+        public long getTempo()
+        {
+            return tempo;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package br.univali.portugol;
+
+import br.univali.portugol.nucleo.Programa;
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Classes geradas para um programa Portugol, mantidas em memória para que
+ * possam ser armazenadas e instanciadas novamente sem passar pelo compilador.
+ *
+ * @author Luiz Fernando Noschang
+ */
+public final class ProgramaCompilado
+{
+    private final String nomeClassePrincipal;
+    private final Map<String, byte[]> classes;
+    private final List<String> avisos;
+    private final Programa instancia;
+
+    public ProgramaCompilado(String nomeClassePrincipal, Map<String, byte[]> classes, List<String> avisos)
+    {
+        this.nomeClassePrincipal = nomeClassePrincipal;
+        this.classes = Collections.unmodifiableMap(new LinkedHashMap<>(classes));
+        this.avisos = Collections.unmodifiableList(new ArrayList<>(avisos));
+        this.instancia = null;
+    }
+
+    /**
+     * Envolve um programa já instanciado pelo núcleo, cujas classes não
+     * puderam ser recuperadas.
+     */
+    public ProgramaCompilado(Programa programa, List<String> avisos)
+    {
+        this.nomeClassePrincipal = programa.getClass().getName();
+        this.classes = Collections.emptyMap();
+        this.avisos = Collections.unmodifiableList(new ArrayList<>(avisos));
+        this.instancia = programa;
+    }
+
+    public String getNomeClassePrincipal()
+    {
+        return nomeClassePrincipal;
+    }
+
+    public Map<String, byte[]> getClasses()
+    {
+        return classes;
+    }
+
+    public List<String> getAvisos()
+    {
+        return avisos;
+    }
+
+    /**
+     * @return {@code false} quando só existe a instância criada pelo núcleo,
+     * que não pode ser executada mais de uma vez
+     */
+    public boolean podeInstanciarNovamente()
+    {
+        return instancia == null;
+    }
+
+    public Programa instanciar() throws Exception
+    {
+        if (instancia != null)
+        {
+            return instancia;
+        }
+
+        CarregadorClassesMemoria carregador = new CarregadorClassesMemoria(classes, ProgramaCompilado.class.getClassLoader());
+        Class<?> classe = carregador.loadClass(nomeClassePrincipal);
+
+        return (Programa) classe.getDeclaredConstructor().newInstance();
+    }
+
+    /**
+     * Recupera os bytes das classes de um programa compilado pelo núcleo a
+     * partir do diretório de onde o class loader do núcleo as carregou.
+     */
+    public static ProgramaCompilado extrair(Programa programa, List<String> avisos) throws IOException
+    {
+        Class<?> classe = programa.getClass();
+        CodeSource origem = classe.getProtectionDomain().getCodeSource();
+
+        if (origem == null || origem.getLocation() == null)
+        {
+            throw new IOException(String.format("Não foi possível localizar as classes do programa '%s'", classe.getName()));
+        }
+
+        File diretorioClasses;
+
+        try
+        {
+            diretorioClasses = new File(origem.getLocation().toURI());
+        }
+        catch (URISyntaxException | IllegalArgumentException excecao)
+        {
+            throw new IOException(excecao);
+        }
+
+        String nome = classe.getName();
+        int separador = nome.lastIndexOf('.');
+        String pacote = (separador >= 0) ? nome.substring(0, separador + 1) : "";
+        String nomeSimples = nome.substring(separador + 1);
+        File diretorioPacote = new File(diretorioClasses, pacote.replace('.', File.separatorChar));
+        File[] arquivos = diretorioPacote.listFiles();
+
+        if (arquivos == null)
+        {
+            throw new IOException(String.format("O diretório '%s' não pode ser lido", diretorioPacote));
+        }
+
+        Map<String, byte[]> classes = new LinkedHashMap<>();
+
+        for (File arquivo : arquivos)
+        {
+            String nomeArquivo = arquivo.getName();
+
+            if (nomeArquivo.endsWith(".class") && (nomeArquivo.equals(nomeSimples + ".class") || nomeArquivo.startsWith(nomeSimples + "$")))
+            {
+                String nomeClasse = pacote + nomeArquivo.substring(0, nomeArquivo.length() - ".class".length());
+                classes.put(nomeClasse, Files.readAllBytes(arquivo.toPath()));
+            }
+        }
+
+        if (!classes.containsKey(nome))
+        {
+            throw new IOException(String.format("O arquivo da classe '%s' não foi encontrado", nome));
+        }
+
+        return new ProgramaCompilado(nome, classes, avisos);
+    }
+}
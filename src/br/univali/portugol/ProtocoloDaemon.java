@@ -0,0 +1,270 @@
+package br.univali.portugol;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.EnumSet;
+import java.util.Properties;
+
+/**
+ * Protocolo usado entre o {@link ClienteDaemon} e o {@link ServidorDaemon}.
+ * <p>
+ * O cliente envia a versão do protocolo, o token de acesso, o charset do
+ * terminal, o caminho absoluto do programa e os seus parâmetros. O servidor
+ * confirma o token com {@link #ACEITO} antes de ler o restante, de modo que o
+ * cliente sabe se a sessão foi aceita antes de repassar qualquer entrada. Em
+ * seguida o cliente envia a entrada padrão em blocos
+ * {@code [tamanho][bytes]}, terminando com um bloco de tamanho zero. O
+ * servidor responde com blocos {@code [tipo][tamanho][bytes]} para a saída e
+ * os erros e, ao final, com um bloco {@link #FIM} contendo o modo de
+ * encerramento e a mensagem final.
+ *
+ * @author Luiz Fernando Noschang
+ */
+final class ProtocoloDaemon
+{
+    static final int VERSAO = 2;
+
+    static final byte SAIDA = 1;
+    static final byte ERRO = 2;
+    static final byte FIM = 3;
+    static final byte ACEITO = 4;
+
+    static final byte FIM_NORMAL = 0;
+    static final byte FIM_INTERRUPCAO = 1;
+    static final byte FIM_ERRO_EXECUCAO = 2;
+    static final byte FIM_FALHA = 3;
+    static final byte FIM_TEMPO_ESGOTADO = 4;
+
+    private static final String PROPRIEDADE_PORTA = "porta";
+    private static final String PROPRIEDADE_TOKEN = "token";
+
+    private ProtocoloDaemon()
+    {
+    }
+
+    static File getArquivoDaemon()
+    {
+        return new File(new File(System.getProperty("user.home"), ".portugol"), "console-daemon.properties");
+    }
+
+    static void publicar(int porta, String token) throws IOException
+    {
+        File arquivo = getArquivoDaemon();
+        Files.createDirectories(arquivo.getParentFile().toPath());
+
+        File temporario = new File(arquivo.getPath() + ".tmp");
+
+        try (OutputStream saida = new FileOutputStream(temporario))
+        {
+            try
+            {
+                Files.setPosixFilePermissions(temporario.toPath(), EnumSet.of(PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE));
+            }
+            catch (UnsupportedOperationException excecao)
+            {
+                // Sistemas sem permissões POSIX dependem das permissões do diretório do usuário
+            }
+
+            Properties propriedades = new Properties();
+            propriedades.setProperty(PROPRIEDADE_PORTA, Integer.toString(porta));
+            propriedades.setProperty(PROPRIEDADE_TOKEN, token);
+            propriedades.store(saida, null);
+        }
+
+        Files.move(temporario.toPath(), arquivo.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * @return a porta e o token do daemon em execução, ou {@code null} se
+     * nenhum foi publicado
+     */
+    static String[] lerPublicacao()
+    {
+        File arquivo = getArquivoDaemon();
+
+        if (!arquivo.isFile())
+        {
+            return null;
+        }
+
+        try (InputStream entrada = new FileInputStream(arquivo))
+        {
+            Properties propriedades = new Properties();
+            propriedades.load(entrada);
+
+            String porta = propriedades.getProperty(PROPRIEDADE_PORTA);
+            String token = propriedades.getProperty(PROPRIEDADE_TOKEN);
+
+            return (porta != null && token != null) ? new String[] { porta, token } : null;
+        }
+        catch (IOException excecao)
+        {
+            return null;
+        }
+    }
+
+    static void escreverBloco(DataOutputStream saida, byte tipo, byte[] bytes, int inicio, int tamanho) throws IOException
+    {
+        synchronized (saida)
+        {
+            saida.writeByte(tipo);
+            saida.writeInt(tamanho);
+            saida.write(bytes, inicio, tamanho);
+            saida.flush();
+        }
+    }
+
+    static void escreverFim(DataOutputStream saida, byte modo, String mensagem) throws IOException
+    {
+        synchronized (saida)
+        {
+            saida.writeByte(FIM);
+            saida.writeByte(modo);
+            saida.writeUTF((mensagem != null) ? mensagem : "");
+            saida.flush();
+        }
+    }
+
+    private static void falhar(Runnable aoFalhar)
+    {
+        if (aoFalhar != null)
+        {
+            aoFalhar.run();
+        }
+    }
+
+    /**
+     * Saída que envia cada escrita como um bloco do tipo informado.
+     */
+    static final class SaidaBlocos extends OutputStream
+    {
+        private final DataOutputStream saida;
+        private final byte tipo;
+        private volatile Runnable aoFalhar = null;
+
+        SaidaBlocos(DataOutputStream saida, byte tipo)
+        {
+            this.saida = saida;
+            this.tipo = tipo;
+        }
+
+        /**
+         * @param aoFalhar executado quando a escrita no socket falha, por
+         * exemplo porque o cliente desconectou
+         */
+        void setAoFalhar(Runnable aoFalhar)
+        {
+            this.aoFalhar = aoFalhar;
+        }
+
+        @Override
+        public void write(int b) throws IOException
+        {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int inicio, int tamanho) throws IOException
+        {
+            if (tamanho > 0)
+            {
+                try
+                {
+                    escreverBloco(saida, tipo, bytes, inicio, tamanho);
+                }
+                catch (IOException excecao)
+                {
+                    falhar(aoFalhar);
+                    throw excecao;
+                }
+            }
+        }
+    }
+
+    /**
+     * Entrada que lê os blocos {@code [tamanho][bytes]} enviados pelo cliente.
+     */
+    static final class EntradaBlocos extends InputStream
+    {
+        private final DataInputStream entrada;
+        private int restante = 0;
+        private boolean fim = false;
+        private volatile Runnable aoFalhar = null;
+
+        EntradaBlocos(DataInputStream entrada)
+        {
+            this.entrada = entrada;
+        }
+
+        /**
+         * @param aoFalhar executado quando a leitura do socket falha, por
+         * exemplo porque o cliente desconectou
+         */
+        void setAoFalhar(Runnable aoFalhar)
+        {
+            this.aoFalhar = aoFalhar;
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            byte[] b = new byte[1];
+
+            return (read(b, 0, 1) < 0) ? -1 : (b[0] & 0xFF);
+        }
+
+        @Override
+        public int read(byte[] bytes, int inicio, int tamanho) throws IOException
+        {
+            try
+            {
+                return lerBloco(bytes, inicio, tamanho);
+            }
+            catch (IOException excecao)
+            {
+                falhar(aoFalhar);
+                throw excecao;
+            }
+        }
+
+        private int lerBloco(byte[] bytes, int inicio, int tamanho) throws IOException
+        {
+            if (fim)
+            {
+                return -1;
+            }
+
+            if (restante == 0)
+            {
+                restante = entrada.readInt();
+
+                if (restante == 0)
+                {
+                    fim = true;
+                    return -1;
+                }
+            }
+
+            int lidos = entrada.read(bytes, inicio, Math.min(tamanho, restante));
+
+            if (lidos < 0)
+            {
+                fim = true;
+                return -1;
+            }
+
+            restante -= lidos;
+
+            return lidos;
+        }
+    }
+}
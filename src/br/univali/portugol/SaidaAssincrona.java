@@ -0,0 +1,309 @@
+package br.univali.portugol;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+
+/**
+ * Saída para arquivo em que a gravação no disco é feita por uma thread
+ * própria, para que o programa não fique parado aguardando o disco a cada
+ * escrita.
+ * <p>
+ * Os bytes escritos são acumulados no buffer atual. Quando ele enche, ou a
+ * cada {@link #flush()}, o buffer é entregue à thread de gravação e um
+ * buffer livre passa a ser o atual. Como a quantidade de buffers é fixa,
+ * quando o disco não acompanha o programa as escritas passam a aguardar um
+ * buffer livre. A thread de gravação também grava o buffer atual quando fica
+ * um intervalo sem receber buffers cheios.
+ * <p>
+ * Depois de {@link #fechar()} as escritas passam a ser gravadas diretamente,
+ * de modo que nada se perde mesmo que alguém ainda escreva durante o
+ * encerramento da JVM.
+ *
+ * @author Luiz Fernando Noschang
+ */
+public final class SaidaAssincrona extends OutputStream
+{
+    private static final int QUANTIDADE_BUFFERS = 4;
+    private static final int TAMANHO_BUFFER = 64 * 1024;
+    private static final long INTERVALO_GRAVACAO = 50;
+
+    private final FileChannel canal;
+    private final ArrayDeque<ByteBuffer> cheios = new ArrayDeque<>(QUANTIDADE_BUFFERS);
+    private final ArrayDeque<ByteBuffer> livres = new ArrayDeque<>(QUANTIDADE_BUFFERS);
+    private final Thread gravacao;
+
+    private ByteBuffer atual;
+    private boolean gravando = false;
+    private boolean fechada = false;
+    private IOException erro = null;
+
+    public SaidaAssincrona(File arquivo) throws IOException
+    {
+        canal = FileChannel.open(arquivo.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        atual = ByteBuffer.allocate(TAMANHO_BUFFER);
+
+        for (int i = 1; i < QUANTIDADE_BUFFERS; i++)
+        {
+            livres.add(ByteBuffer.allocate(TAMANHO_BUFFER));
+        }
+
+        gravacao = new Thread("saida-assincrona")
+        {
+            @Override
+            public void run()
+            {
+                gravar();
+            }
+        };
+
+        gravacao.setDaemon(true);
+        gravacao.start();
+    }
+
+    @Override
+    public synchronized void write(int b) throws IOException
+    {
+        write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override
+    public synchronized void write(byte[] bytes, int inicio, int tamanho) throws IOException
+    {
+        verificarErro();
+
+        if (fechada)
+        {
+            gravarTudo(ByteBuffer.wrap(bytes, inicio, tamanho));
+            return;
+        }
+
+        while (tamanho > 0)
+        {
+            if (atual != null && !atual.hasRemaining())
+            {
+                entregarAtual();
+            }
+            else
+            {
+                aguardarAtual();
+            }
+
+            if (fechada)
+            {
+                // A saída foi fechada enquanto esta escrita aguardava um buffer livre
+                atual.flip();
+                gravarTudo(atual);
+                atual.clear();
+                gravarTudo(ByteBuffer.wrap(bytes, inicio, tamanho));
+                return;
+            }
+
+            int parte = Math.min(tamanho, atual.remaining());
+
+            atual.put(bytes, inicio, parte);
+            inicio += parte;
+            tamanho -= parte;
+        }
+    }
+
+    /**
+     * Entrega o buffer atual à thread de gravação sem aguardar o disco. Se
+     * não há buffer livre, os bytes continuam no buffer atual e são gravados
+     * na próxima oportunidade.
+     */
+    @Override
+    public synchronized void flush() throws IOException
+    {
+        verificarErro();
+
+        if (!fechada && atual != null && atual.position() > 0 && !livres.isEmpty())
+        {
+            entregarAtual();
+        }
+    }
+
+    /**
+     * Aguarda até que todos os bytes escritos tenham sido gravados.
+     */
+    public synchronized void descarregar() throws IOException
+    {
+        // Enquanto aguarda o monitor fica liberado e outras escritas podem
+        // preencher o buffer atual, que então também precisa ser entregue
+        while (!fechada && erro == null)
+        {
+            if (atual != null && atual.position() > 0)
+            {
+                entregarAtual();
+            }
+            else if (atual == null || !cheios.isEmpty() || gravando)
+            {
+                aguardar();
+            }
+            else
+            {
+                break;
+            }
+        }
+
+        verificarErro();
+    }
+
+    /**
+     * Grava tudo o que está pendente e encerra a thread de gravação. O
+     * arquivo continua aberto e as escritas seguintes são gravadas
+     * diretamente, mesmo que a gravação do que estava pendente falhe.
+     */
+    public void fechar() throws IOException
+    {
+        synchronized (this)
+        {
+            try
+            {
+                descarregar();
+            }
+            finally
+            {
+                fechada = true;
+                notifyAll();
+            }
+        }
+
+        try
+        {
+            gravacao.join();
+        }
+        catch (InterruptedException excecao)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        fechar();
+    }
+
+    private void entregarAtual() throws IOException
+    {
+        atual.flip();
+        cheios.add(atual);
+        atual = null;
+        notifyAll();
+
+        aguardarAtual();
+    }
+
+    /**
+     * Enquanto uma escrita aguarda um buffer livre o monitor fica liberado e
+     * não há buffer atual, então as outras escritas também aguardam.
+     */
+    private void aguardarAtual() throws IOException
+    {
+        while (atual == null)
+        {
+            verificarErro();
+
+            if (livres.isEmpty())
+            {
+                aguardar();
+            }
+            else
+            {
+                atual = livres.poll();
+            }
+        }
+    }
+
+    private void aguardar() throws IOException
+    {
+        try
+        {
+            wait();
+        }
+        catch (InterruptedException excecao)
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException("A escrita foi interrompida", excecao);
+        }
+    }
+
+    private void verificarErro() throws IOException
+    {
+        if (erro != null)
+        {
+            throw erro;
+        }
+    }
+
+    private void gravar()
+    {
+        while (true)
+        {
+            ByteBuffer buffer;
+
+            synchronized (this)
+            {
+                while (cheios.isEmpty() && !fechada)
+                {
+                    try
+                    {
+                        wait(INTERVALO_GRAVACAO);
+                    }
+                    catch (InterruptedException excecao)
+                    {
+                        return;
+                    }
+
+                    if (cheios.isEmpty() && atual != null && atual.position() > 0 && !livres.isEmpty())
+                    {
+                        atual.flip();
+                        cheios.add(atual);
+                        atual = livres.poll();
+                    }
+                }
+
+                if (cheios.isEmpty())
+                {
+                    return;
+                }
+
+                buffer = cheios.poll();
+                gravando = true;
+            }
+
+            try
+            {
+                gravarTudo(buffer);
+            }
+            catch (IOException excecao)
+            {
+                synchronized (this)
+                {
+                    erro = excecao;
+                }
+            }
+
+            synchronized (this)
+            {
+                buffer.clear();
+                livres.add(buffer);
+                gravando = false;
+                notifyAll();
+            }
+        }
+    }
+
+    private void gravarTudo(ByteBuffer buffer) throws IOException
+    {
+        while (buffer.hasRemaining())
+        {
+            canal.write(buffer);
+        }
+    }
+}
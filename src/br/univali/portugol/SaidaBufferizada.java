@@ -0,0 +1,334 @@
+package br.univali.portugol;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Saída que formata os valores escritos pelo programa diretamente em um
+ * buffer de bytes reutilizável e só o descarrega quando necessário: quando o
+ * buffer enche, quando {@link #descarregar()} é chamado explicitamente ou a
+ * cada intervalo de tempo configurado.
+ * <p>
+ * Os bytes produzidos são idênticos aos que seriam gerados por
+ * {@code PrintStream.print} usando o mesmo charset.
+ * <p>
+ * As descargas periódicas de todas as instâncias são agendadas por uma única
+ * thread, para que muitas sessões simultâneas não criem uma thread cada. A
+ * escrita no destino, que pode bloquear, é feita em outra thread, e só
+ * quando há bytes pendentes.
+ *
+ * @author Luiz Fernando Noschang
+ */
+public final class SaidaBufferizada
+{
+    private static final byte[] VERDADEIRO = { 'v', 'e', 'r', 'd', 'a', 'd', 'e', 'i', 'r', 'o' };
+    private static final byte[] FALSO = { 'f', 'a', 'l', 's', 'o' };
+
+    private final OutputStream destino;
+    private final CharsetEncoder codificador;
+    private final boolean charsetCompativelAscii;
+    private final byte[] buffer;
+    private final ByteBuffer bufferCodificacao;
+    private final StringBuilder numero = new StringBuilder(32);
+    private final ScheduledFuture<?> descargaPeriodica;
+    private final AtomicBoolean descargaEmAndamento = new AtomicBoolean(false);
+
+    private int posicao = 0;
+
+    public SaidaBufferizada(OutputStream destino, Charset charset, int capacidade, long intervaloDescarga)
+    {
+        this.destino = destino;
+        this.codificador = charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.charsetCompativelAscii = LeitorEntrada.suporta(charset);
+        this.buffer = new byte[Math.max(capacidade, 64)];
+        this.bufferCodificacao = ByteBuffer.wrap(buffer);
+
+        if (intervaloDescarga > 0)
+        {
+            descargaPeriodica = Agendador.TEMPORIZADOR.scheduleWithFixedDelay(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    agendarDescarga();
+                }
+            }, intervaloDescarga, intervaloDescarga, TimeUnit.MILLISECONDS);
+        }
+        else
+        {
+            descargaPeriodica = null;
+        }
+    }
+
+    /**
+     * O charset usado pelo {@code System.out}. Até o Java 17 o PrintStream
+     * não expõe o seu charset, então é usado o mesmo critério da JVM.
+     */
+    public static Charset charsetSaidaPadrao()
+    {
+        String[] propriedades = { "stdout.encoding", "sun.stdout.encoding" };
+
+        for (String propriedade : propriedades)
+        {
+            String nome = System.getProperty(propriedade);
+
+            if (nome != null && Charset.isSupported(nome))
+            {
+                return Charset.forName(nome);
+            }
+        }
+
+        return Charset.defaultCharset();
+    }
+
+    public synchronized void escrever(String valor)
+    {
+        if (valor == null)
+        {
+            valor = "null";
+        }
+
+        int tamanho = valor.length();
+
+        if (charsetCompativelAscii && tamanho <= buffer.length)
+        {
+            garantirEspaco(tamanho);
+
+            int inicio = posicao;
+
+            for (int i = 0; i < tamanho; i++)
+            {
+                char caracter = valor.charAt(i);
+
+                if (caracter >= 0x80)
+                {
+                    posicao = inicio;
+                    codificar(CharBuffer.wrap(valor));
+                    return;
+                }
+
+                buffer[posicao++] = (byte) caracter;
+            }
+
+            return;
+        }
+
+        codificar(CharBuffer.wrap(valor));
+    }
+
+    public synchronized void escrever(boolean valor)
+    {
+        if (!charsetCompativelAscii)
+        {
+            codificar(CharBuffer.wrap(valor ? "verdadeiro" : "falso"));
+            return;
+        }
+
+        escreverBytes(valor ? VERDADEIRO : FALSO);
+    }
+
+    public synchronized void escrever(int valor)
+    {
+        if (!charsetCompativelAscii || valor == Integer.MIN_VALUE)
+        {
+            escrever(Integer.toString(valor));
+            return;
+        }
+
+        garantirEspaco(11);
+
+        if (valor < 0)
+        {
+            buffer[posicao++] = '-';
+            valor = -valor;
+        }
+
+        int digitos = 1;
+
+        for (int limite = 10; digitos < 10 && valor >= limite; limite *= 10)
+        {
+            digitos++;
+        }
+
+        for (int i = posicao + digitos - 1; i >= posicao; i--)
+        {
+            buffer[i] = (byte) ('0' + (valor % 10));
+            valor /= 10;
+        }
+
+        posicao += digitos;
+    }
+
+    public synchronized void escrever(double valor)
+    {
+        numero.setLength(0);
+        numero.append(valor);
+
+        if (!charsetCompativelAscii)
+        {
+            codificar(CharBuffer.wrap(numero));
+            return;
+        }
+
+        int tamanho = numero.length();
+        garantirEspaco(tamanho);
+
+        for (int i = 0; i < tamanho; i++)
+        {
+            buffer[posicao++] = (byte) numero.charAt(i);
+        }
+    }
+
+    public synchronized void escrever(char valor)
+    {
+        if (charsetCompativelAscii && valor < 0x80)
+        {
+            garantirEspaco(1);
+            buffer[posicao++] = (byte) valor;
+        }
+        else
+        {
+            codificar(CharBuffer.wrap(new char[] { valor }));
+        }
+    }
+
+    public synchronized void descarregar()
+    {
+        if (posicao > 0)
+        {
+            try
+            {
+                destino.write(buffer, 0, posicao);
+            }
+            catch (IOException excecao)
+            {
+                // Mesmo comportamento do PrintStream: erros de escrita são ignorados
+            }
+
+            posicao = 0;
+        }
+
+        try
+        {
+            destino.flush();
+        }
+        catch (IOException excecao)
+        {
+        }
+    }
+
+    public synchronized void fechar()
+    {
+        if (descargaPeriodica != null)
+        {
+            descargaPeriodica.cancel(false);
+        }
+
+        descarregar();
+    }
+
+    /**
+     * A posição é lida sem sincronização: um valor desatualizado só adia a
+     * descarga para o próximo intervalo.
+     */
+    private void agendarDescarga()
+    {
+        if (posicao > 0 && descargaEmAndamento.compareAndSet(false, true))
+        {
+            Agendador.DESCARGAS.execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        descarregar();
+                    }
+                    finally
+                    {
+                        descargaEmAndamento.set(false);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Usa um único codificador para toda a saída, assim como o PrintStream,
+     * para que charsets com estado (como UTF-16) produzam os mesmos bytes.
+     */
+    private void codificar(CharBuffer caracteres)
+    {
+        while (true)
+        {
+            bufferCodificacao.limit(buffer.length);
+            bufferCodificacao.position(posicao);
+
+            CoderResult resultado = codificador.encode(caracteres, bufferCodificacao, false);
+            posicao = bufferCodificacao.position();
+
+            if (resultado.isOverflow())
+            {
+                descarregar();
+            }
+            else
+            {
+                return;
+            }
+        }
+    }
+
+    private void escreverBytes(byte[] bytes)
+    {
+        garantirEspaco(bytes.length);
+        System.arraycopy(bytes, 0, buffer, posicao, bytes.length);
+        posicao += bytes.length;
+    }
+
+    private void garantirEspaco(int tamanho)
+    {
+        if (posicao + tamanho > buffer.length)
+        {
+            descarregar();
+        }
+    }
+
+    /**
+     * Só é inicializado quando alguma instância usa descarga periódica.
+     */
+    private static final class Agendador
+    {
+        private static final ScheduledThreadPoolExecutor TEMPORIZADOR = new ScheduledThreadPoolExecutor(1, new ThreadFactory()
+        {
+            @Override
+            public Thread newThread(Runnable tarefa)
+            {
+                Thread thread = new Thread(tarefa, "saida-bufferizada");
+                thread.setDaemon(true);
+
+                return thread;
+            }
+        });
+
+        private static final ExecutorService DESCARGAS = HospedeiroSessoes.criarExecutor("descarga-saida");
+
+        static
+        {
+            TEMPORIZADOR.setRemoveOnCancelPolicy(true);
+        }
+    }
+}
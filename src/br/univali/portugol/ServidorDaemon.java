@@ -0,0 +1,301 @@
+package br.univali.portugol;
+
+import br.univali.portugol.nucleo.ErroCompilacao;
+import br.univali.portugol.nucleo.execucao.ResultadoExecucao;
+import br.univali.portugol.nucleo.mensagens.ErroAnalise;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Mantém uma JVM aquecida que executa os programas enviados pelo
+ * {@link ClienteDaemon} através de um socket local (loopback).
+ * <p>
+ * Como o daemon fica em execução por muito tempo, todo programa tem um tempo
+ * limite: o informado com {@code -limite-tempo=} na sessão ou, sem ele, o do
+ * daemon. O programa também é interrompido quando a conexão com o cliente
+ * falha, para que um programa abandonado não mantenha as suas threads.
+ *
+ * @author Luiz Fernando Noschang
+ */
+public final class ServidorDaemon
+{
+    private static final Logger LOGGER = Logger.getLogger(ServidorDaemon.class.getName());
+    public static final long TEMPO_LIMITE_PADRAO = 10 * 60 * 1000;
+
+    private static final String PARAMETRO_LIMITE_TEMPO = "-limite-tempo=";
+    private static final String PROGRAMA_AQUECIMENTO = "programa\n{\n\tfuncao inicio()\n\t{\n\t\tinteiro x = 1\n\t\tescreva(x)\n\t}\n}\n";
+
+    private final CompiladorPrograma compilador;
+    private final int porta;
+    private final long tempoLimite;
+    private final String token;
+
+    /**
+     * @param tempoLimite tempo limite, em milissegundos, dos programas que não
+     * informam {@code -limite-tempo=}
+     */
+    public ServidorDaemon(CompiladorPrograma compilador, int porta, long tempoLimite)
+    {
+        this.compilador = compilador;
+        this.porta = porta;
+        this.tempoLimite = tempoLimite;
+        this.token = gerarToken();
+    }
+
+    public void iniciar() throws IOException
+    {
+        HospedeiroSessoes sessoes = new HospedeiroSessoes("sessao-daemon");
+
+        LOGGER.log(Level.FINE, sessoes.usaThreadsVirtuais() ? "Sessões em threads virtuais" : "Sessões em threads comuns");
+
+        try (ServerSocket servidor = new ServerSocket(porta, 50, InetAddress.getLoopbackAddress()))
+        {
+            ProtocoloDaemon.publicar(servidor.getLocalPort(), token);
+
+            Runtime.getRuntime().addShutdownHook(new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    ProtocoloDaemon.getArquivoDaemon().delete();
+                }
+            });
+
+            aquecer();
+
+            while (true)
+            {
+                final Socket socket = servidor.accept();
+
+                sessoes.executar(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        atender(socket);
+                    }
+                });
+            }
+        }
+        finally
+        {
+            sessoes.encerrar();
+        }
+    }
+
+    /**
+     * Compila um programa pequeno em segundo plano para carregar as classes
+     * do núcleo e do compilador antes da primeira requisição.
+     */
+    private void aquecer()
+    {
+        Thread aquecimento = new Thread("aquecimento-daemon")
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    compilador.compilar(PROGRAMA_AQUECIMENTO);
+                }
+                catch (Exception excecao)
+                {
+                    LOGGER.log(Level.FINE, "Falha ao aquecer o compilador", excecao);
+                }
+            }
+        };
+
+        aquecimento.setDaemon(true);
+        aquecimento.start();
+    }
+
+    private void atender(Socket socket)
+    {
+        try (Socket conexao = socket)
+        {
+            conexao.setTcpNoDelay(true);
+
+            DataInputStream entrada = new DataInputStream(new BufferedInputStream(conexao.getInputStream()));
+            DataOutputStream saida = new DataOutputStream(new BufferedOutputStream(conexao.getOutputStream()));
+
+            if (entrada.readInt() != ProtocoloDaemon.VERSAO || !token.equals(entrada.readUTF()))
+            {
+                return;
+            }
+
+            saida.writeByte(ProtocoloDaemon.ACEITO);
+            saida.flush();
+
+            String nomeCharset = entrada.readUTF();
+            String caminho = entrada.readUTF();
+            String[] parametros = new String[entrada.readInt()];
+
+            for (int i = 0; i < parametros.length; i++)
+            {
+                parametros[i] = entrada.readUTF();
+            }
+
+            Charset charset = Charset.isSupported(nomeCharset) ? Charset.forName(nomeCharset) : Charset.defaultCharset();
+
+            if (!LeitorEntrada.suporta(charset))
+            {
+                charset = Charset.forName("UTF-8");
+            }
+
+            executar(caminho, parametros, charset, entrada, saida);
+        }
+        catch (IOException excecao)
+        {
+            LOGGER.log(Level.FINE, "Conexão com o cliente encerrada", excecao);
+        }
+    }
+
+    private void executar(String caminho, String[] parametrosSessao, Charset charset, DataInputStream entrada, DataOutputStream saida) throws IOException
+    {
+        List<String> listaParametros = new ArrayList<>(Arrays.asList(parametrosSessao));
+        long limite = extrairLimiteTempo(listaParametros);
+        String[] parametros = listaParametros.toArray(new String[listaParametros.size()]);
+        PrintStream erros = new PrintStream(new ProtocoloDaemon.SaidaBlocos(saida, ProtocoloDaemon.ERRO), true, charset.name());
+
+        try
+        {
+            File arquivo = Console.extrairArquivo(new ArrayList<>(Arrays.asList(caminho)));
+            ProgramaCompilado programaCompilado = compilador.compilar(Console.lerArquivo(arquivo));
+
+            if (!programaCompilado.getAvisos().isEmpty())
+            {
+                for (String aviso : programaCompilado.getAvisos())
+                {
+                    erros.println(aviso);
+                }
+
+                erros.println("\n\n");
+            }
+
+            ProtocoloDaemon.EntradaBlocos entradaPrograma = new ProtocoloDaemon.EntradaBlocos(entrada);
+            ProtocoloDaemon.SaidaBlocos saidaPrograma = new ProtocoloDaemon.SaidaBlocos(saida, ProtocoloDaemon.SAIDA);
+            final ExecucaoPrograma execucao = new ExecucaoPrograma(programaCompilado.instanciar(), entradaPrograma, saidaPrograma, charset, 50);
+
+            Runnable interromper = new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    execucao.interromper();
+                }
+            };
+
+            entradaPrograma.setAoFalhar(interromper);
+            saidaPrograma.setAoFalhar(interromper);
+
+            ResultadoExecucao resultado = execucao.executar(parametros, arquivo.getAbsoluteFile().getParentFile(), limite);
+
+            if (execucao.isTempoEsgotado())
+            {
+                ProtocoloDaemon.escreverFim(saida, ProtocoloDaemon.FIM_TEMPO_ESGOTADO, VigilanteExecucao.Violacao.TEMPO_TOTAL.getMensagem() + " (" + limite + " ms)");
+                return;
+            }
+
+            if (resultado == null)
+            {
+                ProtocoloDaemon.escreverFim(saida, ProtocoloDaemon.FIM_FALHA, null);
+                return;
+            }
+
+            switch (resultado.getModoEncerramento())
+            {
+                case ERRO:
+                    ProtocoloDaemon.escreverFim(saida, ProtocoloDaemon.FIM_ERRO_EXECUCAO, "Erro de execução: " + resultado.getErro().getMensagem() + "\nLinha: " + resultado.getErro().getLinha() + ", Coluna: " + resultado.getErro().getColuna());
+                    break;
+                case INTERRUPCAO:
+                    ProtocoloDaemon.escreverFim(saida, ProtocoloDaemon.FIM_INTERRUPCAO, null);
+                    break;
+                default:
+                    ProtocoloDaemon.escreverFim(saida, ProtocoloDaemon.FIM_NORMAL, null);
+            }
+        }
+        catch (ErroCompilacao erroCompilacao)
+        {
+            List<String> avisos = CompiladorPrograma.formatarAvisos(erroCompilacao.getResultadoAnalise());
+
+            for (String aviso : avisos)
+            {
+                erros.println(aviso);
+            }
+
+            for (ErroAnalise erro : erroCompilacao.getResultadoAnalise().getErros())
+            {
+                erros.println(CompiladorPrograma.formatarErro(erro));
+            }
+
+            ProtocoloDaemon.escreverFim(saida, ProtocoloDaemon.FIM_FALHA, null);
+        }
+        catch (Exception excecao)
+        {
+            erros.println(excecao.getMessage());
+            ProtocoloDaemon.escreverFim(saida, ProtocoloDaemon.FIM_FALHA, null);
+        }
+    }
+
+    /**
+     * Remove o limite de tempo da sessão dos parâmetros, que são repassados
+     * ao programa.
+     */
+    private long extrairLimiteTempo(List<String> parametros)
+    {
+        long limite = 0;
+        Iterator<String> iterador = parametros.iterator();
+
+        while (iterador.hasNext())
+        {
+            String parametro = iterador.next();
+
+            if (parametro.toLowerCase().startsWith(PARAMETRO_LIMITE_TEMPO))
+            {
+                iterador.remove();
+
+                try
+                {
+                    limite = Long.parseLong(parametro.substring(PARAMETRO_LIMITE_TEMPO.length()));
+                }
+                catch (NumberFormatException excecao)
+                {
+                    limite = 0;
+                }
+            }
+        }
+
+        return (limite > 0) ? limite : tempoLimite;
+    }
+
+    private static String gerarToken()
+    {
+        byte[] bytes = new byte[24];
+        new SecureRandom().nextBytes(bytes);
+
+        StringBuilder token = new StringBuilder();
+
+        for (byte b : bytes)
+        {
+            token.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+
+        return token.toString();
+    }
+}
@@ -0,0 +1,154 @@
+package br.univali.portugol;
+
+import java.io.PrintStream;
+import java.util.Locale;
+
+/**
+ * Mede o tempo gasto em cada fase do processamento de um programa, da
+ * leitura do arquivo até o fim da execução.
+ * <p>
+ * Cada fase medida também gera um evento do Java Flight Recorder, desde que
+ * a JVM tenha sido iniciada gravando (por exemplo com
+ * {@code -XX:StartFlightRecording}). Gravações iniciadas depois, pelo
+ * {@code jcmd}, não recebem os eventos.
+ *
+ * @author Luiz Fernando Noschang
+ */
+public final class TemposExecucao
+{
+    public static enum Fase
+    {
+        LEITURA("Leitura do arquivo"),
+        CLASSPATH("Montagem do classpath"),
+        CACHE("Cache de compilação"),
+        ANALISE("Análise do programa"),
+        COMPILACAO("Compilação Java"),
+        CARREGAMENTO("Carregamento das classes"),
+        EXECUCAO("Execução"),
+        ENTRADA("Espera por entrada");
+
+        private final String descricao;
+
+        private Fase(String descricao)
+        {
+            this.descricao = descricao;
+        }
+
+        public String getDescricao()
+        {
+            return descricao;
+        }
+    }
+
+    private static final boolean JFR_GRAVANDO = verificarJfr();
+
+    private final String programa;
+    private final long inicio = System.nanoTime();
+    private final long[] tempos = new long[Fase.values().length];
+    private final int[] ocorrencias = new int[Fase.values().length];
+
+    /**
+     * @param programa o caminho do programa, usado apenas para identificar os
+     * eventos do JFR. Pode ser {@code null}.
+     */
+    public TemposExecucao(String programa)
+    {
+        this.programa = programa;
+    }
+
+    private static boolean verificarJfr()
+    {
+        try
+        {
+            return EventosJfr.gravando();
+        }
+        catch (LinkageError erro)
+        {
+            // JVM sem a API do JFR
+            return false;
+        }
+    }
+
+    public Medicao iniciar(Fase fase)
+    {
+        return new Medicao(fase, JFR_GRAVANDO ? EventosJfr.iniciarFase(fase.getDescricao(), programa) : null);
+    }
+
+    /**
+     * Inicia a medição de uma espera pela entrada de dados.
+     */
+    public Medicao iniciarEspera(Object tipoDado)
+    {
+        return new Medicao(Fase.ENTRADA, JFR_GRAVANDO ? EventosJfr.iniciarEspera(String.valueOf(tipoDado), programa) : null);
+    }
+
+    private synchronized void registrar(Fase fase, long tempo)
+    {
+        tempos[fase.ordinal()] += tempo;
+        ocorrencias[fase.ordinal()]++;
+    }
+
+    /**
+     * Escreve o tempo de cada fase ocorrida. A espera por entrada acontece
+     * durante a execução e por isso não entra na soma das fases.
+     */
+    public synchronized void escreverRelatorio(PrintStream saida)
+    {
+        long total = System.nanoTime() - inicio;
+        long medido = 0;
+
+        saida.println();
+        saida.println(String.format(Locale.ROOT, "Tempos (%s ms no total)", Json.milissegundos(total)));
+
+        for (Fase fase : Fase.values())
+        {
+            if (ocorrencias[fase.ordinal()] == 0)
+            {
+                continue;
+            }
+
+            long tempo = tempos[fase.ordinal()];
+
+            if (fase == Fase.ENTRADA)
+            {
+                saida.println(String.format(Locale.ROOT, "  %-26s %12s ms          (%d leituras, durante a execução)", fase.getDescricao(), Json.milissegundos(tempo), ocorrencias[fase.ordinal()]));
+                continue;
+            }
+
+            medido += tempo;
+            saida.println(String.format(Locale.ROOT, "  %-26s %12s ms  %6.1f%%", fase.getDescricao(), Json.milissegundos(tempo), percentual(tempo, total)));
+        }
+
+        long outros = Math.max(0, total - medido);
+        saida.println(String.format(Locale.ROOT, "  %-26s %12s ms  %6.1f%%", "Outros", Json.milissegundos(outros), percentual(outros, total)));
+        saida.flush();
+    }
+
+    private static double percentual(long tempo, long total)
+    {
+        return (total > 0) ? 100.0 * tempo / total : 0;
+    }
+
+    public final class Medicao
+    {
+        private final Fase fase;
+        private final Object evento;
+        private final long inicio = System.nanoTime();
+
+        private Medicao(Fase fase, Object evento)
+        {
+            this.fase = fase;
+            this.evento = evento;
+        }
+
+        public void concluir()
+        {
+            registrar(fase, System.nanoTime() - inicio);
+
+            if (evento != null)
+            {
+                EventosJfr.concluir(evento);
+            }
+        }
+    }
+}
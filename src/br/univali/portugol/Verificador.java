@@ -0,0 +1,332 @@
+package br.univali.portugol;
+
+import br.univali.portugol.nucleo.ErroCompilacao;
+import br.univali.portugol.nucleo.Portugol;
+import br.univali.portugol.nucleo.Programa;
+import br.univali.portugol.nucleo.analise.ResultadoAnalise;
+import br.univali.portugol.nucleo.mensagens.AvisoAnalise;
+import br.univali.portugol.nucleo.mensagens.ErroAnalise;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Verifica se os programas de um diretório compilam, executando apenas a
+ * análise do Portugol, sem gerar código Java nem chamar o javac.
+ * <p>
+ * A árvore de diretórios é percorrida por tarefas de um
+ * {@link ForkJoinPool}: cada diretório divide o trabalho entre os seus
+ * subdiretórios e programas, de modo que a listagem dos diretórios também é
+ * feita em paralelo. Os diagnósticos podem ser escritos em JSON Lines, um
+ * objeto por linha, ou em SARIF, para serem lidos por outras ferramentas.
+ *
+ * @author Luiz Fernando Noschang
+ */
+public final class Verificador
+{
+    public static enum Formato { JSONL, SARIF };
+
+    public static enum Severidade { AVISO, ERRO };
+
+    private final int numeroThreads;
+
+    public Verificador(int numeroThreads)
+    {
+        this.numeroThreads = Math.max(1, numeroThreads);
+    }
+
+    /**
+     * @param raiz um programa ou um diretório, que é percorrido junto com os
+     * seus subdiretórios
+     * @return o resultado de cada programa, em ordem alfabética
+     */
+    public List<Resultado> verificar(File raiz)
+    {
+        ForkJoinPool pool = new ForkJoinPool(numeroThreads);
+
+        try
+        {
+            return pool.invoke(new Tarefa(raiz));
+        }
+        finally
+        {
+            pool.shutdownNow();
+        }
+    }
+
+    private static Resultado verificarPrograma(File arquivo)
+    {
+        List<Diagnostico> diagnosticos = new ArrayList<>();
+
+        try
+        {
+            Programa programa = Portugol.compilarParaAnalise(Console.lerArquivo(arquivo));
+
+            adicionar(diagnosticos, programa.getResultadoAnalise());
+        }
+        catch (ErroCompilacao erroCompilacao)
+        {
+            adicionar(diagnosticos, erroCompilacao.getResultadoAnalise());
+        }
+        catch (Exception excecao)
+        {
+            // Falha na leitura do arquivo ou no próprio analisador
+            diagnosticos.add(new Diagnostico(Severidade.ERRO, 0, 0, String.valueOf(excecao.getMessage())));
+        }
+
+        return new Resultado(arquivo, diagnosticos);
+    }
+
+    private static void adicionar(List<Diagnostico> diagnosticos, ResultadoAnalise resultadoAnalise)
+    {
+        if (resultadoAnalise == null)
+        {
+            return;
+        }
+
+        if (resultadoAnalise.contemAvisos())
+        {
+            for (AvisoAnalise aviso : resultadoAnalise.getAvisos())
+            {
+                diagnosticos.add(new Diagnostico(Severidade.AVISO, aviso.getLinha(), aviso.getColuna(), aviso.getMensagem()));
+            }
+        }
+
+        if (resultadoAnalise.contemErros())
+        {
+            for (ErroAnalise erro : resultadoAnalise.getErros())
+            {
+                diagnosticos.add(new Diagnostico(Severidade.ERRO, erro.getLinha(), erro.getColuna(), erro.getMensagem()));
+            }
+        }
+    }
+
+    /**
+     * Escreve os diagnósticos de todos os programas. A saída só é descarregada
+     * no final.
+     *
+     * @param raiz o caminho verificado, base dos endereços relativos do SARIF
+     */
+    public static void escreverRelatorio(List<Resultado> resultados, File raiz, Formato formato, Writer saida) throws IOException
+    {
+        if (formato == Formato.SARIF)
+        {
+            escreverSarif(resultados, raiz, saida);
+        }
+        else
+        {
+            escreverJsonLinhas(resultados, saida);
+        }
+
+        saida.flush();
+    }
+
+    private static void escreverJsonLinhas(List<Resultado> resultados, Writer saida) throws IOException
+    {
+        for (Resultado resultado : resultados)
+        {
+            String arquivo = Json.texto(resultado.getArquivo().getPath());
+
+            for (Diagnostico diagnostico : resultado.getDiagnosticos())
+            {
+                saida.write("{\"arquivo\": " + arquivo);
+                saida.write(", \"severidade\": " + Json.texto(diagnostico.getSeveridade().name().toLowerCase()));
+                saida.write(", \"linha\": " + diagnostico.getLinha());
+                saida.write(", \"coluna\": " + diagnostico.getColuna());
+                saida.write(", \"mensagem\": " + Json.texto(diagnostico.getMensagem()));
+                saida.write("}\n");
+            }
+        }
+    }
+
+    /**
+     * Escreve um relatório SARIF 2.1.0. As colunas do núcleo começam em zero
+     * e as do SARIF em um.
+     */
+    private static void escreverSarif(List<Resultado> resultados, File raiz, Writer saida) throws IOException
+    {
+        File base = raiz.getAbsoluteFile();
+
+        if (!base.isDirectory())
+        {
+            base = base.getParentFile();
+        }
+
+        URI uriBase = base.toURI();
+
+        saida.write("{\n");
+        saida.write("  \"$schema\": \"https://json.schemastore.org/sarif-2.1.0.json\",\n");
+        saida.write("  \"version\": \"2.1.0\",\n");
+        saida.write("  \"runs\": [\n");
+        saida.write("    {\n");
+        saida.write("      \"tool\": {\"driver\": {\"name\": \"portugol-console\"}},\n");
+        saida.write("      \"originalUriBaseIds\": {\"RAIZ\": {\"uri\": " + Json.texto(uriBase.toString()) + "}},\n");
+        saida.write("      \"results\": [");
+
+        boolean primeiro = true;
+
+        for (Resultado resultado : resultados)
+        {
+            String uri = Json.texto(uriBase.relativize(resultado.getArquivo().getAbsoluteFile().toURI()).toString());
+
+            for (Diagnostico diagnostico : resultado.getDiagnosticos())
+            {
+                saida.write(primeiro ? "\n" : ",\n");
+                primeiro = false;
+
+                saida.write("        {\"level\": " + Json.texto(diagnostico.getSeveridade() == Severidade.ERRO ? "error" : "warning"));
+                saida.write(", \"message\": {\"text\": " + Json.texto(diagnostico.getMensagem()) + "}");
+                saida.write(", \"locations\": [{\"physicalLocation\": {\"artifactLocation\": {\"uri\": " + uri + ", \"uriBaseId\": \"RAIZ\"}");
+
+                if (diagnostico.getLinha() > 0)
+                {
+                    saida.write(", \"region\": {\"startLine\": " + diagnostico.getLinha() + ", \"startColumn\": " + (Math.max(0, diagnostico.getColuna()) + 1) + "}");
+                }
+
+                saida.write("}}]}");
+            }
+        }
+
+        saida.write(primeiro ? "]\n" : "\n      ]\n");
+        saida.write("    }\n");
+        saida.write("  ]\n");
+        saida.write("}\n");
+    }
+
+    /**
+     * Percorre um diretório dividindo o trabalho entre os seus filhos, ou
+     * verifica um único programa.
+     */
+    private static final class Tarefa extends RecursiveTask<List<Resultado>>
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final File arquivo;
+
+        Tarefa(File arquivo)
+        {
+            this.arquivo = arquivo;
+        }
+
+        @Override
+        protected List<Resultado> compute()
+        {
+            if (!arquivo.isDirectory())
+            {
+                return Collections.singletonList(verificarPrograma(arquivo));
+            }
+
+            File[] arquivos = arquivo.listFiles();
+
+            if (arquivos == null)
+            {
+                return Collections.emptyList();
+            }
+
+            Arrays.sort(arquivos);
+
+            List<Tarefa> tarefas = new ArrayList<>();
+
+            for (File filho : arquivos)
+            {
+                if (filho.isDirectory() || filho.getName().toLowerCase().endsWith(".por"))
+                {
+                    tarefas.add(new Tarefa(filho));
+                }
+            }
+
+            invokeAll(tarefas);
+
+            List<Resultado> resultados = new ArrayList<>();
+
+            for (Tarefa tarefa : tarefas)
+            {
+                resultados.addAll(tarefa.getRawResult());
+            }
+
+            return resultados;
+        }
+    }
+
+    public static final class Resultado
+    {
+        private final File arquivo;
+        private final List<Diagnostico> diagnosticos;
+
+        Resultado(File arquivo, List<Diagnostico> diagnosticos)
+        {
+            this.arquivo = arquivo;
+            this.diagnosticos = Collections.unmodifiableList(diagnosticos);
+        }
+
+        public File getArquivo()
+        {
+            return arquivo;
+        }
+
+        public List<Diagnostico> getDiagnosticos()
+        {
+            return diagnosticos;
+        }
+
+        public boolean contemErros()
+        {
+            for (Diagnostico diagnostico : diagnosticos)
+            {
+                if (diagnostico.getSeveridade() == Severidade.ERRO)
+                {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+    }
+
+    /**
+     * Aviso ou erro da análise. Linha e coluna são as informadas pelo núcleo,
+     * ou zero quando o programa nem pôde ser analisado.
+     */
+    public static final class Diagnostico
+    {
+        private final Severidade severidade;
+        private final int linha;
+        private final int coluna;
+        private final String mensagem;
+
+        Diagnostico(Severidade severidade, int linha, int coluna, String mensagem)
+        {
+            this.severidade = severidade;
+            this.linha = linha;
+            this.coluna = coluna;
+            this.mensagem = mensagem;
+        }
+
+        public Severidade getSeveridade()
+        {
+            return severidade;
+        }
+
+        public int getLinha()
+        {
+            return linha;
+        }
+
+        public int getColuna()
+        {
+            return coluna;
+        }
+
+        public String getMensagem()
+        {
+            return mensagem;
+        }
+    }
+}
@@ -0,0 +1,271 @@
+package br.univali.portugol;
+
+import br.univali.portugol.nucleo.Programa;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.Charset;
+
+/**
+ * Faz um programa respeitar os {@link LimitesExecucao}.
+ * <p>
+ * Os limites de saída e de leituras são verificados a cada escrita e a cada
+ * leitura. Os de tempo e de alocação são verificados periodicamente por
+ * uma thread própria. Ao exceder um limite o programa é interrompido. Se mesmo assim
+ * ele não encerrar em alguns segundos, por exemplo por estar bloqueado
+ * lendo a entrada, a ação de encerramento forçado é executada.
+ *
+ * @author Luiz Fernando Noschang
+ */
+public final class VigilanteExecucao
+{
+    public static enum Violacao
+    {
+        TEMPO_CPU("Limite de tempo de CPU excedido"),
+        TEMPO_TOTAL("Limite de tempo excedido"),
+        SAIDA("Limite de saída excedido"),
+        LEITURAS("Limite de leituras excedido"),
+        ALOCACAO("Limite de alocação de memória excedido");
+
+        private final String mensagem;
+
+        private Violacao(String mensagem)
+        {
+            this.mensagem = mensagem;
+        }
+
+        public String getMensagem()
+        {
+            return mensagem;
+        }
+    }
+
+    private static final long INTERVALO_VERIFICACAO = 10;
+    private static final long TEMPO_ESPERA_INTERRUPCAO = 2000;
+
+    private final Programa programa;
+    private final LimitesExecucao limites;
+    private final Charset charsetSaida;
+    private final boolean charsetSaidaAscii;
+    private final Runnable encerramentoForcado;
+
+    private long tamanhoSaida = 0;
+    private long leituras = 0;
+    private long inicio = 0;
+
+    private volatile Thread threadPrograma = null;
+    private volatile Violacao violacao = null;
+    private volatile boolean encerrado = false;
+
+    /**
+     * @param charsetSaida charset em que a saída do programa é escrita, usado
+     * para contar os bytes do limite de saída
+     * @param encerramentoForcado executado pela thread do vigilante quando o
+     * programa não encerra depois de interrompido
+     */
+    public VigilanteExecucao(Programa programa, LimitesExecucao limites, Charset charsetSaida, Runnable encerramentoForcado)
+    {
+        this.programa = programa;
+        this.limites = limites;
+        this.charsetSaida = charsetSaida;
+        this.charsetSaidaAscii = LeitorEntrada.suporta(charsetSaida);
+        this.encerramentoForcado = encerramentoForcado;
+    }
+
+    /**
+     * Deve ser chamado imediatamente antes de iniciar a execução.
+     */
+    public void iniciar()
+    {
+        inicio = System.nanoTime();
+
+        Thread vigilante = new Thread("vigilante-execucao")
+        {
+            @Override
+            public void run()
+            {
+                vigiar();
+            }
+        };
+
+        vigilante.setDaemon(true);
+        vigilante.start();
+    }
+
+    /**
+     * Informa a thread que executa o programa, necessária para medir o seu
+     * tempo de CPU e a memória alocada. Deve ser chamado pela própria thread do programa.
+     */
+    public void execucaoIniciada()
+    {
+        threadPrograma = Thread.currentThread();
+    }
+
+    public void encerrar()
+    {
+        encerrado = true;
+    }
+
+    /**
+     * @return a primeira violação ocorrida, ou {@code null} se o programa
+     * respeitou os limites
+     */
+    public Violacao getViolacao()
+    {
+        return violacao;
+    }
+
+    /**
+     * @return o limite correspondente à violação, para ser exibido junto com
+     * a mensagem
+     */
+    public String descrever(Violacao violacao)
+    {
+        switch (violacao)
+        {
+            case TEMPO_CPU:
+                return violacao.getMensagem() + " (" + limites.getTempoCpu() + " ms)";
+            case TEMPO_TOTAL:
+                return violacao.getMensagem() + " (" + limites.getTempoTotal() + " ms)";
+            case SAIDA:
+                return violacao.getMensagem() + " (" + limites.getTamanhoSaida() + " bytes)";
+            case LEITURAS:
+                return violacao.getMensagem() + " (" + limites.getLeituras() + " leituras)";
+            default:
+                return violacao.getMensagem() + " (" + (limites.getAlocacao() / (1024 * 1024)) + " MB)";
+        }
+    }
+
+    /**
+     * @return {@code false} se a escrita ultrapassa o limite de saída e não
+     * deve ser feita
+     */
+    public boolean registrarSaida(String texto)
+    {
+        if (violacao != null)
+        {
+            return false;
+        }
+
+        if (limites.getTamanhoSaida() == 0)
+        {
+            return true;
+        }
+
+        tamanhoSaida += tamanhoCodificado(texto);
+
+        if (limites.getTamanhoSaida() > 0 && tamanhoSaida > limites.getTamanhoSaida())
+        {
+            violar(Violacao.SAIDA);
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Texto ASCII em um charset compatível com o ASCII tem um byte por
+     * caractere e não precisa ser codificado para ser medido.
+     */
+    private int tamanhoCodificado(String texto)
+    {
+        if (charsetSaidaAscii)
+        {
+            int tamanho = texto.length();
+            int i = 0;
+
+            while (i < tamanho && texto.charAt(i) < 0x80)
+            {
+                i++;
+            }
+
+            if (i == tamanho)
+            {
+                return tamanho;
+            }
+        }
+
+        return texto.getBytes(charsetSaida).length;
+    }
+
+    /**
+     * @return {@code false} se a leitura ultrapassa o limite de leituras e
+     * deve ser cancelada
+     */
+    public boolean registrarLeitura()
+    {
+        if (violacao != null)
+        {
+            return false;
+        }
+
+        leituras++;
+
+        if (limites.getLeituras() > 0 && leituras > limites.getLeituras())
+        {
+            violar(Violacao.LEITURAS);
+            return false;
+        }
+
+        return true;
+    }
+
+    private synchronized void violar(Violacao violacao)
+    {
+        if (this.violacao == null)
+        {
+            this.violacao = violacao;
+            programa.interromper();
+        }
+    }
+
+    private void vigiar()
+    {
+        ThreadMXBean threads = null;
+
+        if (limites.getTempoCpu() > 0)
+        {
+            threads = ManagementFactory.getThreadMXBean();
+
+            if (!threads.isThreadCpuTimeSupported())
+            {
+                threads = null;
+            }
+        }
+
+        try
+        {
+            while (!encerrado && violacao == null)
+            {
+                Thread.sleep(INTERVALO_VERIFICACAO);
+
+                if (limites.getTempoTotal() > 0 && System.nanoTime() - inicio > limites.getTempoTotal() * 1000000)
+                {
+                    violar(Violacao.TEMPO_TOTAL);
+                }
+                else if (threads != null && threadPrograma != null && threads.getThreadCpuTime(threadPrograma.getId()) > limites.getTempoCpu() * 1000000)
+                {
+                    violar(Violacao.TEMPO_CPU);
+                }
+                else if (limites.getAlocacao() > 0 && threadPrograma != null && MedicaoMemoria.bytesAlocados(threadPrograma) > limites.getAlocacao())
+                {
+                    violar(Violacao.ALOCACAO);
+                }
+            }
+
+            long limiteEspera = System.nanoTime() + TEMPO_ESPERA_INTERRUPCAO * 1000000;
+
+            while (!encerrado && System.nanoTime() < limiteEspera)
+            {
+                Thread.sleep(INTERVALO_VERIFICACAO);
+            }
+
+            if (!encerrado)
+            {
+                encerramentoForcado.run();
+            }
+        }
+        catch (InterruptedException excecao)
+        {
+        }
+    }
+}